@@ -0,0 +1,554 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.flownode;
+
+import com.cloudbees.workflow.rest.external.ErrorExt;
+import com.cloudbees.workflow.rest.external.StageNodeExt;
+import com.cloudbees.workflow.rest.external.StatusExt;
+import org.jenkinsci.plugins.workflow.actions.ErrorAction;
+import org.jenkinsci.plugins.workflow.actions.NotExecutedNodeAction;
+import org.jenkinsci.plugins.workflow.actions.ThreadNameAction;
+import org.jenkinsci.plugins.workflow.actions.TimingAction;
+import org.jenkinsci.plugins.workflow.graph.AtomNode;
+import org.jenkinsci.plugins.workflow.graph.BlockEndNode;
+import org.jenkinsci.plugins.workflow.graph.BlockStartNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.support.actions.PauseAction;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structural index on the id sorted node list of a flow execution.
+ * <p>
+ * Built in one pass over the sorted list (parents always sort before their children). Records the list position
+ * of every node, the position of every stage node, the positions and statuses of the atom nodes in each stage,
+ * the position of the last child of every node, the end node paired with every block start node, and the
+ * parallel branch each node belongs to. The status of every node is also worked out once, as the index is built,
+ * and held as a byte per node. Errors are not held. The {@link ErrorExt} of a failed node is only built if the node
+ * is described (see {@link #getError(FlowNode)}). That makes stage boundary lookups, node statuses and branch
+ * timings/statuses cheap, rather than each of them scanning the sorted list or going back to the node {@link ErrorAction}.
+ * </p>
+ * <p>
+ * A parallel branch is a block started by a node carrying a {@link ThreadNameAction}. Branches can be nested.
+ * A node belongs to the innermost branch block enclosing it (the branch start and end nodes included).
+ * </p>
+ * <p>
+ * Holds node ids and timings only, not the nodes or the list, so as it does not keep the list alive in the
+ * (weak keyed) index cache.
+ * </p>
+ */
+public class FlowGraphIndex {
+
+    private static final StatusExt[] STATUS_VALUES = StatusExt.values();
+
+    private final Map<String, Integer> positions;
+    private final int[] stagePositions;
+    private final Map<String, int[]> stageAtomPositions;
+    // Status (StatusExt ordinal) of the node at each sorted list position
+    private final byte[] statuses;
+    // Sorted list positions of the atom nodes still running
+    private final BitSet runningAtoms;
+    // Sorted list position of the last node to have the node at each position as a parent. -1 if none.
+    private final int[] lastChildPositions;
+    private final Map<String, String> blockEnds;
+    private final Map<String, String> nodeBranches;
+    private final Map<String, Branch> branches;
+    private final Map<String, List<Branch>> stageBranches;
+
+    private FlowGraphIndex(Map<String, Integer> positions, int[] stagePositions, Map<String, int[]> stageAtomPositions,
+                           byte[] statuses, BitSet runningAtoms, int[] lastChildPositions,
+                           Map<String, String> blockEnds,
+                           Map<String, String> nodeBranches, Map<String, Branch> branches,
+                           Map<String, List<Branch>> stageBranches) {
+        this.positions = positions;
+        this.stagePositions = stagePositions;
+        this.stageAtomPositions = stageAtomPositions;
+        this.statuses = statuses;
+        this.runningAtoms = runningAtoms;
+        this.lastChildPositions = lastChildPositions;
+        this.blockEnds = blockEnds;
+        this.nodeBranches = nodeBranches;
+        this.branches = branches;
+        this.stageBranches = stageBranches;
+    }
+
+    /**
+     * Build the index.
+     * @param allNodesSorted The execution nodes, sorted by id.
+     * @param executionComplete Is the execution complete. Branches with no end node on a running execution
+     * are in progress.
+     * @return The index.
+     */
+    public static FlowGraphIndex build(@Nonnull List<FlowNode> allNodesSorted, boolean executionComplete) {
+        Map<String, Integer> positions = new HashMap<String, Integer>();
+        int[] stagePositions = new int[16];
+        int stageCount = 0;
+        Map<String, int[]> stageAtomPositions = new HashMap<String, int[]>();
+        byte[] statuses = new byte[allNodesSorted.size()];
+        BitSet runningAtoms = new BitSet();
+        int[] lastChildPositions = new int[allNodesSorted.size()];
+        Arrays.fill(lastChildPositions, -1);
+        int[] atomPositions = new int[16];
+        int atomCount = 0;
+        Map<String, String> blockEnds = new HashMap<String, String>();
+        Map<String, String> nodeBranches = new HashMap<String, String>();
+        Map<String, Branch> branches = new LinkedHashMap<String, Branch>();
+        Map<String, List<Branch>> stageBranches = new HashMap<String, List<Branch>>();
+        String currentStageId = null;
+
+        for (int i = 0; i < allNodesSorted.size(); i++) {
+            FlowNode node = allNodesSorted.get(i);
+            String nodeId = node.getId();
+
+            positions.put(nodeId, i);
+            StatusExt status;
+            if (NotExecutedNodeAction.isExecuted(node)) {
+                status = StatusExt.valueOf(node.getError());
+            } else {
+                status = StatusExt.NOT_EXECUTED;
+            }
+            statuses[i] = (byte) status.ordinal();
+            List<FlowNode> parents = node.getParents();
+            for (FlowNode parent : parents) {
+                Integer parentPosition = positions.get(parent.getId());
+                if (parentPosition != null) {
+                    // Nodes are visited in order, so the last one wins.
+                    lastChildPositions[parentPosition] = i;
+                }
+            }
+            if (StageNodeExt.isStageNode(node)) {
+                if (stageCount == stagePositions.length) {
+                    stagePositions = Arrays.copyOf(stagePositions, stageCount * 2);
+                }
+                stagePositions[stageCount++] = i;
+                if (currentStageId != null) {
+                    stageAtomPositions.put(currentStageId, Arrays.copyOf(atomPositions, atomCount));
+                }
+                currentStageId = nodeId;
+                atomCount = 0;
+            } else if (node instanceof AtomNode) {
+                if (!executionComplete && node.isRunning()) {
+                    runningAtoms.set(i);
+                }
+                if (currentStageId != null) {
+                    if (atomCount == atomPositions.length) {
+                        atomPositions = Arrays.copyOf(atomPositions, atomCount * 2);
+                    }
+                    atomPositions[atomCount++] = i;
+                }
+            }
+
+            String branchId;
+            if (node instanceof BlockEndNode) {
+                // The end of a block is wherever the start of the block is.
+                String startId = ((BlockEndNode) node).getStartNode().getId();
+                blockEnds.put(startId, nodeId);
+                branchId = nodeBranches.get(startId);
+                Branch branch = branches.get(startId);
+                if (branch != null) {
+                    branch.endId = nodeId;
+                    branch.status = status;
+                }
+            } else {
+                branchId = getParentBranchId(parents, nodeBranches, branches);
+            }
+
+            if (node instanceof BlockStartNode) {
+                ThreadNameAction threadNameAction = node.getAction(ThreadNameAction.class);
+                if (threadNameAction != null) {
+                    Branch branch = new Branch(nodeId, threadNameAction.getThreadName(), branchId, currentStageId);
+                    branch.startTimeMillis = TimingAction.getStartTime(node);
+                    branches.put(nodeId, branch);
+                    if (currentStageId != null) {
+                        List<Branch> inStage = stageBranches.get(currentStageId);
+                        if (inStage == null) {
+                            inStage = new ArrayList<Branch>();
+                            stageBranches.put(currentStageId, inStage);
+                        }
+                        inStage.add(branch);
+                    }
+                    branchId = nodeId;
+                }
+            }
+
+            if (branchId != null) {
+                nodeBranches.put(nodeId, branchId);
+                // Roll the node into its branch and all the branches enclosing it.
+                Branch branch = branches.get(branchId);
+                while (branch != null) {
+                    branch.addNode(node, status);
+                    branch = (branch.parentId != null ? branches.get(branch.parentId) : null);
+                }
+            }
+        }
+
+        if (currentStageId != null) {
+            stageAtomPositions.put(currentStageId, Arrays.copyOf(atomPositions, atomCount));
+        }
+        for (Branch branch : branches.values()) {
+            branch.complete(executionComplete);
+        }
+
+        return new FlowGraphIndex(positions, Arrays.copyOf(stagePositions, stageCount), stageAtomPositions,
+                statuses, runningAtoms, lastChildPositions, blockEnds, nodeBranches, branches, stageBranches);
+    }
+
+    private static String getParentBranchId(List<FlowNode> parents, Map<String, String> nodeBranches, Map<String, Branch> branches) {
+        if (parents.isEmpty()) {
+            return null;
+        }
+
+        // Nodes following a block are in the same branch as the block start.  All parents of a node joining
+        // a set of branches (the end of a parallel) are branch ends, so we only need to look at the first.
+        FlowNode parent = parents.get(0);
+        String parentBranchId = nodeBranches.get(parent.getId());
+        if (parent instanceof BlockEndNode && parentBranchId != null) {
+            Branch parentBranch = branches.get(parentBranchId);
+            if (parentBranch != null && parent.getId().equals(parentBranch.endId)) {
+                // The parent is the end of a branch, so we're back in the enclosing branch (if any).
+                return parentBranch.parentId;
+            }
+        }
+        return parentBranchId;
+    }
+
+    /**
+     * Get the position of a node in the sorted node list.
+     * @param node The node.
+     * @return The node position, or -1 if the node is not in the list.
+     */
+    public int indexOf(@Nonnull FlowNode node) {
+        Integer position = positions.get(node.getId());
+        return (position != null ? position : -1);
+    }
+
+    /**
+     * Get the sorted list position of the last node (in id order) to have the node at the supplied position
+     * as a parent.
+     * @param position A sorted list position.
+     * @return The position of the last child, or -1 if the node has no children.
+     */
+    public int getLastChildPosition(int position) {
+        return (position >= 0 && position < lastChildPositions.length ? lastChildPositions[position] : -1);
+    }
+
+    /**
+     * Get the sorted list positions of the stage nodes.
+     * @return The stage node positions, in order.
+     */
+    public int[] getStagePositions() {
+        return stagePositions.clone();
+    }
+
+    /**
+     * Get the sorted list position of the next stage node after the supplied position.
+     * @param position A sorted list position.
+     * @return The position of the next stage node, or -1 if there is no next stage.
+     */
+    public int getNextStagePosition(int position) {
+        int i = Arrays.binarySearch(stagePositions, position + 1);
+        if (i < 0) {
+            i = -(i + 1);
+        }
+        return (i < stagePositions.length ? stagePositions[i] : -1);
+    }
+
+    /**
+     * Get the number of atom nodes in a stage.
+     * @param stageNode The stage node.
+     * @param status Only count atom nodes with this status, or {@code null} to count all atom nodes.
+     * @return The number of atom nodes.
+     */
+    public int getStageAtomCount(@Nonnull FlowNode stageNode, @CheckForNull StatusExt status) {
+        int[] atoms = getStageAtoms(stageNode);
+        if (status == null) {
+            return atoms.length;
+        }
+        int count = 0;
+        for (int atom : atoms) {
+            if (STATUS_VALUES[statuses[atom]] == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get a page of the sorted list positions of the atom nodes in a stage.
+     * @param stageNode The stage node.
+     * @param status Only include atom nodes with this status, or {@code null} to include all atom nodes.
+     * @param offset The number of (matching) atom nodes to skip.
+     * @param limit The max number of positions to return.
+     * @return The atom node positions, in order.
+     */
+    public int[] getStageAtomPositions(@Nonnull FlowNode stageNode, @CheckForNull StatusExt status, int offset, int limit) {
+        int[] atoms = getStageAtoms(stageNode);
+        offset = Math.max(0, offset);
+        limit = Math.max(0, limit);
+        if (status == null) {
+            int from = Math.min(offset, atoms.length);
+            return Arrays.copyOfRange(atoms, from, (int) Math.min((long) from + limit, atoms.length));
+        }
+
+        int[] page = new int[Math.min(limit, atoms.length)];
+        int pageSize = 0;
+        int matched = 0;
+        for (int i = 0; i < atoms.length && pageSize < limit; i++) {
+            if (STATUS_VALUES[statuses[atoms[i]]] == status && matched++ >= offset) {
+                page[pageSize++] = atoms[i];
+            }
+        }
+        return Arrays.copyOf(page, pageSize);
+    }
+
+    /**
+     * Get a sample of the sorted list positions of the atom nodes in a stage, for stages with too many atom nodes
+     * to list them all.
+     * <p>
+     * The sample is picked in one pass over the stage atom nodes. It holds the first and last {@code headTail}
+     * nodes, the running nodes, and as many of the failed and aborted nodes as fit in {@code maxSize}.
+     * </p>
+     * @param stageNode The stage node.
+     * @param maxSize The max sample size.
+     * @param headTail The number of nodes to take from the start and end of the stage.
+     * @return The sampled atom node positions, in order. All the stage atom node positions if there are no more
+     * than {@code maxSize}.
+     */
+    public int[] getStageAtomSample(@Nonnull FlowNode stageNode, int maxSize, int headTail) {
+        int[] atoms = getStageAtoms(stageNode);
+        if (atoms.length <= maxSize) {
+            return atoms.clone();
+        }
+
+        headTail = Math.max(0, Math.min(headTail, maxSize / 2));
+        int tailStart = atoms.length - headTail;
+        // Leave room for the tail, so as failures don't crowd it out.
+        int middleSlots = maxSize - (2 * headTail);
+        int[] sample = new int[maxSize];
+        int sampleSize = 0;
+        for (int i = 0; i < atoms.length && sampleSize < maxSize; i++) {
+            int atom = atoms[i];
+            if (i < headTail || i >= tailStart) {
+                sample[sampleSize++] = atom;
+            } else if (middleSlots > 0 && (runningAtoms.get(atom) || isErrorStatus(STATUS_VALUES[statuses[atom]]))) {
+                sample[sampleSize++] = atom;
+                middleSlots--;
+            }
+        }
+        return Arrays.copyOf(sample, sampleSize);
+    }
+
+    /**
+     * Get the status of the node at a sorted list position, as given by {@link StatusExt#valueOf(ErrorAction)}
+     * (or {@link StatusExt#NOT_EXECUTED}).
+     * @param position The sorted list position.
+     * @return The node status, or {@code null} if there's no node at that position.
+     */
+    @CheckForNull
+    public StatusExt getStatus(int position) {
+        return (position >= 0 && position < statuses.length ? STATUS_VALUES[statuses[position]] : null);
+    }
+
+    /**
+     * Get the error of a failed or aborted node.
+     * <p>
+     * Built from the node {@link ErrorAction} on each call, and only for nodes the index has as failed or aborted.
+     * </p>
+     * @param node The node.
+     * @return The node error, or {@code null} if the node has no error (or is not in the index).
+     */
+    @CheckForNull
+    public ErrorExt getError(@Nonnull FlowNode node) {
+        return (isErrorStatus(getStatus(indexOf(node))) ? ErrorExt.create(node.getError()) : null);
+    }
+
+    /**
+     * Is the status that of a node with an error i.e. failed or aborted.
+     * @param status The node status.
+     * @return {@code true} if a node with that status has an error.
+     */
+    public static boolean isErrorStatus(@CheckForNull StatusExt status) {
+        return (status == StatusExt.FAILED || status == StatusExt.ABORTED);
+    }
+
+    private int[] getStageAtoms(FlowNode stageNode) {
+        int[] atoms = stageAtomPositions.get(stageNode.getId());
+        return (atoms != null ? atoms : new int[0]);
+    }
+
+    /**
+     * Get the id of the end node paired with a block start node.
+     * @param blockStartNode The block start node.
+     * @return The block end node id, or {@code null} if the block has not ended.
+     */
+    @CheckForNull
+    public String getBlockEndId(@Nonnull FlowNode blockStartNode) {
+        return blockEnds.get(blockStartNode.getId());
+    }
+
+    /**
+     * Get the innermost parallel branch a node belongs to.
+     * @param node The node.
+     * @return The branch, or {@code null} if the node is not in a parallel branch.
+     */
+    @CheckForNull
+    public Branch getBranch(@Nonnull FlowNode node) {
+        String branchId = nodeBranches.get(node.getId());
+        return (branchId != null ? branches.get(branchId) : null);
+    }
+
+    /**
+     * Get the parallel branches started in a stage, in the order in which they were started.
+     * @param stageNode The stage node.
+     * @return The branches, nested branches included.
+     */
+    public List<Branch> getStageBranches(@Nonnull FlowNode stageNode) {
+        List<Branch> inStage = stageBranches.get(stageNode.getId());
+        return (inStage != null ? Collections.unmodifiableList(inStage) : Collections.<Branch>emptyList());
+    }
+
+    /**
+     * A parallel branch.
+     */
+    public static class Branch {
+
+        private final String id;
+        private final String name;
+        private final String parentId;
+        private final String stageId;
+        private String endId;
+        private StatusExt status;
+        private boolean failedNode;
+        private long startTimeMillis;
+        private long lastStartTimeMillis;
+        private boolean lastNodePaused;
+        private long pauseDurationMillis;
+        private boolean running;
+
+        private Branch(String id, String name, String parentId, String stageId) {
+            this.id = id;
+            this.name = name;
+            this.parentId = parentId;
+            this.stageId = stageId;
+        }
+
+        private void addNode(FlowNode node, StatusExt nodeStatus) {
+            long nodeStartTime = TimingAction.getStartTime(node);
+            if (nodeStartTime > lastStartTimeMillis) {
+                lastStartTimeMillis = nodeStartTime;
+            }
+            lastNodePaused = FlowNodeUtil.isPauseNode(node);
+            pauseDurationMillis += PauseAction.getPauseDuration(node);
+            if (node instanceof AtomNode && nodeStatus == StatusExt.FAILED) {
+                failedNode = true;
+            }
+        }
+
+        private void complete(boolean executionComplete) {
+            running = (endId == null && !executionComplete);
+            if (running) {
+                status = (lastNodePaused ? StatusExt.PAUSED_PENDING_INPUT : StatusExt.IN_PROGRESS);
+            } else if (status == null) {
+                // Never closed off e.g. the build was killed.
+                status = StatusExt.ABORTED;
+            } else if (failedNode && status == StatusExt.SUCCESS) {
+                // Same as we do for stages. A failed step fails the branch, even if the failure was caught.
+                status = StatusExt.FAILED;
+            }
+        }
+
+        /**
+         * The branch start node id.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * The branch name, as given to the parallel step.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The id of the enclosing branch, or {@code null} if the branch is not nested.
+         */
+        @CheckForNull
+        public String getParentId() {
+            return parentId;
+        }
+
+        /**
+         * The id of the stage in which the branch was started, or {@code null} if it's not in a stage.
+         */
+        @CheckForNull
+        public String getStageId() {
+            return stageId;
+        }
+
+        /**
+         * The branch end node id, or {@code null} if the branch has not ended.
+         */
+        @CheckForNull
+        public String getEndId() {
+            return endId;
+        }
+
+        public StatusExt getStatus() {
+            return status;
+        }
+
+        public long getStartTimeMillis() {
+            return startTimeMillis;
+        }
+
+        /**
+         * The branch duration.  Up to "now" on a running branch, unless it's paused.
+         */
+        public long getDurationMillis() {
+            if (startTimeMillis == 0L) {
+                return 0L;
+            }
+            long endTimeMillis = lastStartTimeMillis;
+            if (running && !lastNodePaused) {
+                endTimeMillis = Math.max(endTimeMillis, System.currentTimeMillis());
+            }
+            return Math.max(0L, endTimeMillis - startTimeMillis);
+        }
+
+        public long getPauseDurationMillis() {
+            return Math.min(pauseDurationMillis, getDurationMillis());
+        }
+    }
+}
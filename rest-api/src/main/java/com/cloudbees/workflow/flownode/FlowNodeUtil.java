@@ -28,6 +28,7 @@ import com.cloudbees.workflow.rest.external.ExecDuration;
 import com.cloudbees.workflow.rest.external.RunExt;
 import com.cloudbees.workflow.rest.external.StageNodeExt;
 import com.cloudbees.workflow.rest.external.StatusExt;
+import com.cloudbees.workflow.util.InternalCaches;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
@@ -38,6 +39,7 @@ import hudson.model.Item;
 import hudson.model.listeners.ItemListener;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.workflow.actions.ErrorAction;
+import org.jenkinsci.plugins.workflow.actions.LogAction;
 import org.jenkinsci.plugins.workflow.actions.NotExecutedNodeAction;
 import org.jenkinsci.plugins.workflow.actions.TimingAction;
 import org.jenkinsci.plugins.workflow.actions.WorkspaceAction;
@@ -45,11 +47,13 @@ import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.graph.FlowGraphWalker;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.support.actions.LogActionImpl;
 import org.jenkinsci.plugins.workflow.support.actions.PauseAction;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
 import javax.annotation.CheckForNull;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -59,6 +63,7 @@ import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -68,6 +73,34 @@ public class FlowNodeUtil {
 
     private static final Logger LOGGER = Logger.getLogger(FlowNodeUtil.class.getName());
 
+    // Graph indexes of completed executions, keyed by the id sorted node list they index (compared by identity).
+    // Live as long as the list does, so completed runs share the lifetime of their executionCache entry.
+    private static final InternalCaches.Spec<List<FlowNode>, FlowGraphIndex> GRAPH_INDEX_CACHE = new InternalCaches.Spec<List<FlowNode>, FlowGraphIndex>() {
+        @Override
+        protected Cache<List<FlowNode>, FlowGraphIndex> build() {
+            return CacheBuilder.newBuilder().weakKeys().maximumSize(100).build();
+        }
+    };
+
+    // Execution URLs (relative to the Jenkins root), keyed by execution (compared by identity). Working the
+    // URL out means going up through the run, job and folders, and it's needed for every node link we build.
+    private static final InternalCaches.Spec<FlowExecution, String> EXECUTION_URL_CACHE = new InternalCaches.Spec<FlowExecution, String>() {
+        @Override
+        protected Cache<FlowExecution, String> build() {
+            return CacheBuilder.newBuilder().weakKeys().maximumSize(1000).build();
+        }
+    };
+
+    // The id sorted node list (and graph index) of running executions, keyed by execution (compared by identity).
+    // Reused until the execution heads change, so as a running build is walked and indexed once per graph change
+    // rather than once per lookup. Dropped on a new head (see invalidateRunningGraph).
+    private static final InternalCaches.Spec<FlowExecution, RunningGraph> RUNNING_GRAPH_CACHE = new InternalCaches.Spec<FlowExecution, RunningGraph>() {
+        @Override
+        protected Cache<FlowExecution, RunningGraph> build() {
+            return CacheBuilder.newBuilder().weakKeys().maximumSize(100).build();
+        }
+    };
+
     private FlowNodeUtil() {
     }
 
@@ -162,13 +195,9 @@ public class FlowNodeUtil {
 
     public static FlowNode getLastChildNode(FlowNode node) {
         List<FlowNode> allNodes = getIdSortedExecutionNodeList(node.getExecution());
-        for(int i=allNodes.size()-1; i>=0; i--) {
-            FlowNode f = allNodes.get(i);
-            if (f.getParents().contains(node)) {
-                return f;
-            }
-        }
-        return null;
+        FlowGraphIndex graphIndex = getGraphIndex(allNodes);
+        int lastChildPosition = graphIndex.getLastChildPosition(graphIndex.indexOf(node));
+        return (lastChildPosition != -1 ? allNodes.get(lastChildPosition) : null);
     }
 
     @edu.umd.cs.findbugs.annotations.SuppressWarnings(value="NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
@@ -202,8 +231,9 @@ public class FlowNodeUtil {
                     // Otherwise we are using the start time of the node that is running, which is not
                     // changing i.e. will look as though the node is not running.
                     if (flowEndNode.isRunning() && !execution.isComplete()) {
-                        // But only do this if the node is not paused e.g. for input.
-                        if (!isPauseNode(flowEndNode)) {
+                        // But only do this if something is not paused e.g. for input. With parallel branches,
+                        // one branch can be waiting on input while others keep running.
+                        if (hasUnpausedHead(execution)) {
                             long currentTime = System.currentTimeMillis();
                             if (currentTime > endTime) {
                                 endTime = currentTime;
@@ -217,10 +247,8 @@ public class FlowNodeUtil {
                     execDuration.setTotalDurationMillis(endTime - startTime);
 
                     // Calculate the stage pause duration.
-                    int nextStageIndex;
-                    if (nextStageNode != null) {
-                        nextStageIndex = findStageStartNodeIndex(allNodesSorted, nextStageNode);
-                    } else {
+                    int nextStageIndex = getGraphIndex(allNodesSorted).getNextStagePosition(stageStartNodeIndex);
+                    if (nextStageIndex == -1) {
                         nextStageIndex = allNodesSorted.size(); // +1 from end of list
                     }
                     for (int i = stageStartNodeIndex; i < nextStageIndex; i++) {
@@ -244,6 +272,15 @@ public class FlowNodeUtil {
         return PauseAction.isPaused(flowNode);
     }
 
+    private static boolean hasUnpausedHead(FlowExecution execution) {
+        for (FlowNode head : execution.getCurrentHeads()) {
+            if (!isPauseNode(head)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Get the first node in the stage that executed.
      * <p>
@@ -348,19 +385,12 @@ public class FlowNodeUtil {
     }
 
     private static FlowNode getNextStageNode(List<FlowNode> allNodesSorted, int stageStartNodeIndex) {
-        for (int i = (stageStartNodeIndex + 1); i < allNodesSorted.size(); i++) {
-            FlowNode node = allNodesSorted.get(i);
-            if (StageNodeExt.isStageNode(node)) {
-                return node;
-            }
-        }
-
-        return null;
+        int nextStageIndex = getGraphIndex(allNodesSorted).getNextStagePosition(stageStartNodeIndex);
+        return (nextStageIndex != -1 ? allNodesSorted.get(nextStageIndex) : null);
     }
 
-    // Pulled out because it is likely to get re-implemented
     private static int findStageStartNodeIndex(List<FlowNode> allNodesSorted, FlowNode stageStartNode) {
-        return  allNodesSorted.indexOf(stageStartNode);
+        return getGraphIndex(allNodesSorted).indexOf(stageStartNode);
     }
 
     /**
@@ -373,17 +403,39 @@ public class FlowNodeUtil {
         List<FlowNode> allNodesSorted = getIdSortedExecutionNodeList(execution);
 
         int stageStartNodeIndex = findStageStartNodeIndex(allNodesSorted, stageStartNode);
-
-        for (int i = (stageStartNodeIndex + 1); i < allNodesSorted.size(); i++) {
-            FlowNode node = allNodesSorted.get(i);
-            if (StageNodeExt.isStageNode(node)) {
-                return allNodesSorted.get(i - 1);
-            }
+        int nextStageIndex = getGraphIndex(allNodesSorted).getNextStagePosition(stageStartNodeIndex);
+        if (nextStageIndex != -1) {
+            return allNodesSorted.get(nextStageIndex - 1);
         }
 
         return allNodesSorted.get(allNodesSorted.size() - 1);
     }
 
+    /**
+     * Get the file holding the log of a node.
+     * @param node The node.
+     * @return The log file, or {@code null} if the node has no log, or if its log is not held in a
+     * file we know about (i.e. it's not a {@link LogActionImpl}).
+     */
+    @CheckForNull
+    public static File getLogFile(FlowNode node) {
+        LogAction logAction = node.getAction(LogAction.class);
+        if (!(logAction instanceof LogActionImpl)) {
+            return null;
+        }
+
+        try {
+            // LogActionImpl keeps the log in the run directory, named after the node.
+            File logFile = new File(node.getExecution().getOwner().getRootDir(), node.getId() + ".log");
+            if (logFile.isFile()) {
+                return logFile;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to locate log file for node " + node.getId(), e);
+        }
+        return null;
+    }
+
     @CheckForNull
     /**
      * Get the last node to start in a flow.
@@ -411,11 +463,8 @@ public class FlowNodeUtil {
         List<FlowNode> nodes = new ArrayList<FlowNode>();
         List<FlowNode> allNodesSorted = getIdSortedExecutionNodeList(execution);
 
-        for (int i = 0; i < allNodesSorted.size(); i++) {
-            FlowNode sortedNode = allNodesSorted.get(i);
-            if (StageNodeExt.isStageNode(sortedNode)) {
-                nodes.add(sortedNode);
-            }
+        for (int stagePosition : getGraphIndex(allNodesSorted).getStagePositions()) {
+            nodes.add(allNodesSorted.get(stagePosition));
         }
 
         return nodes;
@@ -423,6 +472,14 @@ public class FlowNodeUtil {
 
     // Enables us to get the status of a node without creating a bunch of objects
     public static StatusExt getStatus(FlowNode node) {
+        // Worked out once per graph, as the index is built.
+        FlowGraphIndex graphIndex = getGraphIndex(node.getExecution());
+        StatusExt indexedStatus = graphIndex.getStatus(graphIndex.indexOf(node));
+        if (indexedStatus != null) {
+            return indexedStatus;
+        }
+
+        // Not in the graph, as far as the index knows.
         boolean isExecuted = NotExecutedNodeAction.isExecuted(node);
 
         if (isExecuted) {
@@ -439,27 +496,113 @@ public class FlowNodeUtil {
 
         int stageStartNodeIndex = findStageStartNodeIndex(allNodesSorted, node);
 
-        if (StageNodeExt.isStageNode(node)) {
-            // Starting at the node after the supplied node, add all sorted nodes up to the
-            // next stage (or the end of the workflow)...
-            stageStartNodeIndex++;
-            for (int i = stageStartNodeIndex; i < allNodesSorted.size(); i++) {
-                FlowNode sortedNode = allNodesSorted.get(i);
-                if (StageNodeExt.isStageNode(sortedNode)) {
-                    break;
-                }
-                nodes.add(sortedNode);
+        if (stageStartNodeIndex != -1 && StageNodeExt.isStageNode(node)) {
+            // Add all sorted nodes after the supplied node, up to the next stage (or the end of the workflow)...
+            int nextStageIndex = getGraphIndex(allNodesSorted).getNextStagePosition(stageStartNodeIndex);
+            if (nextStageIndex == -1) {
+                nextStageIndex = allNodesSorted.size();
             }
+            nodes.addAll(allNodesSorted.subList(stageStartNodeIndex + 1, nextStageIndex));
         }
 
         return nodes;
     }
 
+    /**
+     * Get a sample of the atom (step) nodes in a stage, for stages with too many to list them all.
+     * @param stageNode The stage node.
+     * @param maxSize The max sample size.
+     * @param headTail The number of nodes to take from the start and end of the stage.
+     * @return The sampled stage atom nodes, in id order.
+     * @see FlowGraphIndex#getStageAtomSample(FlowNode, int, int)
+     */
+    public static List<FlowNode> getStageAtomSample(FlowNode stageNode, int maxSize, int headTail) {
+        List<FlowNode> allNodesSorted = getIdSortedExecutionNodeList(stageNode.getExecution());
+        return toNodes(allNodesSorted, getGraphIndex(allNodesSorted).getStageAtomSample(stageNode, maxSize, headTail));
+    }
+
+    private static List<FlowNode> toNodes(List<FlowNode> allNodesSorted, int[] positions) {
+        List<FlowNode> nodes = new ArrayList<FlowNode>(positions.length);
+        for (int position : positions) {
+            nodes.add(allNodesSorted.get(position));
+        }
+        return nodes;
+    }
+
+    /**
+     * Get the URL of an execution, relative to the Jenkins root.
+     * @param execution The flow execution.
+     * @return The execution URL, same as {@link FlowExecution#getUrl()}.
+     * @throws IOException Error getting the execution URL.
+     */
+    public static String getExecutionUrl(FlowExecution execution) throws IOException {
+        Cache<FlowExecution, String> cache = InternalCaches.get(EXECUTION_URL_CACHE);
+        String executionUrl = cache.getIfPresent(execution);
+        if (executionUrl == null) {
+            executionUrl = execution.getUrl();
+            if (executionUrl != null) {
+                cache.put(execution, executionUrl);
+            }
+        }
+        return executionUrl;
+    }
+
+    /**
+     * Get the structural index on the id sorted node list of an execution.
+     * @param execution The flow execution.
+     * @return The index.
+     */
+    public static FlowGraphIndex getGraphIndex(FlowExecution execution) {
+        return getGraphIndex(getIdSortedExecutionNodeList(execution));
+    }
+
+    /**
+     * Get the structural index on an id sorted node list.
+     * @param allNodesSorted The id sorted node list of an execution, as returned by
+     * {@link #getIdSortedExecutionNodeList(FlowExecution)}.
+     * @return The index.
+     */
+    public static FlowGraphIndex getGraphIndex(List<FlowNode> allNodesSorted) {
+        FlowExecution execution = (!allNodesSorted.isEmpty() ? allNodesSorted.get(0).getExecution() : null);
+        if (execution != null && !isNotPartOfRunningBuild(execution)) {
+            RunningGraph runningGraph = InternalCaches.get(RUNNING_GRAPH_CACHE).getIfPresent(execution);
+            if (runningGraph != null && runningGraph.allNodesSorted == allNodesSorted) {
+                return runningGraph.getIndex();
+            }
+            // An older list of a running execution. Index it, but don't cache it.
+            return FlowGraphIndex.build(allNodesSorted, false);
+        }
+
+        Cache<List<FlowNode>, FlowGraphIndex> cache = InternalCaches.get(GRAPH_INDEX_CACHE);
+        FlowGraphIndex index = cache.getIfPresent(allNodesSorted);
+        if (index == null) {
+            index = FlowGraphIndex.build(allNodesSorted, true);
+            cache.put(allNodesSorted, index);
+        }
+        return index;
+    }
+
+    /**
+     * Drop the cached node list and graph index of a running execution, because the graph changed.
+     * <p>
+     * Called as new heads are added to the graph. Lookups also check the execution heads, so this
+     * is about not holding on to a stale graph, rather than about correctness.
+     * </p>
+     * @param execution The flow execution.
+     */
+    @Restricted(NoExternalUse.class)
+    public static void invalidateRunningGraph(FlowExecution execution) {
+        InternalCaches.get(RUNNING_GRAPH_CACHE).invalidate(execution);
+    }
+
     // Throws ConcurrentModificationException if FlowGraph changes under the iterator
     public static List<FlowNode> getIdSortedExecutionNodeList(FlowExecution execution) throws ConcurrentModificationException {
         if (execution == null || execution.getCurrentHeads().isEmpty()) {
             return Collections.EMPTY_LIST;
         }
+        if (!isNotPartOfRunningBuild(execution)) {
+            return getRunningGraph(execution).allNodesSorted;
+        }
 
         String executionUrl = null;
         boolean isCacheable = false;
@@ -481,23 +624,83 @@ public class FlowNodeUtil {
         }
 
         // Not in cache or can't cache
+        List<FlowNode> nodes = walkSorted(execution);
+
+        if (isCacheable && executionUrl != null) {
+            cache.put(executionUrl, nodes);
+        }
+        return nodes;
+    }
+
+    private static List<FlowNode> walkSorted(FlowExecution execution) {
         FlowGraphWalker walker = new FlowGraphWalker(execution);
         ArrayList<FlowNode> nodes = new ArrayList<FlowNode>();
         for (FlowNode node : walker) {
             nodes.add(node);
         }
         sortNodesById(nodes);
+        return nodes;
+    }
 
-        if (isCacheable && executionUrl != null) {
-            cache.put(executionUrl, nodes);
+    private static RunningGraph getRunningGraph(FlowExecution execution) {
+        Cache<FlowExecution, RunningGraph> cache = InternalCaches.get(RUNNING_GRAPH_CACHE);
+        // Heads first. If the graph moves on while we walk it, the heads won't match next time round.
+        List<FlowNode> heads = execution.getCurrentHeads();
+        RunningGraph runningGraph = cache.getIfPresent(execution);
+        if (runningGraph == null || !runningGraph.isCurrent(heads)) {
+            runningGraph = new RunningGraph(heads, walkSorted(execution));
+            cache.put(execution, runningGraph);
+        }
+        return runningGraph;
+    }
+
+    /**
+     * The id sorted node list of a running execution, as of a set of heads, and the index on it.
+     * <p>
+     * Nodes only change as they stop being heads, with the exception of heads pausing (e.g. for input) and
+     * resuming, which also changes the index. So the list and index hold for as long as the heads (and
+     * their pause state) stay the same.
+     * </p>
+     */
+    private static class RunningGraph {
+
+        private final List<FlowNode> heads;
+        private final boolean[] headsPaused;
+        private final List<FlowNode> allNodesSorted;
+        private FlowGraphIndex index;
+
+        private RunningGraph(List<FlowNode> heads, List<FlowNode> allNodesSorted) {
+            this.heads = new ArrayList<FlowNode>(heads);
+            this.headsPaused = getPauseStates(heads);
+            this.allNodesSorted = allNodesSorted;
+        }
+
+        private boolean isCurrent(List<FlowNode> currentHeads) {
+            return heads.equals(currentHeads) && Arrays.equals(headsPaused, getPauseStates(currentHeads));
+        }
+
+        private synchronized FlowGraphIndex getIndex() {
+            if (index == null) {
+                index = FlowGraphIndex.build(allNodesSorted, false);
+            }
+            return index;
+        }
+
+        private static boolean[] getPauseStates(List<FlowNode> heads) {
+            boolean[] paused = new boolean[heads.size()];
+            for (int i = 0; i < paused.length; i++) {
+                paused[i] = isPauseNode(heads.get(i));
+            }
+            return paused;
         }
-        return nodes;
     }
 
 
     /** This is used to cover an obscure case where a WorkflowJob is renamed BUT
      *  a previous WorkflowJob existed with cached execution data.
      *  Otherwise the previous job's cached data would be returned.
+     *  Same goes for a WorkflowJob that is deleted and replaced by a new one of the same name.
+     *  Caches keyed on the run cache key ({@code ModelUtil.getRunCacheKey}) don't need this.
      **/
     @Extension
     public static class RenameHandler extends ItemListener {
@@ -508,6 +711,16 @@ public class FlowNodeUtil {
                 CacheExtension ext = CacheExtension.all().get(0);
                 ext.getExecutionCache().invalidateAll();
                 ext.getRunCache().invalidateAll();
+                InternalCaches.get(EXECUTION_URL_CACHE).invalidateAll();
+            }
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof WorkflowJob) {
+                CacheExtension ext = CacheExtension.all().get(0);
+                ext.getExecutionCache().invalidateAll();
+                ext.getRunCache().invalidateAll();
             }
         }
     }
@@ -0,0 +1,274 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.flownode;
+
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+
+import javax.annotation.CheckForNull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sparse line offset index on a node log.
+ * <p>
+ * Holds the log byte offset of every {@link #CHECKPOINT_INTERVAL}th line, so as a given line can be found by
+ * seeking to the nearest checkpoint before it and reading forward from there, rather than reading the log from
+ * the start. Line numbers are 1 based.
+ * </p>
+ * <p>
+ * The index on a completed node log is built the first time it's needed and then persisted in the run directory.
+ * The index on a running node log is built on each request (the log is still growing) and not persisted.
+ * </p>
+ */
+public class LogLineIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(LogLineIndex.class.getName());
+
+    public static final int CHECKPOINT_INTERVAL = Math.max(1, Integer.getInteger(LogLineIndex.class.getName()+".checkpointInterval", 1000));
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final int checkpointInterval;
+    private final long length;
+    private final int lineCount;
+    // checkpoints[i] is the log offset of line (i * checkpointInterval) + 1
+    private final long[] checkpoints;
+
+    LogLineIndex(int checkpointInterval, long length, int lineCount, long[] checkpoints) {
+        this.checkpointInterval = checkpointInterval;
+        this.length = length;
+        this.lineCount = lineCount;
+        this.checkpoints = checkpoints;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * The length of the log that was indexed.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * The number of lines in the log. A last line without a line terminator counts as a line.
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Get the nearest checkpointed line at or before the supplied line.
+     * @param line The line number.
+     * @return The checkpointed line number.
+     */
+    public int getCheckpointLine(int line) {
+        return getCheckpoint(line) * checkpointInterval + 1;
+    }
+
+    /**
+     * Get the log offset of the nearest checkpointed line at or before the supplied line
+     * i.e. the log offset of {@link #getCheckpointLine(int)}.
+     * @param line The line number.
+     * @return The log offset.
+     */
+    public long getCheckpointOffset(int line) {
+        return checkpoints[getCheckpoint(line)];
+    }
+
+    private int getCheckpoint(int line) {
+        int checkpoint = (Math.max(line, 1) - 1) / checkpointInterval;
+        return Math.min(checkpoint, checkpoints.length - 1);
+    }
+
+    /**
+     * Get the line index for a node log.
+     * @param node The node.
+     * @return The index, or {@code null} if the node has no log file.
+     * @throws IOException Error reading the log.
+     * @see FlowNodeUtil#getLogFile(FlowNode)
+     */
+    @CheckForNull
+    public static LogLineIndex get(FlowNode node) throws IOException {
+        File logFile = FlowNodeUtil.getLogFile(node);
+        if (logFile == null) {
+            return null;
+        }
+
+        if (node.isRunning()) {
+            return build(logFile);
+        }
+
+        File indexFile = getIndexFile(node);
+        if (indexFile != null && indexFile.isFile()) {
+            try {
+                LogLineIndex index = read(indexFile);
+                // Check it's an index on this log, built with the current settings.
+                if (index.getLength() == logFile.length() && index.getCheckpointInterval() == CHECKPOINT_INTERVAL) {
+                    return index;
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to read log line index " + indexFile + ". Rebuilding it.", e);
+            }
+        }
+
+        LogLineIndex index = build(logFile);
+        if (indexFile != null) {
+            try {
+                index.write(indexFile);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to write log line index " + indexFile, e);
+            }
+        }
+        return index;
+    }
+
+    private static LogLineIndex build(File logFile) throws IOException {
+        InputStream logStream = new FileInputStream(logFile);
+        try {
+            return build(logStream, CHECKPOINT_INTERVAL);
+        } finally {
+            logStream.close();
+        }
+    }
+
+    /**
+     * Build the line index for a log.
+     * @param logStream The log.
+     * @param checkpointInterval The number of lines between checkpoints.
+     * @return The index.
+     * @throws IOException Error reading the log.
+     */
+    static LogLineIndex build(InputStream logStream, int checkpointInterval) throws IOException {
+        long[] checkpoints = new long[16];
+        int checkpointCount = 1; // Line 1 is always at offset 0
+        int lineCount = 0;
+        long offset = 0;
+        boolean midLine = false;
+
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = logStream.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    lineCount++;
+                    midLine = false;
+                    if (lineCount % checkpointInterval == 0) {
+                        if (checkpointCount == checkpoints.length) {
+                            checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+                        }
+                        checkpoints[checkpointCount++] = offset + i + 1;
+                    }
+                } else {
+                    midLine = true;
+                }
+            }
+            offset += read;
+        }
+        if (midLine) {
+            lineCount++;
+        }
+
+        // A checkpoint at the very end of the log is not the start of a line.
+        if (checkpointCount > 1 && checkpoints[checkpointCount - 1] == offset) {
+            checkpointCount--;
+        }
+
+        return new LogLineIndex(checkpointInterval, offset, lineCount, Arrays.copyOf(checkpoints, checkpointCount));
+    }
+
+    static LogLineIndex read(File indexFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            int formatVersion = in.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported log line index format version " + formatVersion);
+            }
+            int checkpointInterval = in.readInt();
+            long length = in.readLong();
+            int lineCount = in.readInt();
+            long[] checkpoints = new long[in.readInt()];
+            for (int i = 0; i < checkpoints.length; i++) {
+                checkpoints[i] = in.readLong();
+            }
+            return new LogLineIndex(checkpointInterval, length, lineCount, checkpoints);
+        } finally {
+            in.close();
+        }
+    }
+
+    void write(File indexFile) throws IOException {
+        File indexDir = indexFile.getParentFile();
+        if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+            throw new IOException("Unable to create directory " + indexDir);
+        }
+
+        // Write to a temp file and move it into place, so as a reader never sees a half written file. The temp file
+        // is unique to this write, so as two requests indexing the same node don't write over each other.
+        File tempFile = File.createTempFile(indexFile.getName() + ".", ".tmp", indexDir);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(checkpointInterval);
+                out.writeLong(length);
+                out.writeInt(lineCount);
+                out.writeInt(checkpoints.length);
+                for (long checkpoint : checkpoints) {
+                    out.writeLong(checkpoint);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        if (!tempFile.renameTo(indexFile)) {
+            tempFile.delete();
+        }
+    }
+
+    private static File getIndexFile(FlowNode node) {
+        try {
+            File runDir = node.getExecution().getOwner().getRootDir();
+            return new File(runDir, "wfapi/log-lines/" + node.getId() + ".idx");
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to locate run directory for node " + node.getId(), e);
+            return null;
+        }
+    }
+}
@@ -23,13 +23,24 @@
  */
 package com.cloudbees.workflow.rest.endpoints;
 
+import com.cloudbees.workflow.flownode.FlowNodeUtil;
 import com.cloudbees.workflow.rest.AbstractFlowNodeActionHandler;
 import com.cloudbees.workflow.rest.endpoints.flownode.Describe;
 import com.cloudbees.workflow.rest.endpoints.flownode.Log;
+import com.cloudbees.workflow.rest.endpoints.flownode.LogLines;
+import com.cloudbees.workflow.rest.endpoints.flownode.RawLog;
+import com.cloudbees.workflow.rest.endpoints.flownode.StageLogs;
 import com.cloudbees.workflow.util.ModelUtil;
 import com.cloudbees.workflow.util.ServeJson;
 import hudson.Extension;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
 
 /**
  * API Action handler to return {@link FlowNode} information.
@@ -43,7 +54,33 @@ import org.jenkinsci.plugins.workflow.graph.FlowNode;
 public class FlowNodeAPI extends AbstractFlowNodeActionHandler {
 
     public static String getUrl(FlowNode node) {
-        return ModelUtil.getFullItemUrl(node) + FlowNodeAPI.URL_BASE;
+        try {
+            return getUrl(getNodeUrlPrefix(node.getExecution()), node.getId());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected error getting URL for a FlowNode.", e);
+        }
+    }
+
+    /**
+     * Get the URL prefix shared by all nodes of an execution. Node URLs are this prefix plus the node id. The
+     * execution URL is cached (see {@link FlowNodeUtil#getExecutionUrl(FlowExecution)}), so working the prefix
+     * out only costs a lookup of the request root URL.
+     * @param execution The execution.
+     * @return The node URL prefix, to be passed to {@link #getUrl(String, String)}.
+     * @throws IOException Error getting the execution URL.
+     */
+    public static String getNodeUrlPrefix(FlowExecution execution) throws IOException {
+        return ModelUtil.getFullItemUrl(FlowNodeUtil.getExecutionUrl(execution) + "node/");
+    }
+
+    /**
+     * Get the node API URL.
+     * @param nodeUrlPrefix The execution node URL prefix, from {@link #getNodeUrlPrefix(FlowExecution)}.
+     * @param nodeId The node id.
+     * @return Same as {@link #getUrl(FlowNode)}.
+     */
+    public static String getUrl(String nodeUrlPrefix, String nodeId) {
+        return nodeUrlPrefix + nodeId + "/" + FlowNodeAPI.URL_BASE;
     }
 
     @ServeJson
@@ -51,13 +88,57 @@ public class FlowNodeAPI extends AbstractFlowNodeActionHandler {
         return Describe.get(getNode());
     }
 
+    /**
+     * Get the node description.
+     * @param offset The number of stage steps to skip (stage nodes only).
+     * @param limit The max number of stage steps to return (stage nodes only).
+     * @param status Only return stage steps with this status (stage nodes only).
+     * @return The node description.
+     * @see Describe
+     */
     @ServeJson
-    public Object doDescribe() {
-        return Describe.get(getNode());
+    public Object doDescribe(@QueryParameter String offset, @QueryParameter String limit,
+                             @QueryParameter String status) throws ServletException {
+        return Describe.get(getNode(), offset, limit, status);
     }
 
+    /**
+     * Get the node log.
+     * @param start The log offset from which to return the log (the {@code offset} returned by the previous request),
+     *              or null/empty if the tail end of the log is to be returned.
+     * @return The log.
+     */
     @ServeJson
-    public Object doLog() {
-        return Log.get(getNode());
+    public Object doLog(@QueryParameter String start) {
+        return Log.get(getNode(), start);
+    }
+
+    /**
+     * Get a page of node log lines.
+     * @param fromLine The (1 based) number of the first line to return. Defaults to the first line.
+     * @param lines The number of lines to return.
+     * @return The log lines.
+     * @see LogLines
+     */
+    @ServeJson
+    public Object doLogLines(@QueryParameter String fromLine, @QueryParameter String lines) throws IOException {
+        return LogLines.get(getNode(), fromLine, lines);
+    }
+
+    /**
+     * Stream the node log as plain text, with support for HTTP {@code Range} requests.
+     * @param notes "strip" to remove console notes from the log. Left in by default ("keep").
+     * @see RawLog
+     */
+    public void doRawLog(@QueryParameter String notes, StaplerRequest req, StaplerResponse rsp) throws IOException {
+        RawLog.serve(getNode(), notes, req, rsp);
+    }
+
+    /**
+     * Stream the logs of all the steps in a stage.
+     * @see StageLogs
+     */
+    public void doStageLogs(StaplerResponse rsp) throws IOException {
+        StageLogs.serve(getNode(), rsp);
     }
 }
@@ -24,14 +24,24 @@
 package com.cloudbees.workflow.rest.endpoints;
 
 import com.cloudbees.workflow.rest.AbstractWorkflowJobActionHandler;
+import com.cloudbees.workflow.rest.endpoints.job.Events;
+import com.cloudbees.workflow.rest.endpoints.job.Runs;
+import com.cloudbees.workflow.rest.endpoints.job.StageTrend;
 import com.cloudbees.workflow.rest.external.JobExt;
+import com.cloudbees.workflow.rest.external.JobStageStatsExt;
 import com.cloudbees.workflow.rest.external.RunExt;
+import com.cloudbees.workflow.rest.external.RunsDeltaExt;
+import com.cloudbees.workflow.rest.external.StageTrendExt;
+import com.cloudbees.workflow.stats.JobStageStats;
 import com.cloudbees.workflow.util.ModelUtil;
 import com.cloudbees.workflow.util.ServeJson;
 import hudson.Extension;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -57,15 +67,72 @@ public class JobAPI extends AbstractWorkflowJobActionHandler {
         return getUrl(job) + "runs";
     }
 
+    public static String getStageStatsUrl(WorkflowJob job) {
+        return getUrl(job) + "stageStats";
+    }
+
     /**
      * Get all Workflow Job runs/builds since the specified run/build name.
      * @param since The run/build name at which to stop returning (inclusive),
      *              or null/empty if all runs/builds are to be returned.
-     * @return The runs list.
+     * @param knownVersion The job version (see {@link Runs#JOB_VERSION_HEADER}) the client already knows
+     *              about, or null/empty if the runs are to be returned without waiting for a change.
+     * @param waitSeconds How long to wait for the job to change from {@code knownVersion}.
+     * @return The runs list. Empty if the wait timed out with no change.
+     * @see Runs
+     */
+    @ServeJson
+    public List<RunExt> doRuns(@QueryParameter String since, @QueryParameter String knownVersion,
+                               @QueryParameter String waitSeconds, StaplerResponse rsp) {
+        return Runs.get(getJob(), since, knownVersion, waitSeconds, rsp);
+    }
+
+    /**
+     * Get the Workflow Job runs/builds that changed since a known job version.
+     * @param since The run/build name at which to stop returning (inclusive),
+     *              or null/empty if all runs/builds are to be returned.
+     * @param knownVersion The job version (see {@link Runs#JOB_VERSION_HEADER}) the client already knows
+     *              about, or null/empty if all runs/builds are to be returned.
+     * @param waitSeconds How long to wait for the job to change from {@code knownVersion}.
+     * @return The runs delta.
+     * @see Runs
+     */
+    @ServeJson
+    public RunsDeltaExt doRunsDelta(@QueryParameter String since, @QueryParameter String knownVersion,
+                                    @QueryParameter String waitSeconds, StaplerResponse rsp) {
+        return Runs.getDelta(getJob(), since, knownVersion, waitSeconds, rsp);
+    }
+
+    /**
+     * Stream run changes on the job as Server-Sent Events.
+     * @see Events
+     */
+    public void doEvents(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Events.stream(getJob(), req, rsp);
+    }
+
+    /**
+     * Get the stage duration statistics for the job.
+     * @see JobStageStats
+     */
+    @ServeJson
+    public JobStageStatsExt doStageStats() {
+        return JobStageStatsExt.create(JobStageStats.get(getJob()));
+    }
+
+    /**
+     * Get stage durations over a range of builds.
+     * @param stages Comma separated list of the stage names to get, or null/empty for all stages.
+     * @param fromBuild The first build number (inclusive), or null/empty for no lower bound.
+     * @param toBuild The last build number (inclusive), or null/empty for no upper bound.
+     * @param limit The max number of builds (the most recent in the range).
+     * @return The stage trend.
+     * @see StageTrend
      */
     @ServeJson
-    public List<RunExt> doRuns(@QueryParameter String since) {
-        return JobExt.create(getJob().getBuilds(), since);
+    public StageTrendExt doStageTrend(@QueryParameter String stages, @QueryParameter String fromBuild,
+                                      @QueryParameter String toBuild, @QueryParameter String limit) throws IOException {
+        return StageTrend.get(getJob(), stages, fromBuild, toBuild, limit);
     }
 
     @ServeJson
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints;
+
+import com.cloudbees.workflow.rest.AbstractAPIActionHandler;
+import com.cloudbees.workflow.rest.endpoints.root.Dashboard;
+import com.cloudbees.workflow.rest.endpoints.root.PendingInputs;
+import com.cloudbees.workflow.rest.external.DashboardExt;
+import com.cloudbees.workflow.util.ModelUtil;
+import com.cloudbees.workflow.util.ServeJson;
+import hudson.Extension;
+import hudson.model.RootAction;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.servlet.ServletException;
+
+/**
+ * API Action handler for information that spans jobs.
+ * <p>
+ * Bound to {@code ${{rootURL}/wfapi/*}}
+ * </p>
+ */
+@Extension
+public class RootAPI implements RootAction {
+
+    public static String getUrl() {
+        return ModelUtil.getFullItemUrl(AbstractAPIActionHandler.URL_BASE);
+    }
+
+    @Override
+    public String getUrlName() {
+        return AbstractAPIActionHandler.URL_BASE;
+    }
+
+    @Override
+    public String getIconFileName() {
+        // No display
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        // No display
+        return null;
+    }
+
+    /**
+     * Get the inputs that running builds are waiting on.
+     * @param mine Only list the inputs the current user can approve.
+     * @return The pending inputs.
+     * @see PendingInputs
+     */
+    @ServeJson
+    public Object doPendingInputs(@QueryParameter boolean mine) {
+        return PendingInputs.get(mine);
+    }
+
+    /**
+     * Get the latest run summaries for the pipeline jobs beneath a folder or view.
+     * @param folder The full name of the folder, or null/empty for the top level.
+     * @param view The name of a view in the folder, or null/empty for all jobs beneath the folder.
+     * @param knownVersion The dashboard version the client already knows about, or null/empty.
+     * @return The dashboard.
+     * @see Dashboard
+     */
+    @ServeJson
+    public DashboardExt doDashboard(@QueryParameter String folder, @QueryParameter String view,
+                                    @QueryParameter String knownVersion) throws ServletException {
+        return Dashboard.get(folder, view, knownVersion);
+    }
+}
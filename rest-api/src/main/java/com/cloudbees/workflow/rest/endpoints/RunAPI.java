@@ -24,15 +24,17 @@
 package com.cloudbees.workflow.rest.endpoints;
 
 import com.cloudbees.workflow.rest.AbstractWorkflowRunActionHandler;
+import com.cloudbees.workflow.rest.endpoints.run.Artifacts;
+import com.cloudbees.workflow.rest.endpoints.run.LogSearch;
 import com.cloudbees.workflow.rest.external.BuildArtifactExt;
 import com.cloudbees.workflow.rest.external.ChangeSetExt;
+import com.cloudbees.workflow.rest.external.LogSearchExt;
 import com.cloudbees.workflow.rest.external.PendingInputActionsExt;
 import com.cloudbees.workflow.rest.external.RunExt;
 import com.cloudbees.workflow.util.ModelUtil;
 import com.cloudbees.workflow.util.ServeJson;
 import hudson.Extension;
 import hudson.model.Run;
-import hudson.scm.ChangeLogSet;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.support.steps.input.InputAction;
@@ -44,6 +46,7 @@ import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.interceptor.RequirePOST;
 
 import javax.servlet.ServletException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -87,7 +90,11 @@ public class RunAPI extends AbstractWorkflowRunActionHandler {
     }
 
     public static String getArtifactUrl(WorkflowRun run, Run<WorkflowJob, WorkflowRun>.Artifact artifact) {
-        return ModelUtil.getFullItemUrl(run.getUrl()) + "artifact/" + artifact.getHref();
+        return getArtifactUrl(run, artifact.getHref());
+    }
+
+    public static String getArtifactUrl(WorkflowRun run, String artifactHref) {
+        return ModelUtil.getFullItemUrl(run.getUrl()) + "artifact/" + artifactHref;
     }
 
     @Restricted(DoNotUse.class) // WebMethod
@@ -105,14 +112,7 @@ public class RunAPI extends AbstractWorkflowRunActionHandler {
     @Restricted(DoNotUse.class) // WebMethod
     @ServeJson
     public List<ChangeSetExt> doChangesets() {
-        List<ChangeSetExt> changeSetExts = new ArrayList<ChangeSetExt>();
-        List<ChangeLogSet<? extends ChangeLogSet.Entry>> changesets = getRun().getChangeSets();
-
-        for (ChangeLogSet<? extends ChangeLogSet.Entry> changeset : changesets) {
-            changeSetExts.add(ChangeSetExt.create(changeset, getRun()));
-        }
-
-        return changeSetExts;
+        return ChangeSetExt.create(getRun());
     }
 
     @Restricted(DoNotUse.class) // WebMethod
@@ -152,19 +152,36 @@ public class RunAPI extends AbstractWorkflowRunActionHandler {
         return null;
     }
 
+    /**
+     * Get the run artifacts.
+     * @param offset The number of (matching) artifacts to skip.
+     * @param limit The maximum number of artifacts to return. All of the (matching) artifacts are returned if
+     * neither {@code offset} nor {@code limit} is supplied.
+     * @param prefix Only return artifacts whose path starts with this prefix.
+     * @return The artifacts.
+     * @see Artifacts
+     */
     @Restricted(DoNotUse.class) // WebMethod
     @ServeJson
-    public List<BuildArtifactExt> doArtifacts() {
-        List<BuildArtifactExt> artifactExts = new ArrayList<BuildArtifactExt>();
-        List<Run<WorkflowJob, WorkflowRun>.Artifact> artifacts = getRun().getArtifacts();
-
-        if (artifacts != null && !artifacts.isEmpty()) {
-            for (Run<WorkflowJob, WorkflowRun>.Artifact artifact : artifacts) {
-                artifactExts.add(BuildArtifactExt.create(artifact, getRun()));
-            }
-        }
+    public List<BuildArtifactExt> doArtifacts(@QueryParameter String offset, @QueryParameter String limit,
+                                              @QueryParameter String prefix) throws IOException {
+        return Artifacts.get(getRun(), offset, limit, prefix);
+    }
 
-        return artifactExts;
+    /**
+     * Search the run's step logs.
+     * @param q The text to search for.
+     * @param regex Is {@code q} a regular expression.
+     * @param maxMatches The maximum number of matches to return.
+     * @param context The number of lines of context to return before and after each match.
+     * @return The search result.
+     * @see LogSearch
+     */
+    @Restricted(DoNotUse.class) // WebMethod
+    @ServeJson
+    public LogSearchExt doSearch(@QueryParameter String q, @QueryParameter boolean regex,
+                                 @QueryParameter String maxMatches, @QueryParameter String context) throws ServletException {
+        return LogSearch.search(getRun(), q, regex, maxMatches, context);
     }
 
     @Restricted(DoNotUse.class) // WebMethod
@@ -28,28 +28,48 @@ import com.cloudbees.workflow.rest.external.AtomFlowNodeExt;
 import com.cloudbees.workflow.rest.external.FlowNodeExt;
 import com.cloudbees.workflow.rest.external.RunExt;
 import com.cloudbees.workflow.rest.external.StageNodeExt;
+import com.cloudbees.workflow.rest.external.StatusExt;
 import com.cloudbees.workflow.rest.endpoints.FlowNodeAPI;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import hudson.Util;
 import org.jenkinsci.plugins.workflow.graph.AtomNode;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 
 import javax.annotation.CheckForNull;
+import javax.servlet.ServletException;
 import java.io.IOException;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
  * {@link FlowNode} "describe" endpoint.
+ * <p>
+ * Stage node descriptions list the stage steps. By default, that's the first {@link StageNodeExt#MAX_CHILD_NODES}
+ * steps. Larger stages can be paged through using the {@code offset} and {@code limit} parameters, optionally
+ * filtered by step status. Pages are served from the execution {@link com.cloudbees.workflow.flownode.FlowGraphIndex},
+ * so a request only describes the steps on the page.
+ * </p>
  * @author <a href="mailto:tom.fennelly@gmail.com">tom.fennelly@gmail.com</a>
  */
 public class Describe {
     private static final Logger LOGGER = Logger.getLogger(Describe.class.getName());
 
     public static String getUrl(FlowNode node) {
-        return FlowNodeAPI.getUrl(node) + "/describe";
+        return getUrl(FlowNodeAPI.getUrl(node));
     }
 
+    /**
+     * Get the describe URL.
+     * @param nodeApiUrl The node API URL, as returned by {@link FlowNodeAPI#getUrl(FlowNode)}.
+     */
+    public static String getUrl(String nodeApiUrl) {
+        return nodeApiUrl + "/describe";
+    }
+
+    static final int MAX_LIMIT = 1000;
+
     public static FlowNodeExt get(FlowNode node) {
         if (StageNodeExt.isStageNode(node)) {
 
@@ -71,4 +91,47 @@ public class Describe {
             return FlowNodeExt.create(node);
         }
     }
+
+    /**
+     * Get the node description, with a page of the stage steps if the node is a stage node.
+     * @param node The node.
+     * @param offset The number of stage steps to skip, or null/empty for none.
+     * @param limit The max number of stage steps to return. Default {@link StageNodeExt#MAX_CHILD_NODES}, max 1000.
+     * @param status Only return stage steps with this status e.g. "FAILED", or null/empty for all steps.
+     * @return The node description.
+     * @throws ServletException Unknown status.
+     */
+    public static FlowNodeExt get(FlowNode node, String offset, String limit, String status) throws ServletException {
+        offset = Util.fixEmptyAndTrim(offset);
+        limit = Util.fixEmptyAndTrim(limit);
+        status = Util.fixEmptyAndTrim(status);
+        if (!StageNodeExt.isStageNode(node) || (offset == null && limit == null && status == null)) {
+            return get(node);
+        }
+
+        StatusExt statusFilter = null;
+        if (status != null) {
+            try {
+                statusFilter = StatusExt.valueOf(status.toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new ServletException(String.format("Error processing describe request. Unknown status '%s'.", status));
+            }
+        }
+
+        StageNodeExt stageNodeExt = StageNodeExt.create(node);
+        stageNodeExt.addStageFlowNodes(node, statusFilter, Math.max(0, parseInt(offset, 0)),
+                Math.max(0, Math.min(MAX_LIMIT, parseInt(limit, StageNodeExt.MAX_CHILD_NODES))));
+        return stageNodeExt;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                // ignore and use the default
+            }
+        }
+        return defaultValue;
+    }
 }
@@ -34,10 +34,29 @@ import org.jenkinsci.plugins.workflow.graph.FlowNode;
 public class Log {
 
     public static String getUrl(FlowNode node) {
-        return FlowNodeAPI.getUrl(node) + "/log";
+        return getUrl(FlowNodeAPI.getUrl(node));
+    }
+
+    /**
+     * Get the log URL.
+     * @param nodeApiUrl The node API URL, as returned by {@link FlowNodeAPI#getUrl(FlowNode)}.
+     */
+    public static String getUrl(String nodeApiUrl) {
+        return nodeApiUrl + "/log";
     }
 
     public static FlowNodeLogExt get(FlowNode node) {
         return FlowNodeLogExt.create(node);
     }
+
+    public static FlowNodeLogExt get(FlowNode node, String start) {
+        if (start != null) {
+            try {
+                return FlowNodeLogExt.create(node, Long.parseLong(start.trim()));
+            } catch (NumberFormatException e) {
+                // ignore and return the tail of the log
+            }
+        }
+        return FlowNodeLogExt.create(node);
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.flownode;
+
+import com.cloudbees.workflow.flownode.FlowNodeUtil;
+import com.cloudbees.workflow.flownode.LogLineIndex;
+import com.cloudbees.workflow.rest.endpoints.FlowNodeAPI;
+import com.cloudbees.workflow.rest.external.LogLinesExt;
+import com.cloudbees.workflow.rest.external.StatusExt;
+import hudson.console.ConsoleNote;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+
+/**
+ * {@link FlowNode} "logLines" endpoint.
+ * <p>
+ * Returns a page of log lines, by line number. Uses the node {@link LogLineIndex} to find the lines, so only
+ * the part of the log file between the nearest index checkpoint and the last line returned gets read.
+ * Console notes are stripped from the returned text, and lines longer than {@link #MAX_RETURN_BYTES} are
+ * truncated.
+ * </p>
+ */
+public class LogLines {
+
+    static final int DEFAULT_LINES = 100;
+    static final int MAX_LINES = Integer.getInteger(LogLines.class.getName()+".maxLines", 1000);
+    static final int MAX_RETURN_BYTES = Integer.getInteger(LogLines.class.getName()+".maxReturnBytes", 1024 * 1024);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static String getUrl(FlowNode node) {
+        return FlowNodeAPI.getUrl(node) + "/logLines";
+    }
+
+    public static LogLinesExt get(FlowNode node, String fromLine, String lines) throws IOException {
+        return get(node, parseInt(fromLine, 1), parseInt(lines, DEFAULT_LINES));
+    }
+
+    public static LogLinesExt get(FlowNode node, int fromLine, int lines) throws IOException {
+        LogLinesExt logLines = new LogLinesExt();
+
+        fromLine = Math.max(fromLine, 1);
+        lines = Math.max(1, Math.min(lines, MAX_LINES));
+
+        logLines.setNodeId(node.getId());
+        if (node.isRunning()) {
+            logLines.setNodeStatus(StatusExt.IN_PROGRESS);
+        } else {
+            logLines.setNodeStatus(StatusExt.valueOf(node.getError()));
+        }
+        logLines.setFromLine(fromLine);
+
+        LogLineIndex index = LogLineIndex.get(node);
+        if (index == null) {
+            // No log, or not one we can index.
+            return logLines;
+        }
+
+        logLines.setTotalLines(index.getLineCount());
+        if (fromLine > index.getLineCount()) {
+            logLines.setStart(index.getLength());
+            logLines.setOffset(index.getLength());
+            logLines.setText("");
+            return logLines;
+        }
+
+        File logFile = FlowNodeUtil.getLogFile(node);
+        if (logFile == null) {
+            return logLines;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            long offset = index.getCheckpointOffset(fromLine);
+            int lineNumber = index.getCheckpointLine(fromLine);
+            // Only read as far as was indexed. A running node log may have moved on since.
+            long end = index.getLength();
+
+            file.seek(offset);
+            InputStream logStream = new BufferedInputStream(Channels.newInputStream(file.getChannel()));
+            ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+            StringBuilder text = new StringBuilder();
+            int lineCount = 0;
+            int textBytes = 0;
+
+            while (offset < end && lineCount < lines) {
+                long lineStart = offset;
+                // Lines before fromLine (back to the checkpoint) are skipped over, not buffered.
+                boolean keepLine = (lineNumber >= fromLine);
+                lineBuffer.reset();
+                int b;
+                while (offset < end && (b = logStream.read()) != -1) {
+                    offset++;
+                    if (keepLine && lineBuffer.size() < MAX_RETURN_BYTES) {
+                        lineBuffer.write(b);
+                    }
+                    if (b == '\n') {
+                        break;
+                    }
+                }
+                if (offset == lineStart) {
+                    break;
+                }
+
+                if (keepLine) {
+                    if (lineCount > 0 && textBytes + lineBuffer.size() > MAX_RETURN_BYTES) {
+                        // Leave this line for the next page.
+                        offset = lineStart;
+                        break;
+                    }
+                    if (lineCount == 0) {
+                        logLines.setStart(lineStart);
+                    }
+                    text.append(ConsoleNote.removeNotes(new String(lineBuffer.toByteArray(), UTF8)));
+                    textBytes += lineBuffer.size();
+                    lineCount++;
+                }
+                lineNumber++;
+            }
+
+            logLines.setLineCount(lineCount);
+            logLines.setOffset(offset);
+            logLines.setHasMore(fromLine + lineCount <= index.getLineCount());
+            logLines.setText(text.toString());
+        } finally {
+            file.close();
+        }
+
+        return logLines;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                // ignore and use the default
+            }
+        }
+        return defaultValue;
+    }
+}
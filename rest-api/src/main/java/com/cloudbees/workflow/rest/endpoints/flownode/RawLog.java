@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.flownode;
+
+import com.cloudbees.workflow.flownode.FlowNodeUtil;
+import com.cloudbees.workflow.rest.endpoints.FlowNodeAPI;
+import hudson.console.AnnotatedLargeText;
+import hudson.console.PlainTextConsoleOutputStream;
+import org.jenkinsci.plugins.workflow.actions.LogAction;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link FlowNode} "rawLog" endpoint.
+ * <p>
+ * Streams the node log as plain text, without any console note annotation (HTML markup), straight from the log
+ * file to the response. Supports single range HTTP {@code Range} requests, so clients can fetch slices of large logs.
+ * Offsets are log file byte offsets, the same as the "log" endpoint {@code start} and {@code offset}.
+ * </p>
+ * <p>
+ * Console notes are left in the text as is by default ({@code notes=keep}), which is what lets the log go straight
+ * from the file to the response. {@code notes=strip} removes them, at the cost of copying the log through the
+ * note filter. Offsets are log file offsets either way, so the response to a stripped range request can be shorter
+ * than the range.
+ * </p>
+ */
+public class RawLog {
+
+    public static String getUrl(FlowNode node) {
+        return FlowNodeAPI.getUrl(node) + "/rawLog";
+    }
+
+    /**
+     * Serve the node log.
+     * @param node The node.
+     * @param notes "strip" to remove console notes from the log, or null/"keep" to leave them in.
+     * @param req The request.
+     * @param rsp The response.
+     */
+    public static void serve(FlowNode node, String notes, StaplerRequest req, StaplerResponse rsp) throws IOException {
+        boolean stripNotes;
+        if (notes == null || notes.length() == 0 || notes.equals("keep")) {
+            stripNotes = false;
+        } else if (notes.equals("strip")) {
+            stripNotes = true;
+        } else {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown 'notes' value '" + notes + "'. Use 'keep' or 'strip'.");
+            return;
+        }
+
+        LogAction logAction = node.getAction(LogAction.class);
+        if (logAction == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "Node " + node.getId() + " has no log.");
+            return;
+        }
+
+        File logFile = FlowNodeUtil.getLogFile(node);
+        if (logFile == null) {
+            // Not a log we know how to read directly. Stream it the slow way, without range support.
+            AnnotatedLargeText<? extends FlowNode> logText = logAction.getLogText();
+            if (logText == null) {
+                rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "Node " + node.getId() + " has no log.");
+                return;
+            }
+            rsp.setContentType("text/plain;charset=UTF-8");
+            if (stripNotes) {
+                logText.writeLogTo(0, rsp.getOutputStream());
+            } else {
+                logText.writeRawLogTo(0, rsp.getOutputStream());
+            }
+            return;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(logFile, "r");
+        try {
+            FileChannel fileChannel = file.getChannel();
+            // The log may still be growing. We serve what's there now.
+            long length = fileChannel.size();
+            long start = 0;
+            long end = length - 1;
+
+            long[] range = parseRange(req.getHeader("Range"), length);
+            if (range == UNSATISFIABLE) {
+                rsp.setHeader("Content-Range", "bytes */" + length);
+                rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            } else if (range != null) {
+                start = range[0];
+                end = range[1];
+                rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                rsp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+
+            rsp.setContentType("text/plain;charset=UTF-8");
+            rsp.setHeader("Accept-Ranges", "bytes");
+
+            if (stripNotes) {
+                // No Content-Length. We don't know how much is left once the notes are gone.
+                PlainTextConsoleOutputStream out = new PlainTextConsoleOutputStream(rsp.getOutputStream());
+                copy(file, start, end - start + 1, out);
+                out.forceEol();
+                out.flush();
+                return;
+            }
+
+            // Not using setContentLength (int) because the log can be bigger than 2GB.
+            rsp.setHeader("Content-Length", Long.toString(end - start + 1));
+
+            WritableByteChannel out = Channels.newChannel(rsp.getOutputStream());
+            long position = start;
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                long transferred = fileChannel.transferTo(position, remaining, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private static void copy(RandomAccessFile file, long start, long length, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        file.seek(start);
+        while (length > 0) {
+            int read = file.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if (read == -1) {
+                break;
+            }
+            out.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    /**
+     * Parse a HTTP {@code Range} header.
+     * <p>
+     * Only single ranges are supported. Anything else (multiple ranges, or a header we can't make sense of) is
+     * ignored, which means the whole log gets served.
+     * </p>
+     * @param rangeHeader The {@code Range} header value.
+     * @param length The log length.
+     * @return The first and last (inclusive) byte of the range, {@code null} if the whole log is to be served, or
+     * {@link #UNSATISFIABLE} if the range is outside the log.
+     */
+    static long[] parseRange(String rangeHeader, long length) {
+        if (rangeHeader == null) {
+            return null;
+        }
+        rangeHeader = rangeHeader.trim();
+        if (!rangeHeader.startsWith("bytes=") || rangeHeader.indexOf(',') != -1) {
+            return null;
+        }
+
+        String range = rangeHeader.substring("bytes=".length()).trim();
+        int dashIndex = range.indexOf('-');
+        if (dashIndex == -1) {
+            return null;
+        }
+
+        try {
+            String first = range.substring(0, dashIndex).trim();
+            String last = range.substring(dashIndex + 1).trim();
+            long start;
+            long end;
+
+            if (first.length() == 0) {
+                // Suffix range e.g. "bytes=-500" i.e. the last 500 bytes.
+                if (last.length() == 0) {
+                    return null;
+                }
+                long suffixLength = Long.parseLong(last);
+                if (suffixLength <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffixLength);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = (last.length() == 0 ? length - 1 : Long.parseLong(last));
+                if (end < start) {
+                    // e.g. "bytes=500-100"... not a valid range, so ignore it.
+                    return null;
+                }
+                if (start >= length) {
+                    return UNSATISFIABLE;
+                }
+                end = Math.min(end, length - 1);
+            }
+
+            return new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.flownode;
+
+import com.cloudbees.workflow.flownode.FlowGraphIndex;
+import com.cloudbees.workflow.flownode.FlowNodeUtil;
+import com.cloudbees.workflow.rest.endpoints.FlowNodeAPI;
+import com.cloudbees.workflow.rest.external.FlowNodeLogExt;
+import com.cloudbees.workflow.rest.external.StageNodeExt;
+import com.cloudbees.workflow.util.JSONReadWrite;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.jenkinsci.plugins.workflow.actions.LogAction;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stage {@link FlowNode} "stageLogs" endpoint.
+ * <p>
+ * Streams the logs of all the atom nodes in a stage (in node order) as a JSON array of {@link FlowNodeLogExt},
+ * saving the client from having to make a request per node. Each log is tail limited in the same way as the
+ * "log" endpoint, and the number of nodes is limited in the same way as the stage "describe" endpoint. The number
+ * of nodes left out (if any) is returned in the {@link #OMITTED_NODES_HEADER} response header. The stage atom nodes
+ * come from the execution {@link FlowGraphIndex}, so there's no walk of the stage nodes.
+ * </p>
+ */
+public class StageLogs {
+
+    public static final String OMITTED_NODES_HEADER = "X-Wfapi-Omitted-Nodes";
+
+    public static String getUrl(FlowNode node) {
+        return FlowNodeAPI.getUrl(node) + "/stageLogs";
+    }
+
+    public static void serve(FlowNode node, StaplerResponse rsp) throws IOException {
+        if (!StageNodeExt.isStageNode(node)) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "Node " + node.getId() + " is not a stage.");
+            return;
+        }
+
+        List<FlowNode> allNodesSorted = FlowNodeUtil.getIdSortedExecutionNodeList(node.getExecution());
+        int[] atomPositions = FlowNodeUtil.getGraphIndex(allNodesSorted).getStageAtomPositions(node, null, 0, Integer.MAX_VALUE);
+        List<FlowNode> logNodes = new ArrayList<FlowNode>();
+        int omittedNodes = 0;
+        for (int atomPosition : atomPositions) {
+            FlowNode atomNode = allNodesSorted.get(atomPosition);
+            if (atomNode.getAction(LogAction.class) == null) {
+                continue;
+            }
+            if (logNodes.size() < StageNodeExt.MAX_CHILD_NODES) {
+                logNodes.add(atomNode);
+            } else {
+                omittedNodes++;
+            }
+        }
+        if (omittedNodes > 0) {
+            // Has to go out before the body.
+            rsp.setHeader(OMITTED_NODES_HEADER, Integer.toString(omittedNodes));
+        }
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        JsonGenerator generator = JSONReadWrite.jsonMapper.getFactory().createGenerator(rsp.getOutputStream(), JsonEncoding.UTF8);
+        try {
+            generator.writeStartArray();
+            for (FlowNode stageNode : logNodes) {
+                JSONReadWrite.jsonMapper.writeValue(generator, FlowNodeLogExt.create(stageNode));
+                // Get it out to the client as we go, rather than holding all the logs.
+                generator.flush();
+            }
+            generator.writeEndArray();
+        } finally {
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.job;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Cap on the number of requests held open waiting for job changes, shared by the "runs" endpoint (when asked to
+ * wait for a change) and the "events" stream.
+ * <p>
+ * Requests are served synchronously, so a waiting request (or an open stream) ties up a request handling thread
+ * of the servlet container for as long as it waits. The container pool is shared with everything else Jenkins
+ * serves (the UI included), so the cap is kept well below the size of that pool.
+ * </p>
+ */
+final class ChangeWaitLimit {
+
+    static final int MAX_WAITING_REQUESTS = Integer.getInteger(ChangeWaitLimit.class.getName()+".maxWaitingRequests", 10);
+
+    private static final Semaphore permits = new Semaphore(MAX_WAITING_REQUESTS);
+
+    private ChangeWaitLimit() {
+    }
+
+    /**
+     * Take a place among the waiting requests, if there's one left.
+     * @return {@code true} if a place was taken, in which case it must be given back through {@link #release()}.
+     */
+    static boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    static void release() {
+        permits.release();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.job;
+
+import com.cloudbees.workflow.rest.endpoints.JobAPI;
+import com.cloudbees.workflow.rest.events.JobEventChannel;
+import com.cloudbees.workflow.rest.events.JobEventNotifier;
+import com.cloudbees.workflow.rest.external.RunEventExt;
+import com.cloudbees.workflow.util.JSONReadWrite;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * {@link WorkflowJob} "events" endpoint.
+ * <p>
+ * Streams job run changes as <a href="https://www.w3.org/TR/eventsource/">Server-Sent Events</a>, so clients
+ * only need to go back to the "runs" endpoint when something actually changed.
+ * </p>
+ * <p>
+ * Each open stream holds a request thread, so the number of concurrent streams is capped (see
+ * {@link ChangeWaitLimit}, shared with the "runs" endpoint wait). Once the cap is hit, new streams get a 503
+ * and clients are expected to fall back to polling. Streams are also closed after a
+ * while, leaving it to the client to reconnect (which {@code EventSource} does for us).
+ * </p>
+ */
+public class Events {
+
+    private static final Logger LOGGER = Logger.getLogger(Events.class.getName());
+
+    static final long MAX_STREAM_MILLIS = TimeUnit.SECONDS.toMillis(Integer.getInteger(Events.class.getName()+".maxStreamSeconds", 300));
+    static final long KEEP_ALIVE_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    // Let changes settle for a moment so as a burst of steps goes out as one batch
+    static final long COALESCE_MILLIS = 500;
+
+    public static String getUrl(WorkflowJob job) {
+        return JobAPI.getUrl(job) + "events";
+    }
+
+    public static void stream(WorkflowJob job, StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (!ChangeWaitLimit.tryAcquire()) {
+            rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many event streams open. Poll for changes instead.");
+            return;
+        }
+
+        try {
+            JobEventChannel channel = JobEventNotifier.getChannel(job);
+            long version = getLastEventId(req, channel.getVersion());
+
+            rsp.setStatus(HttpServletResponse.SC_OK);
+            rsp.setContentType("text/event-stream; charset=UTF-8");
+            rsp.setHeader("Cache-Control", "no-cache");
+            rsp.setHeader("X-Accel-Buffering", "no"); // Stop nginx from buffering the stream
+
+            Writer writer = new OutputStreamWriter(rsp.getOutputStream(), "UTF-8");
+            writer.write("retry: " + KEEP_ALIVE_MILLIS + "\n");
+            writer.write("id: " + version + "\n\n");
+            writer.flush();
+
+            long closeAt = System.currentTimeMillis() + MAX_STREAM_MILLIS;
+            while (System.currentTimeMillis() < closeAt) {
+                long newVersion = channel.awaitChange(version, KEEP_ALIVE_MILLIS);
+                if (newVersion == version) {
+                    // Comment line. Keeps proxies from closing an idle connection and tells us if the client went away.
+                    writer.write(": keep-alive\n\n");
+                    writer.flush();
+                    continue;
+                }
+
+                Thread.sleep(COALESCE_MILLIS);
+
+                List<RunEventExt> events = channel.getEventsSince(version);
+                if (events == null) {
+                    // We no longer have all the events since the client version.
+                    // Tell the client to reload everything.
+                    version = channel.getVersion();
+                    writer.write("id: " + version + "\n");
+                    writer.write("event: reset\n");
+                    writer.write("data: {}\n\n");
+                } else {
+                    for (RunEventExt event : events) {
+                        version = event.getVersion();
+                        writer.write("id: " + version + "\n");
+                        writer.write("event: " + event.getType().getEventName() + "\n");
+                        writer.write("data: " + JSONReadWrite.jsonMapper.writeValueAsString(event) + "\n\n");
+                    }
+                    if (events.isEmpty()) {
+                        version = newVersion;
+                    }
+                }
+                writer.flush();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.fine("Event stream for " + job.getFullName() + " interrupted.");
+        } catch (IOException e) {
+            // Most likely the client went away.
+            LOGGER.fine("Event stream for " + job.getFullName() + " closed: " + e.getMessage());
+        } finally {
+            ChangeWaitLimit.release();
+        }
+    }
+
+    private static long getLastEventId(StaplerRequest req, long defaultVersion) {
+        String lastEventId = req.getHeader("Last-Event-ID");
+        if (lastEventId != null) {
+            try {
+                return Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                // ignore
+            }
+        }
+        return defaultVersion;
+    }
+}
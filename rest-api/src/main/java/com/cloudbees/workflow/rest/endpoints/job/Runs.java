@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.job;
+
+import com.cloudbees.workflow.rest.events.JobEventChannel;
+import com.cloudbees.workflow.rest.events.JobEventNotifier;
+import com.cloudbees.workflow.rest.external.JobExt;
+import com.cloudbees.workflow.rest.external.RunEventExt;
+import com.cloudbees.workflow.rest.external.RunExt;
+import com.cloudbees.workflow.rest.external.RunsDeltaExt;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * {@link WorkflowJob} "runs" and "runsDelta" endpoints.
+ * <p>
+ * Every response carries the job version in the {@link #JOB_VERSION_HEADER} header. A client can hand that
+ * version back (the {@code knownVersion} parameter), along with a {@code waitSeconds} parameter, to have the
+ * request held until something changes on the job. If nothing changes before the wait is up, an empty list is
+ * returned.
+ * </p>
+ * <p>
+ * Each waiting request holds a request thread, so the number of waiting requests is capped (see
+ * {@link ChangeWaitLimit}, shared with the "events" stream). Once the cap is hit, requests are answered straight
+ * away and without a version header, telling the client to go back to polling for a while.
+ * </p>
+ * <p>
+ * The "runsDelta" endpoint works the same way, but only returns the runs and stages that changed since the
+ * known version (see {@link RunsDeltaExt}).
+ * </p>
+ */
+public class Runs {
+
+    private static final Logger LOGGER = Logger.getLogger(Runs.class.getName());
+
+    public static final String JOB_VERSION_HEADER = "X-Wfapi-Job-Version";
+
+    static final int MAX_WAIT_SECONDS = Integer.getInteger(Runs.class.getName()+".maxWaitSeconds", 30);
+
+    public static List<RunExt> get(WorkflowJob job, String since, String knownVersion, String waitSeconds, StaplerResponse rsp) {
+        JobEventChannel channel = JobEventNotifier.getChannel(job);
+        Long known = parseLong(knownVersion);
+
+        if (known != null) {
+            WaitResult waitResult = awaitChange(job, channel, known, waitSeconds);
+            if (waitResult == WaitResult.BUSY) {
+                return JobExt.create(job.getBuilds(), since);
+            } else if (waitResult == WaitResult.NO_CHANGE) {
+                rsp.setHeader(JOB_VERSION_HEADER, Long.toString(known));
+                return Collections.emptyList();
+            }
+        }
+
+        // Get the version before building the runs list. If something changes while we're building
+        // the list, the client will just come back for it next time.
+        rsp.setHeader(JOB_VERSION_HEADER, Long.toString(channel.getVersion()));
+        return JobExt.create(job.getBuilds(), since);
+    }
+
+    /**
+     * Get the changes on the job runs since the known version.
+     * <p>
+     * Waits for a change in the same way as {@link #get(WorkflowJob, String, String, String, StaplerResponse)},
+     * but only returns what changed since {@code knownVersion}. All runs are returned if {@code knownVersion} is
+     * not supplied, or if we no longer know what changed since then.
+     * </p>
+     */
+    public static RunsDeltaExt getDelta(WorkflowJob job, String since, String knownVersion, String waitSeconds, StaplerResponse rsp) {
+        JobEventChannel channel = JobEventNotifier.getChannel(job);
+        Long known = parseLong(knownVersion);
+
+        if (known != null) {
+            WaitResult waitResult = awaitChange(job, channel, known, waitSeconds);
+            if (waitResult == WaitResult.BUSY) {
+                return RunsDeltaExt.create(job.getBuilds(), since, channel.getVersion(), null);
+            } else if (waitResult == WaitResult.NO_CHANGE) {
+                rsp.setHeader(JOB_VERSION_HEADER, Long.toString(known));
+                return RunsDeltaExt.create(Collections.<WorkflowRun>emptyList(), since, known, Collections.<RunEventExt>emptyList());
+            }
+        }
+
+        long version = channel.getVersion();
+        List<RunEventExt> changes = (known != null ? channel.getEventsSince(known) : null);
+        rsp.setHeader(JOB_VERSION_HEADER, Long.toString(version));
+        return RunsDeltaExt.create(job.getBuilds(), since, version, changes);
+    }
+
+    private enum WaitResult {
+        CHANGED,
+        NO_CHANGE,
+        BUSY
+    }
+
+    private static WaitResult awaitChange(WorkflowJob job, JobEventChannel channel, long knownVersion, String waitSeconds) {
+        long waitMillis = getWaitMillis(waitSeconds);
+        if (waitMillis == 0) {
+            // Not waiting... let the caller work out what changed (if anything).
+            return WaitResult.CHANGED;
+        }
+        if (!ChangeWaitLimit.tryAcquire()) {
+            return WaitResult.BUSY;
+        }
+        try {
+            if (channel.awaitChange(knownVersion, waitMillis) == knownVersion) {
+                return WaitResult.NO_CHANGE;
+            }
+        } catch (InterruptedException e) {
+            LOGGER.fine("Wait for change on " + job.getFullName() + " interrupted.");
+        } finally {
+            ChangeWaitLimit.release();
+        }
+        return WaitResult.CHANGED;
+    }
+
+    private static long getWaitMillis(String waitSeconds) {
+        Long seconds = parseLong(waitSeconds);
+        if (seconds == null || seconds < 0) {
+            return 0;
+        }
+        return TimeUnit.SECONDS.toMillis(Math.min(seconds, MAX_WAIT_SECONDS));
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.job;
+
+import com.cloudbees.workflow.rest.endpoints.JobAPI;
+import com.cloudbees.workflow.rest.external.StageTrendExt;
+import com.cloudbees.workflow.stats.StageHistory;
+import hudson.Util;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link WorkflowJob} "stageTrend" endpoint.
+ * <p>
+ * Stage durations over a range of builds, for charting. Comes from the job {@link StageHistory}, so it can
+ * cover hundreds of builds without loading any of them.
+ * </p>
+ */
+public class StageTrend {
+
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    public static String getUrl(WorkflowJob job) {
+        return JobAPI.getUrl(job) + "stageTrend";
+    }
+
+    /**
+     * Get the stage trend.
+     * @param job The job.
+     * @param stages Comma separated list of the stage names to get, or null/empty for all stages.
+     * @param fromBuild The first build number (inclusive), or null/empty for no lower bound.
+     * @param toBuild The last build number (inclusive), or null/empty for no upper bound.
+     * @param limit The max number of builds (the most recent in the range). Default 100, max 1000.
+     * @return The stage trend.
+     * @throws IOException Error reading the stage history.
+     */
+    public static StageTrendExt get(WorkflowJob job, String stages, String fromBuild, String toBuild, String limit) throws IOException {
+        Set<String> stageNames = null;
+        stages = Util.fixEmptyAndTrim(stages);
+        if (stages != null) {
+            stageNames = new HashSet<String>();
+            for (String stageName : stages.split(",")) {
+                stageNames.add(stageName.trim());
+            }
+        }
+
+        int maxBuilds = Math.max(0, Math.min(MAX_LIMIT, parseInt(limit, DEFAULT_LIMIT)));
+
+        return StageTrendExt.create(StageHistory.get(job).read(stageNames,
+                parseInt(fromBuild, Integer.MIN_VALUE), parseInt(toBuild, Integer.MAX_VALUE), maxBuilds));
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                // ignore and use the default
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.root;
+
+import com.cloudbees.workflow.rest.endpoints.RootAPI;
+import com.cloudbees.workflow.rest.events.JobEventNotifier;
+import com.cloudbees.workflow.rest.external.DashboardExt;
+import com.cloudbees.workflow.rest.external.DashboardJobExt;
+import com.cloudbees.workflow.util.ConcurrencyUtil;
+import com.cloudbees.workflow.util.ModelUtil;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.View;
+import hudson.model.ViewGroup;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+import javax.servlet.ServletException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Root "dashboard" endpoint.
+ * <p>
+ * Returns a summary of the latest run of every pipeline job beneath a folder or view, so a wall monitor showing
+ * lots of jobs can make one request instead of polling each job's "runs" endpoint. The job summaries are built
+ * in parallel on a bounded pool. Completed runs come from the run cache.
+ * </p>
+ * <p>
+ * The response carries a version token, made from the job versions (see {@link JobEventNotifier}) and latest
+ * build numbers. A client can hand that token back (the {@code knownVersion} parameter) and will get an empty
+ * job list if nothing changed. No token is handed out if a job summary could not be built in time.
+ * </p>
+ */
+public class Dashboard {
+
+    private static final Logger LOGGER = Logger.getLogger(Dashboard.class.getName());
+
+    static final int MAX_JOBS = Integer.getInteger(Dashboard.class.getName()+".maxJobs", 200);
+    static final int CONCURRENCY = Integer.getInteger(Dashboard.class.getName()+".concurrency", 8);
+    static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(Integer.getInteger(Dashboard.class.getName()+".timeoutSeconds", 30));
+
+    private static final ExecutorService pool = ConcurrencyUtil.newBoundedPool("wfapi-dashboard", CONCURRENCY);
+
+    public static String getUrl() {
+        return RootAPI.getUrl() + "dashboard";
+    }
+
+    /**
+     * Get the dashboard.
+     * @param folder The full name of the folder, or null/empty for the top level.
+     * @param view The name of a view in the folder, or null/empty for all jobs beneath the folder.
+     * @param knownVersion The dashboard version the client already knows about, or null/empty.
+     * @return The dashboard.
+     */
+    public static DashboardExt get(String folder, String view, String knownVersion) throws ServletException {
+        List<WorkflowJob> jobs = getJobs(folder, view);
+
+        // Worked out before building the job summaries. If something changes while we're building
+        // them, the client will just come back for it next time.
+        String version = getVersion(jobs);
+        if (version.equals(knownVersion)) {
+            return DashboardExt.create(version, Collections.<DashboardJobExt>emptyList());
+        }
+
+        List<DashboardJobExt> jobExts = createJobSummaries(jobs);
+        if (jobExts.size() < jobs.size()) {
+            // Some jobs were left out. Don't let the client think it's up to date.
+            version = null;
+        }
+        return DashboardExt.create(version, jobExts);
+    }
+
+    /**
+     * Get the pipeline jobs beneath a folder or view that the user can see, in the order they are listed.
+     */
+    static List<WorkflowJob> getJobs(String folder, String view) throws ServletException {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return Collections.emptyList();
+        }
+
+        ItemGroup<?> itemGroup = jenkins;
+        folder = Util.fixEmptyAndTrim(folder);
+        if (folder != null) {
+            Item folderItem = jenkins.getItemByFullName(folder);
+            if (!(folderItem instanceof ItemGroup)) {
+                throw new ServletException(String.format("Error processing dashboard request. Unknown folder '%s'.", folder));
+            }
+            itemGroup = (ItemGroup<?>) folderItem;
+        }
+
+        Collection<? extends Item> items = itemGroup.getItems();
+        view = Util.fixEmptyAndTrim(view);
+        if (view != null) {
+            View viewObject = (itemGroup instanceof ViewGroup ? ((ViewGroup) itemGroup).getView(view) : null);
+            if (viewObject == null) {
+                throw new ServletException(String.format("Error processing dashboard request. Unknown view '%s'.", view));
+            }
+            items = viewObject.getItems();
+        }
+
+        // A set, in case a view lists a job as well as a folder containing it.
+        Set<WorkflowJob> jobs = new LinkedHashSet<WorkflowJob>();
+        addJobs(items, jobs);
+        return new ArrayList<WorkflowJob>(jobs);
+    }
+
+    private static void addJobs(Collection<? extends Item> items, Set<WorkflowJob> jobs) {
+        for (Item item : items) {
+            if (jobs.size() >= MAX_JOBS) {
+                return;
+            }
+            if (!item.hasPermission(Item.READ)) {
+                continue;
+            }
+            if (item instanceof WorkflowJob) {
+                jobs.add((WorkflowJob) item);
+            } else if (item instanceof ItemGroup) {
+                addJobs(((ItemGroup<?>) item).getItems(), jobs);
+            }
+        }
+    }
+
+    /**
+     * Get the dashboard version token for a list of jobs.
+     */
+    static String getVersion(List<WorkflowJob> jobs) {
+        StringBuilder versions = new StringBuilder();
+        for (WorkflowJob job : jobs) {
+            WorkflowRun latestRun = job.getLastBuild();
+            versions.append(job.getFullName())
+                    .append(':').append(JobEventNotifier.getChannel(job).getVersion())
+                    .append(':').append(latestRun != null ? latestRun.getNumber() : 0)
+                    .append('\n');
+        }
+        return Util.getDigestOf(versions.toString());
+    }
+
+    private static List<DashboardJobExt> createJobSummaries(List<WorkflowJob> jobs) {
+        List<Future<DashboardJobExt>> summaries = new ArrayList<Future<DashboardJobExt>>();
+        for (final WorkflowJob job : jobs) {
+            summaries.add(pool.submit(ModelUtil.withRootUrl(new Callable<DashboardJobExt>() {
+                @Override
+                public DashboardJobExt call() throws Exception {
+                    return DashboardJobExt.create(job);
+                }
+            })));
+        }
+
+        List<DashboardJobExt> jobExts = new ArrayList<DashboardJobExt>();
+        long timeoutAt = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        for (int i = 0; i < summaries.size(); i++) {
+            Future<DashboardJobExt> summary = summaries.get(i);
+            try {
+                jobExts.add(summary.get(Math.max(0, timeoutAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                // Out of time. Leave the job off the dashboard this time around.
+                summary.cancel(true);
+                LOGGER.fine("Timed out building dashboard summary for " + jobs.get(i).getFullName());
+            } catch (InterruptedException e) {
+                for (int ii = i; ii < summaries.size(); ii++) {
+                    summaries.get(ii).cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.WARNING, "Error building dashboard summary for " + jobs.get(i).getFullName(), e.getCause());
+            }
+        }
+        return jobExts;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.root;
+
+import com.cloudbees.workflow.rest.endpoints.RootAPI;
+import com.cloudbees.workflow.rest.external.PendingInputExt;
+import com.cloudbees.workflow.run.PendingInputIndex;
+import hudson.model.Item;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.GrantedAuthority;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.support.steps.input.InputStep;
+import org.jenkinsci.plugins.workflow.support.steps.input.InputStepExecution;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Root "pendingInputs" endpoint.
+ * <p>
+ * Lists the inputs that running builds, across all jobs, are waiting on. Comes from the {@link PendingInputIndex},
+ * so the cost is in line with the number of builds waiting on input, not the number of jobs and runs.
+ * Only builds of jobs the user can see are listed.
+ * </p>
+ */
+public class PendingInputs {
+
+    public static String getUrl() {
+        return RootAPI.getUrl() + "pendingInputs";
+    }
+
+    /**
+     * Get the pending inputs.
+     * @param mine Only list the inputs the current user can approve.
+     * @return The pending inputs, oldest build first.
+     */
+    public static List<PendingInputExt> get(boolean mine) {
+        List<PendingInputExt> pendingInputExts = new ArrayList<PendingInputExt>();
+
+        List<PendingInputIndex.PendingInputs> pendingInputs = PendingInputIndex.getPendingInputs();
+        Collections.sort(pendingInputs, new Comparator<PendingInputIndex.PendingInputs>() {
+            @Override
+            public int compare(PendingInputIndex.PendingInputs pendingInputs1, PendingInputIndex.PendingInputs pendingInputs2) {
+                long startTime1 = pendingInputs1.getRun().getStartTimeInMillis();
+                long startTime2 = pendingInputs2.getRun().getStartTimeInMillis();
+                return (startTime1 < startTime2 ? -1 : (startTime1 == startTime2 ? 0 : 1));
+            }
+        });
+
+        for (PendingInputIndex.PendingInputs runPendingInputs : pendingInputs) {
+            WorkflowRun run = runPendingInputs.getRun();
+            if (!run.getParent().hasPermission(Item.READ)) {
+                continue;
+            }
+            for (InputStepExecution input : runPendingInputs.getInputs()) {
+                if (!mine || canApprove(input.getInput(), run.getParent())) {
+                    pendingInputExts.add(PendingInputExt.create(input, run));
+                }
+            }
+        }
+
+        return pendingInputExts;
+    }
+
+    /**
+     * Can the current user approve an input.
+     * <p>
+     * Same rules as the input step: anyone that can build the job if the input doesn't name a submitter,
+     * otherwise the submitter (a user id or group name), or an administrator.
+     * </p>
+     */
+    static boolean canApprove(InputStep input, WorkflowJob job) {
+        String submitter = input.getSubmitter();
+        if (submitter == null) {
+            return job.hasPermission(Item.BUILD);
+        }
+
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins != null && jenkins.hasPermission(Jenkins.ADMINISTER)) {
+            return true;
+        }
+
+        Authentication authentication = Jenkins.getAuthentication();
+        for (String submitterName : submitter.split(",")) {
+            submitterName = submitterName.trim();
+            if (submitterName.equals(authentication.getName())) {
+                return true;
+            }
+            for (GrantedAuthority authority : authentication.getAuthorities()) {
+                if (submitterName.equals(authority.getAuthority())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
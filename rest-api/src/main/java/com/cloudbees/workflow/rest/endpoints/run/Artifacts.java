@@ -0,0 +1,226 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.run;
+
+import com.cloudbees.workflow.rest.external.BuildArtifactExt;
+import com.cloudbees.workflow.run.ArtifactManifest;
+import com.cloudbees.workflow.util.ConcurrencyUtil;
+import com.cloudbees.workflow.util.InternalCaches;
+import com.cloudbees.workflow.util.ModelUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jenkins.util.VirtualFile;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link WorkflowRun} "artifacts" endpoint.
+ * <p>
+ * Returns a page of the run artifacts, optionally filtered on a path prefix, or all of them if no page is asked
+ * for (same as before paging was supported, so as existing clients don't silently lose artifacts). Artifacts come from the run
+ * {@link ArtifactManifest}, so there's no walking of the artifacts directory on completed runs, and sizes are
+ * only looked up for the artifacts on the page.
+ * </p>
+ * <p>
+ * Each size lookup is a file system round trip (a network round trip on network storage), so sizes are looked up
+ * in parallel on a shared pool, which limits the number of lookups in flight across all requests. Each request
+ * only has one batch of lookups on the pool at a time. The sizes of completed run artifacts are cached, so
+ * reopening the same page doesn't touch the file system again. Sizes that can't be looked up (in time) are -1.
+ * </p>
+ */
+public class Artifacts {
+
+    private static final Logger LOGGER = Logger.getLogger(Artifacts.class.getName());
+
+    static final int MAX_LIMIT = Integer.getInteger(Artifacts.class.getName()+".maxLimit", 1000);
+    static final int SIZE_LOOKUP_CONCURRENCY = Integer.getInteger(Artifacts.class.getName()+".sizeLookupConcurrency", 8);
+    static final long SIZE_LOOKUP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(Integer.getInteger(Artifacts.class.getName()+".sizeLookupTimeoutSeconds", 30));
+
+    static final long MAX_SIZE_CACHE_ENTRIES = Long.getLong(Artifacts.class.getName()+".maxSizeCacheEntries", 100000);
+
+    /**
+     * Sizes of completed run artifacts, keyed by run cache key + "/" + artifact path.
+     */
+    @Restricted(NoExternalUse.class)
+    public static final InternalCaches.Spec<String, Long> SIZE_CACHE = new InternalCaches.Spec<String, Long>() {
+        @Override
+        protected Cache<String, Long> build() {
+            return CacheBuilder.newBuilder().maximumSize(MAX_SIZE_CACHE_ENTRIES).build();
+        }
+    };
+
+    private static final ExecutorService sizeLookupPool = ConcurrencyUtil.newBoundedPool("wfapi-artifact-size-lookup", SIZE_LOOKUP_CONCURRENCY);
+
+    public static List<BuildArtifactExt> get(WorkflowRun run, String offset, String limit, String prefix) throws IOException {
+        if (offset == null && limit == null) {
+            return getAll(run, prefix);
+        }
+        return get(run, parseInt(offset, 0), parseInt(limit, MAX_LIMIT), prefix);
+    }
+
+    public static List<BuildArtifactExt> get(WorkflowRun run, int offset, int limit, String prefix) throws IOException {
+        return list(run, Math.max(offset, 0), Math.max(1, Math.min(limit, MAX_LIMIT)), prefix);
+    }
+
+    /**
+     * Get all of the artifacts (matching the prefix), no matter how many.
+     */
+    public static List<BuildArtifactExt> getAll(WorkflowRun run, String prefix) throws IOException {
+        return list(run, 0, Integer.MAX_VALUE, prefix);
+    }
+
+    private static List<BuildArtifactExt> list(WorkflowRun run, int offset, int limit, String prefix) throws IOException {
+        if (prefix != null && prefix.length() == 0) {
+            prefix = null;
+        }
+
+        ArtifactManifest manifest = ArtifactManifest.get(run);
+        List<String> paths = manifest.getPaths();
+        List<BuildArtifactExt> artifactExts = new ArrayList<BuildArtifactExt>();
+        List<String> pagePaths = new ArrayList<String>();
+        int matchCount = 0;
+
+        for (int i = 0; i < paths.size() && artifactExts.size() < limit; i++) {
+            if (prefix != null && !paths.get(i).startsWith(prefix)) {
+                continue;
+            }
+            if (matchCount++ < offset) {
+                continue;
+            }
+            artifactExts.add(BuildArtifactExt.create(manifest, i, run));
+            pagePaths.add(paths.get(i));
+        }
+
+        if (!artifactExts.isEmpty()) {
+            long[] sizes = getSizes(run, pagePaths);
+            for (int i = 0; i < artifactExts.size(); i++) {
+                artifactExts.get(i).setSize(sizes[i]);
+            }
+        }
+
+        return artifactExts;
+    }
+
+    /**
+     * Get the sizes of a list of artifacts.
+     * <p>
+     * Lookups go to the shared pool in batches of {@link #SIZE_LOOKUP_CONCURRENCY}, so as one request listing a
+     * large page doesn't queue up a lookup per artifact ahead of every other request.
+     * </p>
+     * @param run The run.
+     * @param paths The artifact paths.
+     * @return The artifact sizes, in the same order as {@code paths}. -1 for sizes that could not be looked up
+     * (in time).
+     */
+    static long[] getSizes(WorkflowRun run, List<String> paths) throws IOException {
+        final VirtualFile root = run.getArtifactManager().root();
+        // Only completed runs. Artifacts on a running build could be overwritten.
+        Cache<String, Long> cache = (run.isBuilding() ? null : InternalCaches.get(SIZE_CACHE));
+        String keyPrefix = ModelUtil.getRunCacheKey(run) + "/";
+
+        long[] sizes = new long[paths.size()];
+        Arrays.fill(sizes, -1L);
+        List<Integer> lookupIndexes = new ArrayList<Integer>();
+
+        for (int i = 0; i < paths.size(); i++) {
+            Long cachedSize = (cache != null ? cache.getIfPresent(keyPrefix + paths.get(i)) : null);
+            if (cachedSize != null) {
+                sizes[i] = cachedSize;
+            } else {
+                lookupIndexes.add(i);
+            }
+        }
+
+        long timeoutAt = System.currentTimeMillis() + SIZE_LOOKUP_TIMEOUT_MILLIS;
+        List<Future<Long>> batch = new ArrayList<Future<Long>>(SIZE_LOOKUP_CONCURRENCY);
+        for (int batchStart = 0; batchStart < lookupIndexes.size(); batchStart += SIZE_LOOKUP_CONCURRENCY) {
+            List<Integer> batchIndexes = lookupIndexes.subList(batchStart, Math.min(batchStart + SIZE_LOOKUP_CONCURRENCY, lookupIndexes.size()));
+
+            batch.clear();
+            for (int index : batchIndexes) {
+                final String path = paths.get(index);
+                batch.add(sizeLookupPool.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        return root.child(path).length();
+                    }
+                }));
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                Future<Long> lookup = batch.get(i);
+                int index = batchIndexes.get(i);
+                try {
+                    sizes[index] = lookup.get(Math.max(0, timeoutAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (cache != null) {
+                        cache.put(keyPrefix + paths.get(index), sizes[index]);
+                    }
+                } catch (TimeoutException e) {
+                    // Out of time. Leave the size unknown, and don't cache it.
+                    lookup.cancel(true);
+                } catch (InterruptedException e) {
+                    for (int ii = i; ii < batch.size(); ii++) {
+                        batch.get(ii).cancel(true);
+                    }
+                    Thread.currentThread().interrupt();
+                    return sizes;
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.FINE, "Error looking up the size of artifact " + paths.get(index), e.getCause());
+                }
+            }
+
+            if (System.currentTimeMillis() >= timeoutAt) {
+                // Out of time. The rest are left unknown.
+                break;
+            }
+        }
+
+        return sizes;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                // ignore and use the default
+            }
+        }
+        return defaultValue;
+    }
+}
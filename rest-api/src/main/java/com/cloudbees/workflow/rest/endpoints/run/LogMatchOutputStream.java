@@ -0,0 +1,325 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.run;
+
+import com.cloudbees.workflow.rest.external.LogMatchExt;
+import hudson.console.ConsoleNote;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming line matcher for a node log.
+ * <p>
+ * The log is written to the stream and matched line by line, holding no more than a line (capped at
+ * {@link #MAX_LINE_BYTES}) and the context lines in memory. Console notes are stripped from lines before matching.
+ * </p>
+ * <p>
+ * Matches are counted against a match budget that can be shared by all the logs in a search. Once the budget
+ * is used up, no more matches are taken, but we keep going until the last matches have their context lines and
+ * we have seen a match beyond the budget (in this log or another log of the same search), so as we know the
+ * search results are incomplete. The stream is then {@link #isDone() done} and any further writes throw
+ * {@link SearchDoneException}, which can be used to stop whatever is writing the log to the stream.
+ * </p>
+ * <p>
+ * A badly written regular expression can take practically forever to match a single line, so matching also
+ * stops once the search deadline is passed or the searching thread is interrupted, including part way through
+ * matching a line.
+ * </p>
+ */
+class LogMatchOutputStream extends OutputStream {
+
+    // Anything after this on a line is ignored. Bounds the memory used, and the time spent matching a line.
+    static final int MAX_LINE_BYTES = 4 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String nodeId;
+    private final String nodeName;
+    private final Pattern pattern;
+    private final int contextLines;
+    private final AtomicInteger matchBudget;
+    private final long deadline;
+
+    private final List<LogMatchExt> matches = new ArrayList<LogMatchExt>();
+    private final LinkedList<String> contextBefore = new LinkedList<String>();
+    private final List<LogMatchExt> awaitingContextAfter = new LinkedList<LogMatchExt>();
+
+    private final byte[] lineBuffer = new byte[MAX_LINE_BYTES];
+    private int lineLength = 0;
+    private int lineNumber = 1;
+    private long lineOffset = 0;
+    private long offset = 0;
+    private boolean done = false;
+    private boolean truncated = false;
+
+    /**
+     * @param deadline The time (as per {@link System#currentTimeMillis()}) at which to give up on the search.
+     */
+    LogMatchOutputStream(String nodeId, String nodeName, Pattern pattern, int contextLines, AtomicInteger matchBudget, long deadline) {
+        this.nodeId = nodeId;
+        this.nodeName = nodeName;
+        this.pattern = pattern;
+        this.contextLines = contextLines;
+        this.matchBudget = matchBudget;
+        this.deadline = deadline;
+    }
+
+    List<LogMatchExt> getMatches() {
+        return matches;
+    }
+
+    boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Did this log have more matches than the budget allows, or did we run out of time before the end of the log.
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (done) {
+            throw new SearchDoneException();
+        }
+        if (b == '\n') {
+            endLine();
+        } else if (lineLength < MAX_LINE_BYTES) {
+            lineBuffer[lineLength++] = (byte) b;
+        }
+        offset++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        if (done) {
+            throw new SearchDoneException();
+        }
+        int end = off + len;
+        for (int i = off; i < end && !done; i++) {
+            byte b = bytes[i];
+            if (b == '\n') {
+                endLine();
+            } else if (lineLength < MAX_LINE_BYTES) {
+                lineBuffer[lineLength++] = b;
+            }
+            offset++;
+        }
+    }
+
+    /**
+     * Match the last line, if it was not terminated.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!done && lineLength > 0) {
+            endLine();
+        }
+        done = true;
+    }
+
+    private void endLine() {
+        if (isOverBudget() && awaitingContextAfter.isEmpty()) {
+            // A match beyond the budget has been seen (maybe in another log in the same search). No point going on.
+            done = true;
+            return;
+        }
+
+        int length = lineLength;
+        if (length == MAX_LINE_BYTES) {
+            // The line was cut, maybe part way through a character.
+            length = getCompleteUTF8Length(lineBuffer, length);
+        } else if (length > 0 && lineBuffer[length - 1] == '\r') {
+            length--;
+        }
+        String line = ConsoleNote.removeNotes(new String(lineBuffer, 0, length, UTF8));
+
+        if (!awaitingContextAfter.isEmpty()) {
+            Iterator<LogMatchExt> awaiting = awaitingContextAfter.iterator();
+            while (awaiting.hasNext()) {
+                LogMatchExt match = awaiting.next();
+                match.getContextAfter().add(line);
+                if (match.getContextAfter().size() >= contextLines) {
+                    awaiting.remove();
+                }
+            }
+        }
+
+        boolean found = false;
+        if (!isOverBudget()) {
+            // Still taking matches, or still need to know if there are more matches than the budget allows.
+            try {
+                found = pattern.matcher(new DeadlineCharSequence(line, deadline)).find();
+            } catch (SearchTimeoutException e) {
+                truncated = true;
+                done = true;
+                return;
+            }
+        }
+
+        if (found) {
+            if (matchBudget.getAndDecrement() > 0) {
+                LogMatchExt match = new LogMatchExt();
+                match.setNodeId(nodeId);
+                match.setNodeName(nodeName);
+                match.setLineNumber(lineNumber);
+                match.setOffset(lineOffset);
+                match.setLine(line);
+                match.getContextBefore().addAll(contextBefore);
+                matches.add(match);
+                if (contextLines > 0) {
+                    awaitingContextAfter.add(match);
+                }
+            } else {
+                // One match more than the budget allows.
+                truncated = true;
+            }
+        }
+
+        if (contextLines > 0) {
+            contextBefore.add(line);
+            if (contextBefore.size() > contextLines) {
+                contextBefore.removeFirst();
+            }
+        }
+
+        if (Thread.currentThread().isInterrupted() || System.currentTimeMillis() > deadline) {
+            // The search has been cancelled or timed out.
+            truncated = true;
+            done = true;
+        } else if (isOverBudget() && awaitingContextAfter.isEmpty()) {
+            done = true;
+        }
+
+        lineNumber++;
+        lineOffset = offset + 1; // the current byte is the newline
+        lineLength = 0;
+    }
+
+    /**
+     * Get the length of UTF-8 text, minus any incomplete character at the end (e.g. where the text was cut).
+     * @param bytes The UTF-8 text.
+     * @param length The text length.
+     * @return The length of the text up to the end of its last complete character.
+     */
+    static int getCompleteUTF8Length(byte[] bytes, int length) {
+        // Back up over continuation bytes (10xxxxxx) to the start of the last character.
+        int start = length - 1;
+        while (start >= 0 && length - start < 4 && (bytes[start] & 0xC0) == 0x80) {
+            start--;
+        }
+        if (start < 0) {
+            return length;
+        }
+
+        int lead = bytes[start] & 0xFF;
+        int charLength;
+        if (lead < 0x80) {
+            charLength = 1;
+        } else if ((lead & 0xE0) == 0xC0) {
+            charLength = 2;
+        } else if ((lead & 0xF0) == 0xE0) {
+            charLength = 3;
+        } else if ((lead & 0xF8) == 0xF0) {
+            charLength = 4;
+        } else {
+            // Not valid UTF-8. Leave it to the decoder.
+            return length;
+        }
+        return (start + charLength > length ? start : length);
+    }
+
+    private boolean isOverBudget() {
+        // The budget goes negative once a match beyond the budget is seen.
+        return matchBudget.get() < 0;
+    }
+
+    /**
+     * A line that gives up on being matched once the search deadline has passed, or the thread is interrupted.
+     * {@link java.util.regex.Matcher} has no other way of being stopped and, for some expressions, backtracking
+     * on a single line can go on for hours.
+     */
+    private static class DeadlineCharSequence implements CharSequence {
+
+        // Checking the clock on every char would slow down all matching.
+        private static final int CHECK_INTERVAL = 1024;
+
+        private final CharSequence chars;
+        private final long deadline;
+        private int untilCheck = CHECK_INTERVAL;
+
+        private DeadlineCharSequence(CharSequence chars, long deadline) {
+            this.chars = chars;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--untilCheck <= 0) {
+                untilCheck = CHECK_INTERVAL;
+                if (Thread.currentThread().isInterrupted() || System.currentTimeMillis() > deadline) {
+                    throw new SearchTimeoutException();
+                }
+            }
+            return chars.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return chars.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new DeadlineCharSequence(chars.subSequence(start, end), deadline);
+        }
+
+        @Override
+        public String toString() {
+            return chars.toString();
+        }
+    }
+
+    private static class SearchTimeoutException extends RuntimeException {
+    }
+
+    /**
+     * Thrown on writes after the stream is done, to stop the writer.
+     */
+    static class SearchDoneException extends IOException {
+        SearchDoneException() {
+            super("Log search done");
+        }
+    }
+}
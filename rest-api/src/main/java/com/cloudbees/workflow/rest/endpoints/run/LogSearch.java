@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.run;
+
+import com.cloudbees.workflow.flownode.FlowNodeUtil;
+import com.cloudbees.workflow.rest.external.LogSearchExt;
+import com.cloudbees.workflow.util.ConcurrencyUtil;
+import hudson.console.AnnotatedLargeText;
+import org.jenkinsci.plugins.workflow.actions.LogAction;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.graph.AtomNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+import javax.servlet.ServletException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * {@link WorkflowRun} "search" endpoint.
+ * <p>
+ * Searches the logs of all the steps in a run for lines matching a literal string or a regular expression. Logs
+ * are streamed through a {@link LogMatchOutputStream}, so they are never held in memory. Logs are searched in
+ * parallel on a shared pool, which limits the number of logs being searched at any one time across all searches.
+ * Each search only has one batch of {@link #CONCURRENCY} logs on the pool at a time, so a run with thousands of steps
+ * doesn't queue up thousands of tasks ahead of every other search. Every search has a deadline, after which its logs stop being searched (including a regular expression part way
+ * through matching a line), so a search can't hold on to the pool for longer than that.
+ * </p>
+ */
+public class LogSearch {
+
+    private static final Logger LOGGER = Logger.getLogger(LogSearch.class.getName());
+
+    static final int CONCURRENCY = Integer.getInteger(LogSearch.class.getName()+".concurrency", 4);
+    static final int MAX_MATCHES = Integer.getInteger(LogSearch.class.getName()+".maxMatches", 1000);
+    static final int DEFAULT_MATCHES = 100;
+    static final int MAX_CONTEXT_LINES = 10;
+    static final int DEFAULT_CONTEXT_LINES = 2;
+    static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(Integer.getInteger(LogSearch.class.getName()+".timeoutSeconds", 30));
+
+    private static final ExecutorService searchPool = ConcurrencyUtil.newBoundedPool("wfapi-log-search", CONCURRENCY);
+
+    public static LogSearchExt search(WorkflowRun run, String query, boolean regex, String maxMatches, String context) throws ServletException {
+        if (query == null || query.length() == 0) {
+            throw new ServletException("Error processing log search request. No search query ('q') supplied.");
+        }
+
+        final Pattern pattern;
+        try {
+            pattern = (regex ? Pattern.compile(query) : Pattern.compile(Pattern.quote(query)));
+        } catch (PatternSyntaxException e) {
+            throw new ServletException("Error processing log search request. Invalid regular expression.", e);
+        }
+
+        LogSearchExt searchExt = new LogSearchExt();
+        searchExt.setQuery(query);
+        searchExt.setRegex(regex);
+
+        FlowExecution execution = run.getExecution();
+        if (execution == null) {
+            return searchExt;
+        }
+
+        final AtomicInteger matchBudget = new AtomicInteger(getIntParam(maxMatches, DEFAULT_MATCHES, MAX_MATCHES));
+        final int contextLines = getIntParam(context, DEFAULT_CONTEXT_LINES, MAX_CONTEXT_LINES);
+        final long timeoutAt = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+        List<FlowNode> logNodes = new ArrayList<FlowNode>();
+        for (FlowNode node : FlowNodeUtil.getIdSortedExecutionNodeList(execution)) {
+            if (node instanceof AtomNode && node.getAction(LogAction.class) != null) {
+                logNodes.add(node);
+            }
+        }
+
+        // Search a batch at a time, collecting the results in node order.
+        List<Future<LogMatchOutputStream>> batch = new ArrayList<Future<LogMatchOutputStream>>(CONCURRENCY);
+        int nodesSearched = 0;
+        for (int batchStart = 0; batchStart < logNodes.size(); batchStart += CONCURRENCY) {
+            if (matchBudget.get() < 0 || System.currentTimeMillis() >= timeoutAt) {
+                // Out of matches or out of time. The rest of the logs are not searched.
+                searchExt.setTruncated(true);
+                break;
+            }
+
+            batch.clear();
+            for (final FlowNode node : logNodes.subList(batchStart, Math.min(batchStart + CONCURRENCY, logNodes.size()))) {
+                batch.add(searchPool.submit(new Callable<LogMatchOutputStream>() {
+                    @Override
+                    public LogMatchOutputStream call() throws Exception {
+                        return searchNodeLog(node, pattern, contextLines, matchBudget, timeoutAt);
+                    }
+                }));
+            }
+            nodesSearched += batch.size();
+
+            for (int i = 0; i < batch.size(); i++) {
+                Future<LogMatchOutputStream> search = batch.get(i);
+                try {
+                    LogMatchOutputStream nodeSearch = search.get(Math.max(0, timeoutAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    searchExt.getMatches().addAll(nodeSearch.getMatches());
+                    if (nodeSearch.isTruncated()) {
+                        searchExt.setTruncated(true);
+                    }
+                } catch (TimeoutException e) {
+                    // Out of time. We still take the results of searches that are already done.
+                    search.cancel(true);
+                    searchExt.setTruncated(true);
+                } catch (InterruptedException e) {
+                    for (int ii = i; ii < batch.size(); ii++) {
+                        batch.get(ii).cancel(true);
+                    }
+                    searchExt.setTruncated(true);
+                    searchExt.setNodesSearched(nodesSearched);
+                    Thread.currentThread().interrupt();
+                    return searchExt;
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.FINE, "Error searching node log.", e.getCause());
+                }
+            }
+        }
+        searchExt.setNodesSearched(nodesSearched);
+
+        return searchExt;
+    }
+
+    private static LogMatchOutputStream searchNodeLog(FlowNode node, Pattern pattern, int contextLines, AtomicInteger matchBudget, long timeoutAt) throws IOException {
+        LogMatchOutputStream matcher = new LogMatchOutputStream(node.getId(), node.getDisplayName(), pattern, contextLines, matchBudget, timeoutAt);
+        File logFile = FlowNodeUtil.getLogFile(node);
+
+        try {
+            if (logFile != null) {
+                // Read the log file directly so as match offsets are log file offsets (same as the other log endpoints).
+                InputStream logStream = new FileInputStream(logFile);
+                try {
+                    byte[] buffer = new byte[8 * 1024];
+                    int read;
+                    while (!matcher.isDone() && (read = logStream.read(buffer)) != -1) {
+                        matcher.write(buffer, 0, read);
+                    }
+                } finally {
+                    logStream.close();
+                }
+            } else {
+                // Not a log file we know about. Offsets will be offsets into the log text, minus console notes.
+                AnnotatedLargeText<? extends FlowNode> logText = node.getAction(LogAction.class).getLogText();
+                if (logText != null) {
+                    logText.writeLogTo(0, matcher);
+                }
+            }
+        } catch (LogMatchOutputStream.SearchDoneException e) {
+            // Stopped early e.g. match budget used up.
+        } finally {
+            matcher.close();
+        }
+
+        return matcher;
+    }
+
+    private static int getIntParam(String value, int defaultValue, int maxValue) {
+        if (value != null) {
+            try {
+                return Math.max(0, Math.min(Integer.parseInt(value.trim()), maxValue));
+            } catch (NumberFormatException e) {
+                // ignore and use the default
+            }
+        }
+        return defaultValue;
+    }
+}
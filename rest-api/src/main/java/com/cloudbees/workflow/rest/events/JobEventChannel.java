@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.events;
+
+import com.cloudbees.workflow.rest.external.RunEventExt;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Change channel for a single pipeline job.
+ * <p>
+ * Holds a version number that moves forward every time something changes on one of the job's runs, plus a
+ * bounded list of the most recent {@link RunEventExt events}. Readers can block until the version moves
+ * on from the one they already know about.
+ * </p>
+ */
+public class JobEventChannel {
+
+    static final int MAX_RECENT_EVENTS = Integer.getInteger(JobEventChannel.class.getName()+".maxRecentEvents", 100);
+
+    private final LinkedList<RunEventExt> recentEvents = new LinkedList<RunEventExt>();
+    private long version;
+    // Events at or before this version are no longer held in recentEvents
+    private long trimmedVersion;
+
+    JobEventChannel() {
+        // Start the versions from the clock so as a version seen before a restart is
+        // very unlikely to match one handed out after it.
+        this.version = System.currentTimeMillis();
+        this.trimmedVersion = version;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    synchronized void publish(RunEventExt event) {
+        version++;
+        event.setVersion(version);
+
+        // Collapse repeats of the same change e.g. a stream of steps running in the same stage.
+        if (!recentEvents.isEmpty() && recentEvents.getLast().isSameChange(event)) {
+            recentEvents.removeLast();
+        }
+        recentEvents.add(event);
+        if (recentEvents.size() > MAX_RECENT_EVENTS) {
+            trimmedVersion = recentEvents.removeFirst().getVersion();
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Wait for the channel version to move on from the supplied version.
+     * @param knownVersion The version the caller already knows about.
+     * @param timeoutMillis The maximum time to wait.
+     * @return The current version. Same as {@code knownVersion} if the wait timed out.
+     */
+    public synchronized long awaitChange(long knownVersion, long timeoutMillis) throws InterruptedException {
+        long waitUntil = System.currentTimeMillis() + timeoutMillis;
+        while (version == knownVersion) {
+            long remaining = waitUntil - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            wait(remaining);
+        }
+        return version;
+    }
+
+    /**
+     * Get the events published after the supplied version.
+     * @param knownVersion The version the caller already knows about.
+     * @return The events (oldest first), or {@code null} if the channel no longer holds all events since
+     * that version (or never handed it out), in which case the caller needs to resync.
+     */
+    @CheckForNull
+    public synchronized List<RunEventExt> getEventsSince(long knownVersion) {
+        if (knownVersion > version || knownVersion < trimmedVersion) {
+            return null;
+        }
+
+        List<RunEventExt> events = new ArrayList<RunEventExt>();
+        for (RunEventExt event : recentEvents) {
+            if (event.getVersion() > knownVersion) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.events;
+
+import com.cloudbees.workflow.flownode.FlowNodeUtil;
+import com.cloudbees.workflow.rest.external.JobExt;
+import com.cloudbees.workflow.rest.external.RunEventExt;
+import com.cloudbees.workflow.rest.external.StageNodeExt;
+import com.cloudbees.workflow.run.PendingInputIndex;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.flow.GraphListener;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Publishes run changes on pipeline jobs to the job's {@link JobEventChannel}.
+ * <p>
+ * Run start and completion come from a {@link RunListener}. Stage progress comes from a {@link GraphListener}
+ * attached to each running {@link FlowExecution}, which also keeps the {@link PendingInputIndex} up to date and
+ * drops the cached node list of the execution as the graph changes.
+ * </p>
+ */
+public class JobEventNotifier {
+
+    private static final Logger LOGGER = Logger.getLogger(JobEventNotifier.class.getName());
+
+    private static final ConcurrentMap<String, JobEventChannel> channels = new ConcurrentHashMap<String, JobEventChannel>();
+
+    // Executions we have already attached a GraphListener to
+    private static final Set<FlowExecution> listenedTo = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<FlowExecution, Boolean>()));
+
+    private JobEventNotifier() {
+    }
+
+    /**
+     * Get the change channel for a job, creating it if needed.
+     * <p>
+     * When the channel is created, we make sure we're listening to all of the job's running builds. This
+     * covers builds that were resumed after a restart, for which we never saw a run start.
+     * </p>
+     * @param job The job.
+     * @return The job channel.
+     */
+    public static @Nonnull JobEventChannel getChannel(@Nonnull WorkflowJob job) {
+        String key = job.getFullName();
+        JobEventChannel channel = channels.get(key);
+        if (channel == null) {
+            JobEventChannel newChannel = new JobEventChannel();
+            channel = channels.putIfAbsent(key, newChannel);
+            if (channel == null) {
+                channel = newChannel;
+                listenToRunningBuilds(job);
+            }
+        }
+        return channel;
+    }
+
+    static void publish(@Nonnull WorkflowJob job, @Nonnull RunEventExt event) {
+        getChannel(job).publish(event);
+    }
+
+    private static void listenToRunningBuilds(WorkflowJob job) {
+        int count = 0;
+        for (WorkflowRun run : job.getBuilds()) {
+            if (run.isBuilding()) {
+                FlowExecution execution = run.getExecution();
+                if (execution != null) {
+                    listenTo(run, execution);
+                }
+            }
+            // Running builds are at the head of the list. No point walking the whole history.
+            if (++count > JobExt.MAX_RUNS_PER_JOB) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Start listening for changes on a running build, if not already listening.
+     * @param run The build.
+     * @param execution The build flow execution.
+     */
+    @Restricted(NoExternalUse.class)
+    public static void listenTo(WorkflowRun run, FlowExecution execution) {
+        if (listenedTo.add(execution)) {
+            execution.addListener(new StageChangeListener(run));
+        }
+    }
+
+    /**
+     * Pushes stage changes to the job channel as new nodes are added to the flow graph.
+     * <p>
+     * Called on the CPS VM thread, so keep it cheap.
+     * </p>
+     */
+    private static class StageChangeListener implements GraphListener {
+
+        private final WorkflowRun run;
+        private final WorkflowJob job;
+        private final String runId;
+        private final String runName;
+        private String currentStageId;
+
+        private StageChangeListener(WorkflowRun run) {
+            this.run = run;
+            this.job = run.getParent();
+            this.runId = run.getId();
+            this.runName = run.getDisplayName();
+        }
+
+        @Override
+        public void onNewHead(FlowNode node) {
+            if (StageNodeExt.isStageNode(node)) {
+                currentStageId = node.getId();
+            }
+            FlowNodeUtil.invalidateRunningGraph(node.getExecution());
+            publish(job, RunEventExt.create(RunEventExt.Type.STAGE_CHANGED, runId, runName, currentStageId, node.getId()));
+            PendingInputIndex.onChange(run);
+        }
+    }
+
+    @Extension
+    public static class RunEvents extends RunListener<WorkflowRun> {
+        @Override
+        public void onStarted(final WorkflowRun run, TaskListener listener) {
+            publish(run.getParent(), RunEventExt.create(RunEventExt.Type.RUN_STARTED, run.getId(), run.getDisplayName(), null, null));
+
+            // The execution is created after the run is started, so we hook in via the execution promise.
+            Futures.addCallback(run.getExecutionPromise(), new FutureCallback<FlowExecution>() {
+                @Override
+                public void onSuccess(FlowExecution execution) {
+                    if (execution != null) {
+                        listenTo(run, execution);
+                    }
+                }
+                @Override
+                public void onFailure(Throwable t) {
+                    LOGGER.fine("Not listening for stage changes on " + run + ". Execution failed to start: " + t);
+                }
+            });
+        }
+
+        @Override
+        public void onCompleted(WorkflowRun run, @Nonnull TaskListener listener) {
+            publish(run.getParent(), RunEventExt.create(RunEventExt.Type.RUN_COMPLETED, run.getId(), run.getDisplayName(), null, null));
+        }
+    }
+
+    /**
+     * Drop channels for jobs that are gone.  Anyone still reading from a dropped channel will just time out and
+     * reconnect to a new channel.
+     */
+    @Extension
+    public static class JobRemovalHandler extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof WorkflowJob) {
+                channels.remove(item.getFullName());
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (item instanceof WorkflowJob) {
+                channels.remove(oldFullName);
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ package com.cloudbees.workflow.rest.external;
 
 import com.cloudbees.workflow.rest.endpoints.flownode.Log;
 import com.cloudbees.workflow.rest.hal.Link;
+import com.cloudbees.workflow.util.StringPool;
 import org.jenkinsci.plugins.workflow.actions.ErrorAction;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.kohsuke.stapler.Stapler;
@@ -71,8 +72,19 @@ public class AtomFlowNodeExt extends FlowNodeExt {
         return basic;
     }
 
+    @Override
+    void internStrings() {
+        super.internStrings();
+        for (int i = 0; i < parentNodes.size(); i++) {
+            parentNodes.set(i, StringPool.intern(parentNodes.get(i)));
+        }
+    }
+
     private void addParentNodeRefs(FlowNode node) {
-        List<FlowNode> parents = node.getParents();
+        addParentNodeRefs(node.getParents());
+    }
+
+    void addParentNodeRefs(List<FlowNode> parents) {
         if (parents != null && !parents.isEmpty()) {
             for (FlowNode parent : parents) {
                 getParentNodes().add(parent.getId());
@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import com.cloudbees.workflow.flownode.FlowGraphIndex;
+import com.cloudbees.workflow.flownode.FlowNodeUtil;
+import com.cloudbees.workflow.rest.endpoints.FlowNodeAPI;
+import com.cloudbees.workflow.rest.endpoints.flownode.Log;
+import com.cloudbees.workflow.rest.hal.Link;
+import org.jenkinsci.plugins.workflow.actions.TimingAction;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.jenkinsci.plugins.workflow.support.actions.PauseAction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds {@link AtomFlowNodeExt}s in bulk for the nodes of one execution.
+ * <p>
+ * Gives the same result as {@link AtomFlowNodeExt#create(FlowNode)}, but the things that are the same for every
+ * node are only worked out once: the sorted node list and its {@link FlowGraphIndex} (used to find the end time
+ * of each node, and its status and error), the node URL prefix and the request root URL. Exec node names are
+ * carried over from parent to child, rather than each node walking its ancestry.
+ * </p>
+ */
+public class AtomFlowNodeExtFactory {
+
+    private final List<FlowNode> allNodesSorted;
+    private final FlowGraphIndex graphIndex;
+    private final String nodeUrlPrefix;
+    // Exec node names of the nodes built so far, keyed by node id
+    private final Map<String, String> execNodeNames = new HashMap<String, String>();
+
+    private AtomFlowNodeExtFactory(List<FlowNode> allNodesSorted, String nodeUrlPrefix) {
+        this.allNodesSorted = allNodesSorted;
+        this.graphIndex = FlowNodeUtil.getGraphIndex(allNodesSorted);
+        this.nodeUrlPrefix = nodeUrlPrefix;
+    }
+
+    public static AtomFlowNodeExtFactory create(FlowExecution execution) {
+        try {
+            return new AtomFlowNodeExtFactory(FlowNodeUtil.getIdSortedExecutionNodeList(execution),
+                    FlowNodeAPI.getNodeUrlPrefix(execution));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected error getting URL for a FlowExecution.", e);
+        }
+    }
+
+    /**
+     * The index on the sorted node list the factory works from.
+     */
+    public FlowGraphIndex getGraphIndex() {
+        return graphIndex;
+    }
+
+    /**
+     * Build the {@link AtomFlowNodeExt}s for the nodes at a set of positions in the sorted node list.
+     * @param positions The {@link #getGraphIndex() index} positions of the nodes.
+     * @return The node descriptions.
+     */
+    public List<AtomFlowNodeExt> createAll(int[] positions) {
+        List<AtomFlowNodeExt> atomFlowNodeExts = new ArrayList<AtomFlowNodeExt>(positions.length);
+        for (int position : positions) {
+            atomFlowNodeExts.add(create(allNodesSorted.get(position)));
+        }
+        return atomFlowNodeExts;
+    }
+
+    /**
+     * Build the {@link AtomFlowNodeExt}s for a list of nodes.
+     * @param nodes The nodes, in id order.
+     * @return The node descriptions.
+     */
+    public List<AtomFlowNodeExt> createAll(List<FlowNode> nodes) {
+        List<AtomFlowNodeExt> atomFlowNodeExts = new ArrayList<AtomFlowNodeExt>(nodes.size());
+        for (FlowNode node : nodes) {
+            atomFlowNodeExts.add(create(node));
+        }
+        return atomFlowNodeExts;
+    }
+
+    public AtomFlowNodeExt create(FlowNode node) {
+        List<FlowNode> parents = node.getParents();
+        String nodeApiUrl = FlowNodeAPI.getUrl(nodeUrlPrefix, node.getId());
+        int position = graphIndex.indexOf(node);
+
+        // Status and error from the index, rather than going back to the node error.
+        StatusExt status = graphIndex.getStatus(position);
+        ErrorExt error = graphIndex.getError(node);
+        if (status == null) {
+            // Not a node from our list.
+            return AtomFlowNodeExt.create(node);
+        }
+
+        AtomFlowNodeExt atomFlowNodeExt = new AtomFlowNodeExt();
+        atomFlowNodeExt.addBasicNodeData(node, nodeApiUrl, getExecNodeName(node, parents), null, 0L, status, error);
+        if (status != StatusExt.NOT_EXECUTED) {
+            long startTime = TimingAction.getStartTime(node);
+            atomFlowNodeExt.setStartTimeMillis(startTime);
+            atomFlowNodeExt.setDurationMillis(getDuration(position, startTime));
+            atomFlowNodeExt.setPauseDurationMillis(Math.min(PauseAction.getPauseDuration(node), atomFlowNodeExt.getDurationMillis()));
+            atomFlowNodeExt.get_links().setLog(Link.newLink(Log.getUrl(nodeApiUrl)));
+        }
+        atomFlowNodeExt.addParentNodeRefs(parents);
+
+        return atomFlowNodeExt;
+    }
+
+    private String getExecNodeName(FlowNode node, List<FlowNode> parents) {
+        // Consecutive steps mostly run on the same exec node, so we can take that of the previous step.
+        // Steps don't change the exec node themselves, so that's safe where the parent is a step we built.
+        String execNodeName = null;
+        if (parents != null && !parents.isEmpty()) {
+            execNodeName = execNodeNames.get(parents.get(0).getId());
+        }
+        if (execNodeName == null) {
+            execNodeName = FlowNodeUtil.getExecNodeName(node);
+        }
+        execNodeNames.put(node.getId(), execNodeName);
+        return execNodeName;
+    }
+
+    // Same as FlowNodeUtil.getNodeExecDuration, but using our sorted list and index
+    private long getDuration(int position, long startTime) {
+        if (startTime == 0L) {
+            // The node is running and the time has not been marked on it yet.
+            return 0L;
+        }
+        int lastChildPosition = graphIndex.getLastChildPosition(position);
+        if (lastChildPosition == -1) {
+            return 0L;
+        }
+        return TimingAction.getStartTime(allNodesSorted.get(lastChildPosition)) - startTime;
+    }
+}
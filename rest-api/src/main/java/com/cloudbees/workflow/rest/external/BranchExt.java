@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import com.cloudbees.workflow.flownode.FlowGraphIndex;
+import com.cloudbees.workflow.util.StringPool;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A parallel branch within a stage.
+ */
+public class BranchExt {
+
+    private String id;
+    private String name;
+    private String parentId;
+    private StatusExt status;
+    private long startTimeMillis;
+    private long durationMillis;
+    private long pauseDurationMillis;
+
+    /**
+     * The id of the node starting the branch.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * The id of the enclosing branch, on nested branches.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(String parentId) {
+        this.parentId = parentId;
+    }
+
+    public StatusExt getStatus() {
+        return status;
+    }
+
+    public void setStatus(StatusExt status) {
+        this.status = status;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public void setStartTimeMillis(long startTimeMillis) {
+        this.startTimeMillis = startTimeMillis;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public long getPauseDurationMillis() {
+        return pauseDurationMillis;
+    }
+
+    public void setPauseDurationMillis(long pauseDurationMillis) {
+        this.pauseDurationMillis = pauseDurationMillis;
+    }
+
+    void internStrings() {
+        setId(StringPool.intern(getId()));
+        setName(StringPool.intern(getName()));
+        setParentId(StringPool.intern(getParentId()));
+    }
+
+    public static BranchExt create(FlowGraphIndex.Branch branch) {
+        BranchExt branchExt = new BranchExt();
+        branchExt.setId(branch.getId());
+        branchExt.setName(branch.getName());
+        branchExt.setParentId(branch.getParentId());
+        branchExt.setStatus(branch.getStatus());
+        branchExt.setStartTimeMillis(branch.getStartTimeMillis());
+        branchExt.setDurationMillis(branch.getDurationMillis());
+        branchExt.setPauseDurationMillis(branch.getPauseDurationMillis());
+        return branchExt;
+    }
+}
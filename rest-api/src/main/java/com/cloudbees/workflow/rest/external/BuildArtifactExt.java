@@ -24,6 +24,7 @@
 package com.cloudbees.workflow.rest.external;
 
 import com.cloudbees.workflow.rest.endpoints.RunAPI;
+import com.cloudbees.workflow.run.ArtifactManifest;
 import hudson.model.Run;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
@@ -98,4 +99,26 @@ public class BuildArtifactExt {
 
         return inputActionExt;
     }
+
+    /**
+     * Create the artifact from the run {@link ArtifactManifest}.
+     * <p>
+     * The size is not set. It's left to the caller to look it up, if needed.
+     * </p>
+     * @param manifest The run artifact manifest.
+     * @param index The artifact index in the manifest.
+     * @param run The run.
+     * @return The artifact.
+     */
+    public static BuildArtifactExt create(ArtifactManifest manifest, int index, WorkflowRun run) {
+        BuildArtifactExt artifactExt = new BuildArtifactExt();
+
+        // Position in the manifest, so as ids don't change from page to page.
+        artifactExt.setId("n" + (index + 1));
+        artifactExt.setName(manifest.getDisplayName(index));
+        artifactExt.setPath(manifest.getHref(index));
+        artifactExt.setUrl(RunAPI.getArtifactUrl(run, manifest.getHref(index)));
+
+        return artifactExt;
+    }
 }
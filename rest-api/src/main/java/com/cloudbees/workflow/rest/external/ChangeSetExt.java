@@ -23,24 +23,74 @@
  */
 package com.cloudbees.workflow.rest.external;
 
+import com.cloudbees.workflow.util.InternalCaches;
 import com.cloudbees.workflow.util.ModelUtil;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import hudson.model.User;
 import hudson.scm.ChangeLogSet;
 import hudson.scm.RepositoryBrowser;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * @author <a href="mailto:tom.fennelly@gmail.com">tom.fennelly@gmail.com</a>
  */
 public class ChangeSetExt {
 
+    static final long MAX_CACHE_COMMITS = Long.getLong(ChangeSetExt.class.getName()+".maxCacheCommits", 50000);
+
+    private static final Logger LOGGER = Logger.getLogger(ChangeSetExt.class.getName());
+
+    // Changesets of completed runs, keyed by run cache key. Bounded by the number of commits held.
+    private static final InternalCaches.Spec<String, List<ChangeSetExt>> CHANGESET_CACHE = new InternalCaches.Spec<String, List<ChangeSetExt>>() {
+        @Override
+        protected Cache<String, List<ChangeSetExt>> build() {
+            return CacheBuilder.newBuilder()
+                    .maximumWeight(MAX_CACHE_COMMITS)
+                    .weigher(new Weigher<String, List<ChangeSetExt>>() {
+                        @Override
+                        public int weigh(String key, List<ChangeSetExt> runChangeSets) {
+                            int commitCount = 1;
+                            for (ChangeSetExt changeSet : runChangeSets) {
+                                commitCount += changeSet.getCommitCount();
+                            }
+                            return commitCount;
+                        }
+                    }).build();
+        }
+    };
+
+    // Jenkins user full name of commit authors, keyed by changeset kind + SCM author. Looking up the user can be
+    // slow (JENKINS-35484). An empty name is cached for authors that could not be resolved, so as we don't keep
+    // trying. Expires so as user name changes get picked up eventually.
+    private static final InternalCaches.Spec<String, String> COMMIT_AUTHOR_CACHE = new InternalCaches.Spec<String, String>() {
+        @Override
+        protected Cache<String, String> build() {
+            return CacheBuilder.newBuilder().maximumSize(10000).expireAfterWrite(1, TimeUnit.HOURS).build();
+        }
+    };
+
+    // Raw (unresolved) author accessors of the common SCM changelog entries e.g. GitChangeSet.getAuthorName(),
+    // MercurialChangeSet.getUser().
+    private static final String[] SCM_AUTHOR_ACCESSORS = {"getAuthorName", "getAuthorEmail", "getUser"};
+    private static final ConcurrentMap<Class<?>, List<Method>> scmAuthorAccessors = new ConcurrentHashMap<Class<?>, List<Method>>();
+
     private String kind;
     private int commitCount;
     private List<Commit> commits;
@@ -156,6 +206,37 @@ public class ChangeSetExt {
         return false;
     }
 
+    /**
+     * Create the changesets for a run.
+     * <p>
+     * The changesets of a completed run don't change, so they are cached.
+     * </p>
+     * @param run The run.
+     * @return The run changesets.
+     */
+    public static List<ChangeSetExt> create(WorkflowRun run) {
+        boolean cacheable = !run.isBuilding();
+        Cache<String, List<ChangeSetExt>> cache = InternalCaches.get(CHANGESET_CACHE);
+
+        if (cacheable) {
+            List<ChangeSetExt> cachedChangeSets = cache.getIfPresent(ModelUtil.getRunCacheKey(run));
+            if (cachedChangeSets != null) {
+                return cachedChangeSets;
+            }
+        }
+
+        List<ChangeSetExt> changeSetExts = new ArrayList<ChangeSetExt>();
+        for (ChangeLogSet<? extends ChangeLogSet.Entry> changeset : run.getChangeSets()) {
+            changeSetExts.add(create(changeset, run));
+        }
+
+        if (cacheable) {
+            changeSetExts = Collections.unmodifiableList(changeSetExts);
+            cache.put(ModelUtil.getRunCacheKey(run), changeSetExts);
+        }
+        return changeSetExts;
+    }
+
     public static ChangeSetExt create(ChangeLogSet<? extends ChangeLogSet.Entry> changeset, WorkflowRun run) {
         ChangeSetExt changeSetExt = new ChangeSetExt();
         changeSetExt.mapFields(changeset, run);
@@ -168,6 +249,7 @@ public class ChangeSetExt {
         Iterator<? extends ChangeLogSet.Entry> iterator = changeset.iterator();
 
         RepositoryBrowser<?> repoBrowser = changeset.getBrowser();
+        boolean resolveCommitAuthors = resolveCommitAuthors();
 
         setKind(changeset.getKind());
         setCommits(new ArrayList<Commit>());
@@ -183,7 +265,7 @@ public class ChangeSetExt {
             commit.setCommitId(entry.getCommitId());
             commit.setCommitUrl(repoUrl);
             commit.setMessage(entry.getMsg());
-            commit.setAuthorJenkinsId(resolveCommitAuthors() ? entry.getAuthor().getFullName() : "");
+            commit.setAuthorJenkinsId(resolveCommitAuthors ? resolveAuthor(changeset.getKind(), entry) : "");
             commit.setTimestamp(entry.getTimestamp());
 
             if (commit.getTimestamp() > -1) {
@@ -199,6 +281,89 @@ public class ChangeSetExt {
         setCommitCount(getCommits().size());
     }
 
+    /**
+     * Get the Jenkins user full name of a commit author.
+     * <p>
+     * Goes through the commit author cache, keyed on the author as recorded by the SCM, so as the (possibly slow)
+     * user lookup happens once per author rather than once per commit. For SCMs we can't get the recorded author
+     * from, the cache is keyed on the commit instead. Authors that can't be resolved are cached too, as an empty name.
+     * </p>
+     */
+    private static String resolveAuthor(String kind, ChangeLogSet.Entry entry) {
+        String key;
+        String scmAuthor = getScmAuthor(entry);
+        if (scmAuthor != null) {
+            key = kind + ":author:" + scmAuthor;
+        } else if (entry.getCommitId() != null) {
+            key = kind + ":commit:" + entry.getCommitId();
+        } else {
+            // Nothing to key the cache on.
+            return getAuthorName(entry);
+        }
+
+        Cache<String, String> cache = InternalCaches.get(COMMIT_AUTHOR_CACHE);
+        String author = cache.getIfPresent(key);
+        if (author == null) {
+            author = getAuthorName(entry);
+            cache.put(key, author);
+        }
+        return author;
+    }
+
+    /**
+     * Get the commit author as recorded by the SCM e.g. the author name and email of a git commit.
+     * <p>
+     * {@link ChangeLogSet.Entry#getAuthor()} is the user lookup we're trying to avoid, and there's no SCM neutral
+     * way of getting at the recorded author, so we use the author accessors of the SCM entry class, if it has any.
+     * </p>
+     * @return The author, or {@code null} if the SCM entry has no author accessors we know of.
+     */
+    static String getScmAuthor(ChangeLogSet.Entry entry) {
+        StringBuilder scmAuthor = new StringBuilder();
+        for (Method accessor : getScmAuthorAccessors(entry.getClass())) {
+            try {
+                Object value = accessor.invoke(entry);
+                if (value != null) {
+                    scmAuthor.append(value).append('|');
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Unable to get the author of commit " + entry.getCommitId(), e);
+            }
+        }
+        return (scmAuthor.length() > 0 ? scmAuthor.toString() : null);
+    }
+
+    private static List<Method> getScmAuthorAccessors(Class<?> entryClass) {
+        List<Method> accessors = scmAuthorAccessors.get(entryClass);
+        if (accessors == null) {
+            accessors = new ArrayList<Method>();
+            for (String accessorName : SCM_AUTHOR_ACCESSORS) {
+                try {
+                    Method accessor = entryClass.getMethod(accessorName);
+                    if (accessor.getReturnType() == String.class) {
+                        accessors.add(accessor);
+                    }
+                } catch (NoSuchMethodException e) {
+                    // Not one this SCM has
+                }
+            }
+            scmAuthorAccessors.put(entryClass, accessors);
+        }
+        return accessors;
+    }
+
+    private static String getAuthorName(ChangeLogSet.Entry entry) {
+        try {
+            User author = entry.getAuthor();
+            if (author != null) {
+                return author.getFullName();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Unable to resolve the author of commit " + entry.getCommitId(), e);
+        }
+        return "";
+    }
+
     protected String getRunUrl(WorkflowRun run) {
         return ModelUtil.getFullItemUrl(run.getUrl());
     }
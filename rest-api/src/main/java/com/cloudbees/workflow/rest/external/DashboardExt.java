@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Latest run summaries for the pipeline jobs beneath a folder or view, as returned by the root "dashboard" endpoint.
+ */
+public class DashboardExt {
+
+    private String version;
+    private List<DashboardJobExt> jobs;
+
+    /**
+     * Dashboard version token. Changes when anything changes on any of the dashboard jobs.
+     * {@code null} if some of the jobs are missing from the dashboard.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getVersion() {
+        return version;
+    }
+
+    public void setVersion(String version) {
+        this.version = version;
+    }
+
+    /**
+     * The dashboard jobs. Empty if the dashboard didn't change from the version the client already knew about.
+     */
+    public List<DashboardJobExt> getJobs() {
+        return jobs;
+    }
+
+    public void setJobs(List<DashboardJobExt> jobs) {
+        this.jobs = jobs;
+    }
+
+    public static DashboardExt create(String version, List<DashboardJobExt> jobs) {
+        DashboardExt dashboardExt = new DashboardExt();
+        dashboardExt.setVersion(version);
+        dashboardExt.setJobs(jobs);
+        return dashboardExt;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import com.cloudbees.workflow.rest.endpoints.JobAPI;
+import com.cloudbees.workflow.rest.hal.Link;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+/**
+ * A job on the root "dashboard" endpoint, along with a summary of its latest run.
+ */
+public class DashboardJobExt {
+
+    private JobExt.JobLinks _links;
+    private String name;
+    private String fullName;
+    private RunExt latestRun;
+
+    public JobExt.JobLinks get_links() {
+        return _links;
+    }
+
+    public void set_links(JobExt.JobLinks _links) {
+        this._links = _links;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getFullName() {
+        return fullName;
+    }
+
+    public void setFullName(String fullName) {
+        this.fullName = fullName;
+    }
+
+    /**
+     * The latest run, with stages but without the stage child nodes. {@code null} if the job has not run.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public RunExt getLatestRun() {
+        return latestRun;
+    }
+
+    public void setLatestRun(RunExt latestRun) {
+        this.latestRun = latestRun;
+    }
+
+    public static DashboardJobExt create(WorkflowJob job) {
+        DashboardJobExt dashboardJobExt = new DashboardJobExt();
+
+        dashboardJobExt.set_links((JobExt.JobLinks) new JobExt.JobLinks().initSelf(JobAPI.getDescribeUrl(job)));
+        dashboardJobExt.get_links().setRuns(Link.newLink(JobAPI.getRunsUrl(job)));
+        dashboardJobExt.setName(job.getName());
+        dashboardJobExt.setFullName(job.getFullName());
+
+        WorkflowRun latestRun = job.getLastBuild();
+        if (latestRun != null) {
+            // RunExt.create serves completed runs from the run cache.
+            dashboardJobExt.setLatestRun(RunExt.create(latestRun).createWrapper());
+        }
+
+        return dashboardJobExt;
+    }
+}
@@ -23,6 +23,7 @@
  */
 package com.cloudbees.workflow.rest.external;
 
+import com.cloudbees.workflow.util.StringPool;
 import org.jenkinsci.plugins.workflow.actions.ErrorAction;
 
 /**
@@ -50,6 +51,12 @@ public class ErrorExt {
     }
 
 
+    void internStrings() {
+        // Error messages often repeat too e.g. "script returned exit code 1".
+        setMessage(StringPool.intern(getMessage()));
+        setType(StringPool.intern(getType()));
+    }
+
     public static ErrorExt create(ErrorAction errorAction) {
         if (errorAction == null) {
             return null;
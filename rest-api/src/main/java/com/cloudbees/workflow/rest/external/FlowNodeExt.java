@@ -23,13 +23,15 @@
  */
 package com.cloudbees.workflow.rest.external;
 
+import com.cloudbees.workflow.flownode.FlowGraphIndex;
 import com.cloudbees.workflow.flownode.FlowNodeUtil;
+import com.cloudbees.workflow.rest.endpoints.FlowNodeAPI;
 import com.cloudbees.workflow.rest.endpoints.flownode.Describe;
 import com.cloudbees.workflow.rest.hal.Link;
 import com.cloudbees.workflow.rest.hal.Links;
+import com.cloudbees.workflow.util.StringPool;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import org.jenkinsci.plugins.workflow.actions.ErrorAction;
-import org.jenkinsci.plugins.workflow.actions.NotExecutedNodeAction;
 import org.jenkinsci.plugins.workflow.actions.TimingAction;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.support.actions.PauseAction;
@@ -128,6 +130,7 @@ public class FlowNodeExt {
 
     public static final class FlowNodeLinks extends Links {
         private Link log;
+        private Link stageLogs;
 
         @JsonInclude(JsonInclude.Include.NON_NULL)
         public Link getLog() {
@@ -137,6 +140,15 @@ public class FlowNodeExt {
         public void setLog(Link log) {
             this.log = log;
         }
+
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public Link getStageLogs() {
+            return stageLogs;
+        }
+
+        public void setStageLogs(Link stageLogs) {
+            this.stageLogs = stageLogs;
+        }
     }
 
     public static FlowNodeExt create(FlowNode node) {
@@ -163,16 +175,20 @@ public class FlowNodeExt {
 
     // Allows for passing in a node with all the key information filled in
     public void addBasicNodeData(FlowNode node, String execNodeName, ExecDuration duration, long startTimeMillis, StatusExt status, ErrorAction error) {
+        addBasicNodeData(node, FlowNodeAPI.getUrl(node), execNodeName, duration, startTimeMillis, status,
+                (status != StatusExt.NOT_EXECUTED ? ErrorExt.create(error) : null));
+    }
+
+    // As above, but with the node API URL and error also worked out already
+    void addBasicNodeData(FlowNode node, String nodeApiUrl, String execNodeName, ExecDuration duration, long startTimeMillis, StatusExt status, ErrorExt error) {
 
         setId(node.getId());
         setName(node.getDisplayName());
         setExecNode(execNodeName);
         set_links(new FlowNodeLinks());
-        get_links().initSelf(Describe.getUrl(node));
+        get_links().initSelf(Describe.getUrl(nodeApiUrl));
         setStatus(status);
-        if (status != StatusExt.NOT_EXECUTED) {
-            setError(ErrorExt.create(error));
-        }
+        setError(error);
 
         this.setStartTimeMillis(startTimeMillis);
         if (duration != null) {
@@ -183,21 +199,28 @@ public class FlowNodeExt {
 
     protected void addBasicNodeData(FlowNode node) {
         String execNodeName = FlowNodeUtil.getExecNodeName(node);
-        boolean isExecuted = NotExecutedNodeAction.isExecuted(node);
-        StatusExt status = null;
-        ErrorAction errorAction = null;
-        if (isExecuted) {
-            errorAction = node.getError();
-            status = StatusExt.valueOf(errorAction);
-        } else {
-            status = StatusExt.NOT_EXECUTED;
-        }
+        // Status from the graph index. Only go to the node error if there is one.
+        StatusExt status = FlowNodeUtil.getStatus(node);
+        ErrorExt error = (FlowGraphIndex.isErrorStatus(status) ? ErrorExt.create(node.getError()) : null);
 
         // Placeholders are used for timing data until calculated explicitly
-        addBasicNodeData(node, execNodeName, null, 0L, status, errorAction);
+        addBasicNodeData(node, FlowNodeAPI.getUrl(node), execNodeName, null, 0L, status, error);
         calculateTimings(node);
     }
 
+    /**
+     * Swap the strings held by this node for their {@link StringPool} copies. For nodes that are going to be
+     * cached.
+     */
+    void internStrings() {
+        setId(StringPool.intern(getId()));
+        setName(StringPool.intern(getName()));
+        setExecNode(StringPool.intern(getExecNode()));
+        if (getError() != null) {
+            getError().internStrings();
+        }
+    }
+
     @Override public String toString() {
         return "FlowNodeExt[id=" + getId() + ",name=" + getName() + "]";
     }
@@ -23,12 +23,23 @@
  */
 package com.cloudbees.workflow.rest.external;
 
+import com.cloudbees.workflow.util.InternalCaches;
+import com.cloudbees.workflow.util.JSONReadWrite;
 import com.cloudbees.workflow.util.ModelUtil;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import hudson.console.AnnotatedLargeText;
+import hudson.model.Queue;
+import hudson.model.Run;
 import org.jenkinsci.plugins.workflow.actions.LogAction;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
 
+import javax.annotation.CheckForNull;
+import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.logging.Level;
@@ -39,13 +50,39 @@ import java.util.logging.Logger;
  */
 public class FlowNodeLogExt {
 
-    private static long MAX_RETURN_CHARS = Integer.getInteger(FlowNodeLogExt.class.getName()+".maxReturnChars", 10 * 1024);
+    public static final long MAX_RETURN_CHARS = Integer.getInteger(FlowNodeLogExt.class.getName()+".maxReturnChars", 10 * 1024);
+
+    static final long MAX_EXCERPT_CACHE_CHARS = Long.getLong(FlowNodeLogExt.class.getName()+".maxExcerptCacheChars", 10 * 1024 * 1024);
+    // Also keep log excerpts in the run directory, so as they survive restarts and memory cache evictions.
+    static final boolean EXCERPT_DISK_CACHE = Boolean.getBoolean(FlowNodeLogExt.class.getName()+".excerptDiskCache");
 
     private static final Logger LOGGER = Logger.getLogger(FlowNodeLogExt.class.getName());
 
+    /**
+     * Log excerpts (the tail of the log, as served by the "log" endpoint) of completed nodes, keyed by
+     * run cache key + node id. Bounded by the size of the excerpt text, rather than the number of excerpts.
+     */
+    @Restricted(NoExternalUse.class)
+    public static final InternalCaches.Spec<String, FlowNodeLogExt> EXCERPT_CACHE = new InternalCaches.Spec<String, FlowNodeLogExt>() {
+        @Override
+        protected Cache<String, FlowNodeLogExt> build() {
+            return CacheBuilder.newBuilder()
+                    .maximumWeight(MAX_EXCERPT_CACHE_CHARS)
+                    .weigher(new Weigher<String, FlowNodeLogExt>() {
+                        @Override
+                        public int weigh(String key, FlowNodeLogExt excerpt) {
+                            return key.length() + (excerpt.getText() != null ? excerpt.getText().length() : 0);
+                        }
+                    }).build();
+        }
+    };
+
     private String nodeId;
+    private String nodeName;
     private StatusExt nodeStatus;
     private long length = 0L;
+    private long start = 0L;
+    private long offset = 0L;
     private boolean hasMore = false;
     private String text;
     private String consoleUrl; // Not a rest endpoint so not including in _links
@@ -58,6 +95,14 @@ public class FlowNodeLogExt {
         this.nodeId = nodeId;
     }
 
+    public String getNodeName() {
+        return nodeName;
+    }
+
+    public void setNodeName(String nodeName) {
+        this.nodeName = nodeName;
+    }
+
     public StatusExt getNodeStatus() {
         return nodeStatus;
     }
@@ -74,6 +119,29 @@ public class FlowNodeLogExt {
         this.length = length;
     }
 
+    /**
+     * The log offset at which {@link #getText() text} starts.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    public void setStart(long start) {
+        this.start = start;
+    }
+
+    /**
+     * The log offset at which {@link #getText() text} ends. Pass it back as the {@code start} on the next
+     * request to get only the log output added since.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
     public boolean isHasMore() {
         return hasMore;
     }
@@ -99,36 +167,183 @@ public class FlowNodeLogExt {
         this.consoleUrl = consoleUrl;
     }
 
+    /**
+     * Copy the log excerpt (the log text and where it came from in the log) from another log.
+     */
+    private void copyExcerpt(FlowNodeLogExt log) {
+        setLength(log.getLength());
+        setStart(log.getStart());
+        setOffset(log.getOffset());
+        setHasMore(log.isHasMore());
+        setText(log.getText());
+    }
+
     public static FlowNodeLogExt create(FlowNode node) {
+        return create(node, -1);
+    }
+
+    /**
+     * Create the log for a node, starting at the supplied log offset.
+     * @param node The node.
+     * @param start The log offset from which to return the log, as returned in {@link #getOffset()} by
+     *              the previous request, or a negative value to just return the tail end of the log.
+     *              If there's more than {@code maxReturnChars} after the offset, only the tail end is
+     *              returned and {@link #isHasMore()} is set.
+     * @return The log.
+     */
+    public static FlowNodeLogExt create(FlowNode node, long start) {
         FlowNodeLogExt logExt = new FlowNodeLogExt();
 
         logExt.setNodeId(node.getId());
-        logExt.setNodeStatus(StatusExt.valueOf(node.getError()));
+        logExt.setNodeName(node.getDisplayName());
+        if (node.isRunning()) {
+            // Tells the client to keep coming back for more
+            logExt.setNodeStatus(StatusExt.IN_PROGRESS);
+        } else {
+            logExt.setNodeStatus(StatusExt.valueOf(node.getError()));
+        }
 
         LogAction logAction = node.getAction(LogAction.class);
         if (logAction != null) {
             logExt.setConsoleUrl(ModelUtil.getFullItemUrl(node) + logAction.getUrlName());
 
+            // The tail of a completed node log never changes, so no need to annotate it more than once.
+            boolean cacheable = (start < 0 && !node.isRunning());
+            if (cacheable) {
+                FlowNodeLogExt cachedExcerpt = getCachedExcerpt(node);
+                if (cachedExcerpt != null) {
+                    logExt.copyExcerpt(cachedExcerpt);
+                    return logExt;
+                }
+            }
+
             AnnotatedLargeText<? extends FlowNode> logText = logAction.getLogText();
             if (logText != null) {
                 long logLen = logText.length();
 
-                logExt.setLength(Math.min(MAX_RETURN_CHARS, logLen));
-                logExt.setHasMore((logLen > MAX_RETURN_CHARS));
+                if (start < 0 || start > logLen) {
+                    // No offset, or the log is not the one the client was reading (e.g. it
+                    // was replaced). Start from the beginning.
+                    start = 0;
+                }
+
+                logExt.setLength(Math.min(MAX_RETURN_CHARS, logLen - start));
+                logExt.setHasMore((logLen - start > MAX_RETURN_CHARS));
+                logExt.setStart(logLen - logExt.getLength());
+                logExt.setOffset(logLen);
 
-                if (logLen > 0) {
+                if (logExt.getLength() > 0) {
                     StringWriter writer = new StringWriter();
                     try {
-                        logText.writeHtmlTo(logLen - logExt.getLength(), writer);
+                        logExt.setOffset(logText.writeHtmlTo(logExt.getStart(), writer));
                         logExt.setText(writer.toString());
                     } catch (IOException e) {
                         LOGGER.log(Level.SEVERE, "Error serializing log for", e);
+                        cacheable = false;
                     }
                 }
+
+                if (cacheable) {
+                    FlowNodeLogExt excerpt = new FlowNodeLogExt();
+                    excerpt.copyExcerpt(logExt);
+                    cacheExcerpt(node, excerpt);
+                }
             }
         }
 
         return logExt;
     }
 
+    /**
+     * Get the cached log excerpt for a completed node.
+     * <p>
+     * Looks in the in-memory cache first and then, if enabled, in the on-disk cache in the run directory.
+     * </p>
+     * @param node The node.
+     * @return The log excerpt, or {@code null} if not cached.
+     */
+    @CheckForNull
+    private static FlowNodeLogExt getCachedExcerpt(FlowNode node) {
+        String key = getExcerptKey(node);
+        if (key == null) {
+            return null;
+        }
+
+        Cache<String, FlowNodeLogExt> cache = InternalCaches.get(EXCERPT_CACHE);
+        FlowNodeLogExt excerpt = cache.getIfPresent(key);
+        if (excerpt == null && EXCERPT_DISK_CACHE) {
+            File excerptFile = getExcerptFile(node);
+            if (excerptFile != null && excerptFile.isFile()) {
+                try {
+                    excerpt = JSONReadWrite.jsonMapper.readValue(excerptFile, FlowNodeLogExt.class);
+                    cache.put(key, excerpt);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Unable to read cached log excerpt " + excerptFile, e);
+                }
+            }
+        }
+        return excerpt;
+    }
+
+    /**
+     * Cache the log excerpt for a completed node.
+     * @param node The node. Must not be running i.e. its log must not change any more.
+     * @param excerpt The log excerpt.
+     */
+    private static void cacheExcerpt(FlowNode node, FlowNodeLogExt excerpt) {
+        String key = getExcerptKey(node);
+        if (key == null) {
+            return;
+        }
+
+        InternalCaches.get(EXCERPT_CACHE).put(key, excerpt);
+        if (EXCERPT_DISK_CACHE) {
+            File excerptFile = getExcerptFile(node);
+            if (excerptFile != null) {
+                try {
+                    File excerptDir = excerptFile.getParentFile();
+                    if (!excerptDir.isDirectory() && !excerptDir.mkdirs()) {
+                        throw new IOException("Unable to create directory " + excerptDir);
+                    }
+                    // Write to a temp file (unique to this write) and move it into place, so as a reader never sees
+                    // a half written file.
+                    File tempFile = File.createTempFile(excerptFile.getName() + ".", ".tmp", excerptDir);
+                    try {
+                        JSONReadWrite.jsonMapper.writeValue(tempFile, excerpt);
+                    } catch (IOException e) {
+                        tempFile.delete();
+                        throw e;
+                    }
+                    if (!tempFile.renameTo(excerptFile)) {
+                        tempFile.delete();
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Unable to write cached log excerpt " + excerptFile, e);
+                }
+            }
+        }
+    }
+
+    private static String getExcerptKey(FlowNode node) {
+        try {
+            Queue.Executable executable = node.getExecution().getOwner().getExecutable();
+            if (executable instanceof Run) {
+                return ModelUtil.getRunCacheKey((Run) executable) + "/" + node.getId();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to locate run for node " + node.getId(), e);
+        }
+        return null;
+    }
+
+    private static File getExcerptFile(FlowNode node) {
+        try {
+            File runDir = node.getExecution().getOwner().getRootDir();
+            // Excerpt size is part of the name, so as a change of size is not served old excerpts.
+            return new File(runDir, "wfapi/log-excerpts/" + node.getId() + "-" + MAX_RETURN_CHARS + ".json");
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to locate run directory for node " + node.getId(), e);
+            return null;
+        }
+    }
 }
@@ -24,6 +24,7 @@
 package com.cloudbees.workflow.rest.external;
 
 import com.cloudbees.workflow.rest.endpoints.JobAPI;
+import com.cloudbees.workflow.rest.endpoints.job.StageTrend;
 import com.cloudbees.workflow.rest.hal.Link;
 import com.cloudbees.workflow.rest.hal.Links;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -74,6 +75,8 @@ public class JobExt {
 
     public static final class JobLinks extends Links {
         private Link runs;
+        private Link stageStats;
+        private Link stageTrend;
 
         public Link getRuns() {
             return runs;
@@ -83,6 +86,24 @@ public class JobExt {
         public void setRuns(Link runs) {
             this.runs = runs;
         }
+
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public Link getStageStats() {
+            return stageStats;
+        }
+
+        public void setStageStats(Link stageStats) {
+            this.stageStats = stageStats;
+        }
+
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public Link getStageTrend() {
+            return stageTrend;
+        }
+
+        public void setStageTrend(Link stageTrend) {
+            this.stageTrend = stageTrend;
+        }
     }
 
     public static JobExt create(WorkflowJob job) {
@@ -90,6 +111,8 @@ public class JobExt {
 
         jobExt.set_links((JobLinks) new JobLinks().initSelf(JobAPI.getDescribeUrl(job)));
         jobExt.get_links().setRuns(Link.newLink(JobAPI.getRunsUrl(job)));
+        jobExt.get_links().setStageStats(Link.newLink(JobAPI.getStageStatsUrl(job)));
+        jobExt.get_links().setStageTrend(Link.newLink(StageTrend.getUrl(job)));
         jobExt.setName(job.getName());
         jobExt.setRunCount(countRuns(job));
 
@@ -112,12 +135,7 @@ public class JobExt {
         return create(runs, null);
     }
     public static List<RunExt> create(List<WorkflowRun> runs, String since) {
-        if (since != null) {
-            since = since.trim();
-            if (since.length() == 0) {
-                since = null;
-            }
-        }
+        since = normalizeSince(since);
 
         List<RunExt> runsExt = new ArrayList<RunExt>();
         for (WorkflowRun run : runs) {
@@ -135,4 +153,14 @@ public class JobExt {
         }
         return runsExt;
     }
+
+    static String normalizeSince(String since) {
+        if (since != null) {
+            since = since.trim();
+            if (since.length() == 0) {
+                since = null;
+            }
+        }
+        return since;
+    }
 }
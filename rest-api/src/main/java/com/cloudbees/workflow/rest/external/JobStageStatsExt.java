@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import com.cloudbees.workflow.stats.JobStageStats;
+import com.cloudbees.workflow.stats.StageStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stage duration statistics for a job, as returned by the job "stageStats" endpoint.
+ */
+public class JobStageStatsExt {
+
+    private long runCount;
+    private StageStatsExt run;
+    private List<StageStatsExt> stages;
+
+    /**
+     * The number of completed runs counted, whatever their result.
+     */
+    public long getRunCount() {
+        return runCount;
+    }
+
+    public void setRunCount(long runCount) {
+        this.runCount = runCount;
+    }
+
+    /**
+     * End to end run durations (successful and unstable runs).
+     */
+    public StageStatsExt getRun() {
+        return run;
+    }
+
+    public void setRun(StageStatsExt run) {
+        this.run = run;
+    }
+
+    /**
+     * Stage durations, in the order the stages were first seen.
+     */
+    public List<StageStatsExt> getStages() {
+        return stages;
+    }
+
+    public void setStages(List<StageStatsExt> stages) {
+        this.stages = stages;
+    }
+
+    public static JobStageStatsExt create(JobStageStats stats) {
+        JobStageStatsExt statsExt = new JobStageStatsExt();
+
+        synchronized (stats) {
+            statsExt.setRunCount(stats.getRunCount());
+            statsExt.setRun(StageStatsExt.create(null, stats.getRun()));
+            statsExt.setStages(new ArrayList<StageStatsExt>());
+            for (Map.Entry<String, StageStats> stage : stats.getStages().entrySet()) {
+                statsExt.getStages().add(StageStatsExt.create(stage.getKey(), stage.getValue()));
+            }
+        }
+
+        return statsExt;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A page of lines from a node log.
+ */
+public class LogLinesExt {
+
+    private String nodeId;
+    private StatusExt nodeStatus;
+    private int fromLine;
+    private int lineCount;
+    private int totalLines;
+    private long start;
+    private long offset;
+    private boolean hasMore;
+    private String text;
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public StatusExt getNodeStatus() {
+        return nodeStatus;
+    }
+
+    public void setNodeStatus(StatusExt nodeStatus) {
+        this.nodeStatus = nodeStatus;
+    }
+
+    /**
+     * The (1 based) number of the first line in {@link #getText() text}.
+     */
+    public int getFromLine() {
+        return fromLine;
+    }
+
+    public void setFromLine(int fromLine) {
+        this.fromLine = fromLine;
+    }
+
+    /**
+     * The number of lines in {@link #getText() text}.
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public void setLineCount(int lineCount) {
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * The number of lines in the log.
+     */
+    public int getTotalLines() {
+        return totalLines;
+    }
+
+    public void setTotalLines(int totalLines) {
+        this.totalLines = totalLines;
+    }
+
+    /**
+     * The log offset at which {@link #getText() text} starts.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    public void setStart(long start) {
+        this.start = start;
+    }
+
+    /**
+     * The log offset at which {@link #getText() text} ends.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * Are there more lines in the log after {@link #getText() text}.
+     */
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import com.cloudbees.workflow.rest.endpoints.RunAPI;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.support.steps.input.InputStepExecution;
+
+/**
+ * An input a build is waiting on, as listed by the root "pendingInputs" endpoint.
+ */
+public class PendingInputExt {
+
+    private String jobName;
+    private String jobFullName;
+    private String runId;
+    private String runName;
+    private String runUrl;
+    private long runStartTimeMillis;
+    private PendingInputActionsExt input;
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public void setJobName(String jobName) {
+        this.jobName = jobName;
+    }
+
+    public String getJobFullName() {
+        return jobFullName;
+    }
+
+    public void setJobFullName(String jobFullName) {
+        this.jobFullName = jobFullName;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public void setRunId(String runId) {
+        this.runId = runId;
+    }
+
+    public String getRunName() {
+        return runName;
+    }
+
+    public void setRunName(String runName) {
+        this.runName = runName;
+    }
+
+    /**
+     * The run "describe" endpoint URL.
+     */
+    public String getRunUrl() {
+        return runUrl;
+    }
+
+    public void setRunUrl(String runUrl) {
+        this.runUrl = runUrl;
+    }
+
+    public long getRunStartTimeMillis() {
+        return runStartTimeMillis;
+    }
+
+    public void setRunStartTimeMillis(long runStartTimeMillis) {
+        this.runStartTimeMillis = runStartTimeMillis;
+    }
+
+    public PendingInputActionsExt getInput() {
+        return input;
+    }
+
+    public void setInput(PendingInputActionsExt input) {
+        this.input = input;
+    }
+
+    public static PendingInputExt create(InputStepExecution inputStepExecution, WorkflowRun run) {
+        PendingInputExt pendingInputExt = new PendingInputExt();
+
+        pendingInputExt.setJobName(run.getParent().getDisplayName());
+        pendingInputExt.setJobFullName(run.getParent().getFullName());
+        pendingInputExt.setRunId(run.getId());
+        pendingInputExt.setRunName(run.getDisplayName());
+        pendingInputExt.setRunUrl(RunAPI.getDescribeUrl(run));
+        pendingInputExt.setRunStartTimeMillis(run.getStartTimeInMillis());
+        pendingInputExt.setInput(PendingInputActionsExt.create(inputStepExecution, run));
+
+        return pendingInputExt;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A change notification for a pipeline job, as pushed on the job "events" stream.
+ */
+public class RunEventExt {
+
+    public enum Type {
+        RUN_STARTED,
+        STAGE_CHANGED,
+        RUN_COMPLETED;
+
+        /**
+         * The SSE event name for this type e.g. "run-started".
+         */
+        public String getEventName() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    private Type type;
+    private long version;
+    private String runId;
+    private String runName;
+    private String stageId;
+    private String nodeId;
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public void setRunId(String runId) {
+        this.runId = runId;
+    }
+
+    public String getRunName() {
+        return runName;
+    }
+
+    public void setRunName(String runName) {
+        this.runName = runName;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getStageId() {
+        return stageId;
+    }
+
+    public void setStageId(String stageId) {
+        this.stageId = stageId;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Does this event describe the same change as the supplied event i.e. could one replace the other.
+     */
+    @JsonIgnore
+    public boolean isSameChange(RunEventExt other) {
+        return other != null && type == other.type
+                && equal(runId, other.runId) && equal(stageId, other.stageId);
+    }
+
+    private static boolean equal(String a, String b) {
+        return (a == null ? b == null : a.equals(b));
+    }
+
+    public static RunEventExt create(Type type, String runId, String runName, String stageId, String nodeId) {
+        RunEventExt event = new RunEventExt();
+        event.setType(type);
+        event.setRunId(runId);
+        event.setRunName(runName);
+        event.setStageId(stageId);
+        event.setNodeId(nodeId);
+        return event;
+    }
+}
@@ -27,14 +27,16 @@ import com.cloudbees.workflow.flownode.FlowNodeUtil;
 import com.cloudbees.workflow.rest.endpoints.RunAPI;
 import com.cloudbees.workflow.rest.hal.Link;
 import com.cloudbees.workflow.rest.hal.Links;
+import com.cloudbees.workflow.run.RunHeaderSummary;
+import com.cloudbees.workflow.stats.CompletionEstimate;
+import com.cloudbees.workflow.stats.JobStageStats;
+import com.cloudbees.workflow.util.StringPool;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import hudson.model.Result;
-import hudson.model.Run;
 import org.jenkinsci.plugins.workflow.actions.TimingAction;
 import org.jenkinsci.plugins.workflow.flow.FlowExecution;
 import org.jenkinsci.plugins.workflow.graph.FlowGraphWalker;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
-import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.jenkinsci.plugins.workflow.support.steps.input.InputAction;
 import org.jenkinsci.plugins.workflow.support.steps.input.InputStepExecution;
@@ -50,8 +52,6 @@ import java.util.List;
  */
 public class RunExt {
 
-    private static int MAX_ARTIFACTS_COUNT = Integer.getInteger(RunExt.class.getName()+".maxArtifactsCount", 100);
-
     private RunLinks _links;
     private String id;
     private String name;
@@ -62,6 +62,9 @@ public class RunExt {
     private long queueDurationMillis;
     private long pauseDurationMillis;
     private List<StageNodeExt> stages;
+    private Integer percentCompleteEstimate;
+    private Long timeRemainingEstimate;
+
     public RunLinks get_links() {
         return _links;
     }
@@ -142,6 +145,31 @@ public class RunExt {
         this.stages = stages;
     }
 
+    /**
+     * Percent complete estimate for a running run, from the job stage statistics.
+     * Not set on completed runs, or if the job has no statistics yet.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer getPercentCompleteEstimate() {
+        return percentCompleteEstimate;
+    }
+
+    public void setPercentCompleteEstimate(Integer percentCompleteEstimate) {
+        this.percentCompleteEstimate = percentCompleteEstimate;
+    }
+
+    /**
+     * Time remaining estimate (millis) for a running run. Not set when there's no estimate, or nothing remaining.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getTimeRemainingEstimate() {
+        return timeRemainingEstimate;
+    }
+
+    public void setTimeRemainingEstimate(Long timeRemainingEstimate) {
+        this.timeRemainingEstimate = timeRemainingEstimate;
+    }
+
     public static final class RunLinks extends Links {
         private Link changesets;
         private Link pendingInputActions;
@@ -238,26 +266,42 @@ public class RunExt {
         runExt.setStages(new ArrayList<StageNodeExt>());
 
         if (execution != null) {
-            if (ChangeSetExt.hasChanges(run)) {
-                runExt.get_links().setChangesets(Link.newLink(RunAPI.getChangeSetsUrl(run)));
-            }
-            if (isPendingInput(run)) {
-                runExt.get_links().setPendingInputActions(Link.newLink(RunAPI.getPendingInputActionsUrl(run)));
-                runExt.get_links().setNextPendingInputAction(Link.newLink(RunAPI.getNextPendingInputActionUrl(run)));
-            }
-            List<Run<WorkflowJob, WorkflowRun>.Artifact> artifacts = run.getArtifactsUpTo(MAX_ARTIFACTS_COUNT);
-            if (artifacts != null && !artifacts.isEmpty()) {
-                runExt.get_links().setArtifacts(Link.newLink(RunAPI.getArtifactsUrl(run)));
-            }
+            runExt.initLinks(run);
         }
         return runExt;
     }
 
+    /**
+     * Add the changesets, artifacts and pending input links, as applicable.
+     * Must be called after the run status is set.
+     */
+    private void initLinks(WorkflowRun run) {
+        RunHeaderSummary summary = RunHeaderSummary.get(run);
+        if (summary.isHasChanges()) {
+            get_links().setChangesets(Link.newLink(RunAPI.getChangeSetsUrl(run)));
+        }
+        // Already worked out as part of the run status.
+        if (getStatus() == StatusExt.PAUSED_PENDING_INPUT) {
+            get_links().setPendingInputActions(Link.newLink(RunAPI.getPendingInputActionsUrl(run)));
+            get_links().setNextPendingInputAction(Link.newLink(RunAPI.getNextPendingInputActionUrl(run)));
+        }
+        if (summary.isHasArtifacts()) {
+            get_links().setArtifacts(Link.newLink(RunAPI.getArtifactsUrl(run)));
+        }
+    }
+
     /** Creates a wrapper of this that hides the full stage nodes
      *  Use case: returning a minimal view of the run, while using a cached, fully-realized version
      */
     public RunExt createWrapper() {
-        return new ChildHidingWrapper(this);
+        return new ChildHidingWrapper(this, 0);
+    }
+
+    /** Creates a wrapper of this that hides the full stage nodes, as well as all stages before the specified stage index
+     *  Use case: returning only the tail end of the stages on a run that is changing
+     */
+    public RunExt createWrapper(int fromStageIndex) {
+        return new ChildHidingWrapper(this, fromStageIndex);
     }
 
     protected static class ChildHidingWrapper extends RunExt {
@@ -274,13 +318,16 @@ public class RunExt {
         public long getQueueDurationMillis() {return myRun.getQueueDurationMillis();}
         public long getPauseDurationMillis() {return myRun.getPauseDurationMillis();}
         public List<StageNodeExt> getStages() {return Collections.unmodifiableList(wrappedStages);}
+        public Integer getPercentCompleteEstimate() {return myRun.getPercentCompleteEstimate();}
+        public Long getTimeRemainingEstimate() {return myRun.getTimeRemainingEstimate();}
 
-        protected ChildHidingWrapper(RunExt run) {
+        protected ChildHidingWrapper(RunExt run, int fromStageIndex) {
             this.myRun = run;
             List<StageNodeExt> myWrappedStages = new ArrayList<StageNodeExt>();
             if (wrappedStages == null) {
-                for(StageNodeExt stage : run.getStages()) {
-                    myWrappedStages.add(stage.myWrapper());
+                List<StageNodeExt> stages = run.getStages();
+                for (int i = Math.max(0, fromStageIndex); i < stages.size(); i++) {
+                    myWrappedStages.add(stages.get(i).myWrapper());
                 }
                 this.wrappedStages = myWrappedStages;
             } else {
@@ -303,11 +350,58 @@ public class RunExt {
         // Compute the entire flow
         RunExt myRun = createOld(run);
         if (isNotRunning) {
+            // Cached runs of the same job repeat the same stage, step and node names over and over.
+            myRun.internStrings();
             FlowNodeUtil.cacheRun(execution, myRun);
+        } else if (execution != null) {
+            myRun.addCompletionEstimates(run);
         }
         return myRun;
     }
 
+    /**
+     * Swap the strings held by this run (and its stages) for their {@link StringPool} copies. For runs that
+     * are going to be cached.
+     */
+    void internStrings() {
+        setId(StringPool.intern(getId()));
+        setName(StringPool.intern(getName()));
+        for (StageNodeExt stage : getStages()) {
+            stage.internStrings();
+        }
+    }
+
+    /**
+     * Add completion estimates to the run and its running stages, if still running.
+     * Must be called after the timings are computed.
+     */
+    private void addCompletionEstimates(WorkflowRun run) {
+        if (!isRunning(getStatus())) {
+            return;
+        }
+
+        JobStageStats stats = JobStageStats.get(run.getParent());
+        synchronized (stats) {
+            CompletionEstimate estimate = CompletionEstimate.create(stats.getRun(), getDurationMillis() - getPauseDurationMillis());
+            if (estimate != null) {
+                setPercentCompleteEstimate(estimate.getPercentComplete());
+                if (estimate.getTimeRemainingMillis() > 0) {
+                    setTimeRemainingEstimate(estimate.getTimeRemainingMillis());
+                }
+            }
+            for (StageNodeExt stage : getStages()) {
+                if (isRunning(stage.getStatus())) {
+                    stage.addCompletionEstimate(CompletionEstimate.create(stats.getStage(stage.getName()),
+                            stage.getDurationMillis() - stage.getPauseDurationMillis()));
+                }
+            }
+        }
+    }
+
+    private static boolean isRunning(StatusExt status) {
+        return (status == StatusExt.IN_PROGRESS || status == StatusExt.PAUSED_PENDING_INPUT);
+    }
+
     public static RunExt createOld(WorkflowRun run) {
         FlowExecution execution = run.getExecution();
 
@@ -322,17 +416,7 @@ public class RunExt {
         runExt.setStages(new ArrayList<StageNodeExt>());
 
         if (execution != null) {
-            if (ChangeSetExt.hasChanges(run)) {
-                runExt.get_links().setChangesets(Link.newLink(RunAPI.getChangeSetsUrl(run)));
-            }
-            if (isPendingInput(run)) {
-                runExt.get_links().setPendingInputActions(Link.newLink(RunAPI.getPendingInputActionsUrl(run)));
-                runExt.get_links().setNextPendingInputAction(Link.newLink(RunAPI.getNextPendingInputActionUrl(run)));
-            }
-            List<Run<WorkflowJob, WorkflowRun>.Artifact> artifacts = run.getArtifactsUpTo(MAX_ARTIFACTS_COUNT);
-            if (artifacts != null && !artifacts.isEmpty()) {
-                runExt.get_links().setArtifacts(Link.newLink(RunAPI.getArtifactsUrl(run)));
-            }
+            runExt.initLinks(run);
             FlowGraphWalker walker = new FlowGraphWalker(execution);
             List<FlowNode> sortedNodes = FlowNodeUtil.getIdSortedExecutionNodeList(execution); // Hold a ref to prevent GC until we're done analyzing
             for (FlowNode node : walker) {
@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Changes to a pipeline job's runs since a known job version.
+ * <p>
+ * If {@link #isFull() full}, {@link #getRuns() runs} holds all runs (as per the "runs" endpoint). Otherwise it only
+ * holds runs that were added or changed, and changed runs only hold the stages that may have changed i.e. the
+ * tail end of their stages list. Clients merge these into the runs they already have, matching on run and stage id.
+ * </p>
+ */
+public class RunsDeltaExt {
+
+    private long version;
+    private boolean full;
+    private List<RunExt> runs;
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public void setFull(boolean full) {
+        this.full = full;
+    }
+
+    public List<RunExt> getRuns() {
+        return runs;
+    }
+
+    public void setRuns(List<RunExt> runs) {
+        this.runs = runs;
+    }
+
+    /**
+     * Create the delta.
+     * @param runs The job runs, newest first.
+     * @param since The run/build name at which to stop returning (inclusive), or null/empty if all runs/builds
+     *              are to be returned.
+     * @param version The job version the delta brings the client up to.
+     * @param changes The events since the client's known version, or {@code null} if they are not known, in
+     *                which case all runs are returned.
+     * @return The delta.
+     */
+    public static RunsDeltaExt create(List<WorkflowRun> runs, String since, long version, List<RunEventExt> changes) {
+        RunsDeltaExt delta = new RunsDeltaExt();
+        delta.setVersion(version);
+        delta.setFull(changes == null);
+
+        if (changes == null) {
+            delta.setRuns(JobExt.create(runs, since));
+            return delta;
+        }
+
+        // Runs that were started or completed get sent in full. Otherwise, we just send
+        // the stages that changed.
+        Set<String> fullRuns = new HashSet<String>();
+        Map<String, Set<String>> changedStages = new HashMap<String, Set<String>>();
+        for (RunEventExt change : changes) {
+            if (change.getType() != RunEventExt.Type.STAGE_CHANGED) {
+                fullRuns.add(change.getRunId());
+            } else {
+                Set<String> stageIds = changedStages.get(change.getRunId());
+                if (stageIds == null) {
+                    stageIds = new HashSet<String>();
+                    changedStages.put(change.getRunId(), stageIds);
+                }
+                if (change.getStageId() != null) {
+                    stageIds.add(change.getStageId());
+                }
+            }
+        }
+
+        since = JobExt.normalizeSince(since);
+        List<RunExt> runsExt = new ArrayList<RunExt>();
+        int runCount = 0;
+        for (WorkflowRun run : runs) {
+            if (fullRuns.contains(run.getId())) {
+                runsExt.add(RunExt.create(run).createWrapper());
+            } else if (changedStages.containsKey(run.getId()) || run.isBuilding()) {
+                // Running builds always go out because their timings keep moving.
+                RunExt runExt = RunExt.create(run);
+                runsExt.add(runExt.createWrapper(getFirstChangedStageIndex(runExt, changedStages.get(run.getId()))));
+            }
+
+            runCount++;
+            if (since != null && run.getDisplayName().equals(since)) {
+                break;
+            } else if (runCount > JobExt.MAX_RUNS_PER_JOB) {
+                break;
+            }
+        }
+        delta.setRuns(runsExt);
+
+        return delta;
+    }
+
+    private static int getFirstChangedStageIndex(RunExt runExt, Set<String> changedStageIds) {
+        List<StageNodeExt> stages = runExt.getStages();
+        int firstChanged = stages.size() - 1; // The last stage carries the run status, so it's always sent
+
+        if (changedStageIds != null) {
+            for (int i = 0; i < stages.size(); i++) {
+                if (changedStageIds.contains(stages.get(i).getId())) {
+                    firstChanged = Math.min(firstChanged, i);
+                    break;
+                }
+            }
+        }
+
+        // Moving on to a stage also completes the stage before it.
+        return Math.max(0, firstChanged - 1);
+    }
+}
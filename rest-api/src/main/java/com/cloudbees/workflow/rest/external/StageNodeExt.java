@@ -23,12 +23,15 @@
  */
 package com.cloudbees.workflow.rest.external;
 
+import com.cloudbees.workflow.flownode.FlowGraphIndex;
 import com.cloudbees.workflow.flownode.FlowNodeUtil;
+import com.cloudbees.workflow.rest.endpoints.flownode.StageLogs;
+import com.cloudbees.workflow.rest.hal.Link;
+import com.cloudbees.workflow.stats.CompletionEstimate;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import org.jenkinsci.plugins.workflow.actions.NotExecutedNodeAction;
 import org.jenkinsci.plugins.workflow.actions.StageAction;
 import org.jenkinsci.plugins.workflow.actions.TimingAction;
-import org.jenkinsci.plugins.workflow.graph.AtomNode;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.kohsuke.stapler.Stapler;
 
@@ -41,9 +44,16 @@ import java.util.List;
 public class StageNodeExt extends FlowNodeExt {
 
     private List<AtomFlowNodeExt> stageFlowNodes;
+    private Integer stageFlowNodeCount;
+    private Integer stageFlowNodesOmitted;
+    private List<BranchExt> branches;
+    private Integer percentCompleteEstimate;
+    private Long timeRemainingEstimate;
 
     // Limit the size of child nodes returned
-    static final int MAX_CHILD_NODES = Integer.getInteger(StageNodeExt.class.getName()+".maxChildNodes", 100);
+    public static final int MAX_CHILD_NODES = Integer.getInteger(StageNodeExt.class.getName()+".maxChildNodes", 100);
+    // Number of child nodes always kept from the start and end of a stage that has too many to return them all
+    static final int SAMPLE_HEAD_TAIL_NODES = Integer.getInteger(StageNodeExt.class.getName()+".sampleHeadTailNodes", 20);
 
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public List<AtomFlowNodeExt> getStageFlowNodes() {
@@ -54,6 +64,78 @@ public class StageNodeExt extends FlowNodeExt {
         this.stageFlowNodes = stageFlowNodes;
     }
 
+    /**
+     * The total number of stage flow nodes (matching the status filter, if any) of which {@link #getStageFlowNodes()}
+     * is a page. Only set with the stage flow nodes.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer getStageFlowNodeCount() {
+        return stageFlowNodeCount;
+    }
+
+    public void setStageFlowNodeCount(Integer stageFlowNodeCount) {
+        this.stageFlowNodeCount = stageFlowNodeCount;
+    }
+
+    /**
+     * The number of stage flow nodes left out of {@link #getStageFlowNodes()} on a stage with more than
+     * {@link #MAX_CHILD_NODES}. Not set if none were left out.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer getStageFlowNodesOmitted() {
+        return stageFlowNodesOmitted;
+    }
+
+    public void setStageFlowNodesOmitted(Integer stageFlowNodesOmitted) {
+        this.stageFlowNodesOmitted = stageFlowNodesOmitted;
+    }
+
+    /**
+     * The parallel branches run in the stage. Not set if the stage has no parallel branches.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public List<BranchExt> getBranches() {
+        return branches;
+    }
+
+    public void setBranches(List<BranchExt> branches) {
+        this.branches = branches;
+    }
+
+    /**
+     * Percent complete estimate for a running stage, from the job stage statistics.
+     * Not set on completed stages, or if the stage has no statistics yet.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer getPercentCompleteEstimate() {
+        return percentCompleteEstimate;
+    }
+
+    public void setPercentCompleteEstimate(Integer percentCompleteEstimate) {
+        this.percentCompleteEstimate = percentCompleteEstimate;
+    }
+
+    /**
+     * Time remaining estimate (millis) for a running stage. Not set when there's no estimate, or nothing remaining.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getTimeRemainingEstimate() {
+        return timeRemainingEstimate;
+    }
+
+    public void setTimeRemainingEstimate(Long timeRemainingEstimate) {
+        this.timeRemainingEstimate = timeRemainingEstimate;
+    }
+
+    void addCompletionEstimate(CompletionEstimate estimate) {
+        if (estimate != null) {
+            setPercentCompleteEstimate(estimate.getPercentComplete());
+            if (estimate.getTimeRemainingMillis() > 0) {
+                setTimeRemainingEstimate(estimate.getTimeRemainingMillis());
+            }
+        }
+    }
+
     public static boolean isStageNode(FlowNode node) {
         return (node.getAction(StageAction.class) != null);
     }
@@ -65,11 +147,17 @@ public class StageNodeExt extends FlowNodeExt {
 
         // Use the last node in the stage to configure the stage status.
         FlowNode stageEndNode = FlowNodeUtil.getStageEndNode(node);
-        if (NotExecutedNodeAction.isExecuted(stageEndNode)) {
+        FlowGraphIndex graphIndex = FlowNodeUtil.getGraphIndex(node.getExecution());
+        StatusExt stageEndStatus = graphIndex.getStatus(graphIndex.indexOf(stageEndNode));
+        if (stageEndStatus != null) {
+            stageNodeExt.setStatus(stageEndStatus);
+        } else if (NotExecutedNodeAction.isExecuted(stageEndNode)) {
+            // Only on a running build, where the end node came in after the index was built.
             stageNodeExt.setStatus(StatusExt.valueOf(stageEndNode.getError()));
         } else {
             stageNodeExt.setStatus(StatusExt.NOT_EXECUTED);
         }
+        stageNodeExt.addBranches(node);
 
         return stageNodeExt;
     }
@@ -88,12 +176,25 @@ public class StageNodeExt extends FlowNodeExt {
         public long getStartTimeMillis() {return myNode.getStartTimeMillis();}
         public long getDurationMillis() {return myNode.getDurationMillis();}
         public long getPauseDurationMillis() {return myNode.getPauseDurationMillis();}
+        public List<BranchExt> getBranches() {return myNode.getBranches();}
+        public Integer getPercentCompleteEstimate() {return myNode.getPercentCompleteEstimate();}
+        public Long getTimeRemainingEstimate() {return myNode.getTimeRemainingEstimate();}
 
         @Override
         public List<AtomFlowNodeExt> getStageFlowNodes() {
             return null;
         }
 
+        @Override
+        public Integer getStageFlowNodeCount() {
+            return null;
+        }
+
+        @Override
+        public Integer getStageFlowNodesOmitted() {
+            return null;
+        }
+
         protected ChildHidingWrapper(StageNodeExt stage) {
             this.myNode = stage;
         }
@@ -103,9 +204,76 @@ public class StageNodeExt extends FlowNodeExt {
         return new ChildHidingWrapper(this);
     }
 
+    /**
+     * Add the stage atom (step) nodes.
+     * <p>
+     * On a stage with more than {@link #MAX_CHILD_NODES}, a sample is added instead: the first and last few nodes,
+     * plus the failed, aborted and running nodes in between. The number of nodes left out is recorded in
+     * {@link #getStageFlowNodesOmitted()}.
+     * </p>
+     * @param node The stage node.
+     */
     public void addStageFlowNodes(FlowNode node) {
-        List<FlowNode> stageFlowNodes = FlowNodeUtil.getStageNodes(node);
-        addStageAtomNodeData(stageFlowNodes);
+        AtomFlowNodeExtFactory factory = AtomFlowNodeExtFactory.create(node.getExecution());
+        FlowGraphIndex graphIndex = factory.getGraphIndex();
+        int stageFlowNodeCount = graphIndex.getStageAtomCount(node, null);
+        int[] atomPositions = graphIndex.getStageAtomSample(node, MAX_CHILD_NODES, SAMPLE_HEAD_TAIL_NODES);
+
+        addStageFlowNodes(node, factory, atomPositions, stageFlowNodeCount);
+        if (atomPositions.length < stageFlowNodeCount) {
+            setStageFlowNodesOmitted(stageFlowNodeCount - atomPositions.length);
+        }
+    }
+
+    /**
+     * Add a page of the stage atom (step) nodes.
+     * @param node The stage node.
+     * @param status Only add nodes with this status, or {@code null} to add all nodes.
+     * @param offset The number of (matching) nodes to skip.
+     * @param limit The max number of nodes to add.
+     */
+    public void addStageFlowNodes(FlowNode node, StatusExt status, int offset, int limit) {
+        AtomFlowNodeExtFactory factory = AtomFlowNodeExtFactory.create(node.getExecution());
+        FlowGraphIndex graphIndex = factory.getGraphIndex();
+        addStageFlowNodes(node, factory, graphIndex.getStageAtomPositions(node, status, offset, limit),
+                graphIndex.getStageAtomCount(node, status));
+    }
+
+    private void addStageFlowNodes(FlowNode node, AtomFlowNodeExtFactory factory, int[] atomPositions, int stageFlowNodeCount) {
+        // Any failed step fails the stage, whether or not it's in the list.
+        if (factory.getGraphIndex().getStageAtomCount(node, StatusExt.FAILED) > 0) {
+            this.setStatus(StatusExt.FAILED);
+        }
+
+        this.setStageFlowNodes(factory.createAll(atomPositions));
+        this.setStageFlowNodeCount(stageFlowNodeCount);
+        get_links().setStageLogs(Link.newLink(StageLogs.getUrl(node)));
+    }
+
+    @Override
+    void internStrings() {
+        super.internStrings();
+        if (stageFlowNodes != null) {
+            for (AtomFlowNodeExt stageFlowNode : stageFlowNodes) {
+                stageFlowNode.internStrings();
+            }
+        }
+        if (branches != null) {
+            for (BranchExt branch : branches) {
+                branch.internStrings();
+            }
+        }
+    }
+
+    private void addBranches(FlowNode node) {
+        List<FlowGraphIndex.Branch> stageBranches = FlowNodeUtil.getGraphIndex(node.getExecution()).getStageBranches(node);
+        if (!stageBranches.isEmpty()) {
+            List<BranchExt> branchExts = new ArrayList<BranchExt>();
+            for (FlowGraphIndex.Branch branch : stageBranches) {
+                branchExts.add(BranchExt.create(branch));
+            }
+            setBranches(branchExts);
+        }
     }
 
     @Override
@@ -122,25 +290,4 @@ public class StageNodeExt extends FlowNodeExt {
         setPauseDurationMillis(Math.min(getPauseDurationMillis(), getDurationMillis()));
     }
 
-    private void addStageAtomNodeData(List<FlowNode> atomFlowNodes) {
-        List<AtomFlowNodeExt> newNodes = new ArrayList<AtomFlowNodeExt>();
-
-        for (FlowNode stageNode : atomFlowNodes) {
-            if (stageNode instanceof AtomNode) {
-                // We're capping the number of nodes to prevent major performance issues
-                if (newNodes.size() <= MAX_CHILD_NODES) {
-                    AtomFlowNodeExt atomFlowNodeExt = AtomFlowNodeExt.create(stageNode);
-                    if (atomFlowNodeExt.getStatus() == StatusExt.FAILED) {
-                        this.setStatus(StatusExt.FAILED);
-                    }
-                    newNodes.add(atomFlowNodeExt);
-                } // Just scan for status code
-                if (FlowNodeUtil.getStatus(stageNode) == StatusExt.FAILED) {
-                    this.setStatus(StatusExt.FAILED);
-                }
-            }
-        }
-        this.setStageFlowNodes(newNodes);
-    }
-
 }
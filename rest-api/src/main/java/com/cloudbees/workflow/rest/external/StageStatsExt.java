@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import com.cloudbees.workflow.stats.StageStats;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Duration statistics for a stage (or a whole run), as returned by the job "stageStats" endpoint.
+ */
+public class StageStatsExt {
+
+    private String name;
+    private long count;
+    private long meanMillis;
+    private long stdDevMillis;
+    private long minMillis;
+    private long maxMillis;
+    private long p50Millis;
+    private long p90Millis;
+    private long p95Millis;
+
+    /**
+     * The stage name. Not set on the run statistics.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public long getMeanMillis() {
+        return meanMillis;
+    }
+
+    public void setMeanMillis(long meanMillis) {
+        this.meanMillis = meanMillis;
+    }
+
+    public long getStdDevMillis() {
+        return stdDevMillis;
+    }
+
+    public void setStdDevMillis(long stdDevMillis) {
+        this.stdDevMillis = stdDevMillis;
+    }
+
+    public long getMinMillis() {
+        return minMillis;
+    }
+
+    public void setMinMillis(long minMillis) {
+        this.minMillis = minMillis;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public void setMaxMillis(long maxMillis) {
+        this.maxMillis = maxMillis;
+    }
+
+    public long getP50Millis() {
+        return p50Millis;
+    }
+
+    public void setP50Millis(long p50Millis) {
+        this.p50Millis = p50Millis;
+    }
+
+    public long getP90Millis() {
+        return p90Millis;
+    }
+
+    public void setP90Millis(long p90Millis) {
+        this.p90Millis = p90Millis;
+    }
+
+    public long getP95Millis() {
+        return p95Millis;
+    }
+
+    public void setP95Millis(long p95Millis) {
+        this.p95Millis = p95Millis;
+    }
+
+    public static StageStatsExt create(String name, StageStats stats) {
+        StageStatsExt statsExt = new StageStatsExt();
+
+        statsExt.setName(name);
+        statsExt.setCount(stats.getCount());
+        statsExt.setMeanMillis(Math.round(stats.getMean()));
+        statsExt.setStdDevMillis(Math.round(stats.getStdDev()));
+        statsExt.setMinMillis(stats.getMinMillis());
+        statsExt.setMaxMillis(stats.getMaxMillis());
+        statsExt.setP50Millis(stats.getQuantile(0.5));
+        statsExt.setP90Millis(stats.getQuantile(0.9));
+        statsExt.setP95Millis(stats.getQuantile(0.95));
+
+        return statsExt;
+    }
+}
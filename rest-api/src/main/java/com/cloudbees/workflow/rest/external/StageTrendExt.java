@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import com.cloudbees.workflow.stats.StageHistory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stage durations over a range of builds, as returned by the job "stageTrend" endpoint.
+ * One series per stage, in the order the stages were first seen.
+ */
+public class StageTrendExt {
+
+    private List<Series> stages;
+
+    public List<Series> getStages() {
+        return stages;
+    }
+
+    public void setStages(List<Series> stages) {
+        this.stages = stages;
+    }
+
+    public static final class Series {
+        private String name;
+        private List<Point> builds;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        /**
+         * The stage on each build that ran it, oldest build first.
+         */
+        public List<Point> getBuilds() {
+            return builds;
+        }
+
+        public void setBuilds(List<Point> builds) {
+            this.builds = builds;
+        }
+    }
+
+    public static final class Point {
+        private int build;
+        private StatusExt status;
+        private long startTimeMillis;
+        private long durationMillis;
+        private long pauseDurationMillis;
+
+        public int getBuild() {
+            return build;
+        }
+
+        public void setBuild(int build) {
+            this.build = build;
+        }
+
+        public StatusExt getStatus() {
+            return status;
+        }
+
+        public void setStatus(StatusExt status) {
+            this.status = status;
+        }
+
+        public long getStartTimeMillis() {
+            return startTimeMillis;
+        }
+
+        public void setStartTimeMillis(long startTimeMillis) {
+            this.startTimeMillis = startTimeMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public void setDurationMillis(long durationMillis) {
+            this.durationMillis = durationMillis;
+        }
+
+        public long getPauseDurationMillis() {
+            return pauseDurationMillis;
+        }
+
+        public void setPauseDurationMillis(long pauseDurationMillis) {
+            this.pauseDurationMillis = pauseDurationMillis;
+        }
+    }
+
+    public static StageTrendExt create(List<StageHistory.Row> rows) {
+        Map<String, Series> seriesByName = new LinkedHashMap<String, Series>();
+
+        // Rows are in the order the builds completed, which is not always build order.
+        rows = new ArrayList<StageHistory.Row>(rows);
+        Collections.sort(rows, new Comparator<StageHistory.Row>() {
+            @Override
+            public int compare(StageHistory.Row row1, StageHistory.Row row2) {
+                return (row1.getBuild() < row2.getBuild() ? -1 : (row1.getBuild() == row2.getBuild() ? 0 : 1));
+            }
+        });
+
+        for (StageHistory.Row row : rows) {
+            Series series = seriesByName.get(row.getStageName());
+            if (series == null) {
+                series = new Series();
+                series.setName(row.getStageName());
+                series.setBuilds(new ArrayList<Point>());
+                seriesByName.put(row.getStageName(), series);
+            }
+
+            Point point = new Point();
+            point.setBuild(row.getBuild());
+            point.setStatus(row.getStatus());
+            point.setStartTimeMillis(row.getStartTimeMillis());
+            point.setDurationMillis(row.getDurationMillis());
+            point.setPauseDurationMillis(row.getPauseDurationMillis());
+            series.getBuilds().add(point);
+        }
+
+        StageTrendExt trendExt = new StageTrendExt();
+        trendExt.setStages(new ArrayList<Series>(seriesByName.values()));
+        return trendExt;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.run;
+
+import com.cloudbees.workflow.util.InternalCaches;
+import com.cloudbees.workflow.util.JSONReadWrite;
+import com.cloudbees.workflow.util.ModelUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import hudson.Util;
+import hudson.model.Run;
+import jenkins.util.VirtualFile;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The list of artifacts archived by a run, in the same order as {@link Run#getArtifacts()}.
+ * <p>
+ * Just the artifact paths. Unlike {@link Run#getArtifacts()}, it doesn't look up the artifact sizes, so working it
+ * out is a directory walk and nothing more. The manifest of a completed run is worked out once and saved in the run
+ * directory (and cached in memory), so later requests don't need to walk the archive at all.
+ * </p>
+ */
+public class ArtifactManifest {
+
+    private static final Logger LOGGER = Logger.getLogger(ArtifactManifest.class.getName());
+
+    static final long MAX_CACHE_ENTRIES = Long.getLong(ArtifactManifest.class.getName()+".maxCacheEntries", 200000);
+
+    // Artifact manifests of completed runs, keyed by run cache key. Bounded by the number of artifacts held.
+    private static final InternalCaches.Spec<String, ArtifactManifest> MANIFEST_CACHE = new InternalCaches.Spec<String, ArtifactManifest>() {
+        @Override
+        protected Cache<String, ArtifactManifest> build() {
+            return CacheBuilder.newBuilder()
+                    .maximumWeight(MAX_CACHE_ENTRIES)
+                    .weigher(new Weigher<String, ArtifactManifest>() {
+                        @Override
+                        public int weigh(String key, ArtifactManifest manifest) {
+                            return 1 + manifest.size();
+                        }
+                    }).build();
+        }
+    };
+
+    private static final ArtifactManifest EMPTY = new ArtifactManifest(Collections.<String>emptyList());
+
+    private final List<String> paths;
+    private String[] displayNames;
+
+    ArtifactManifest(List<String> paths) {
+        this.paths = paths;
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    /**
+     * Get the artifact paths, relative to the artifacts root.
+     */
+    public List<String> getPaths() {
+        return Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * Get the display name of an artifact.
+     * <p>
+     * Same as {@link Run.Artifact#getDisplayPath()} i.e. the shortest path suffix that tells the artifact apart from
+     * the rest, or the full path on runs with more than {@link Run#LIST_CUTOFF} artifacts.
+     * </p>
+     * @param index The artifact index.
+     * @return The display name.
+     */
+    public String getDisplayName(int index) {
+        if (paths.size() > Run.LIST_CUTOFF) {
+            return paths.get(index);
+        }
+        synchronized (this) {
+            if (displayNames == null) {
+                displayNames = computeDisplayNames(paths);
+            }
+            return displayNames[index];
+        }
+    }
+
+    /**
+     * Get the artifact path, URL encoded, as used in artifact URLs.
+     * @param index The artifact index.
+     * @return The encoded path.
+     */
+    public String getHref(int index) {
+        String[] segments = paths.get(index).split("/");
+        StringBuilder href = new StringBuilder();
+        for (String segment : segments) {
+            if (href.length() > 0) {
+                href.append('/');
+            }
+            href.append(Util.rawEncode(segment));
+        }
+        return href.toString();
+    }
+
+    /**
+     * Get the artifact manifest for a run.
+     * @param run The run.
+     * @return The run artifact manifest.
+     * @throws IOException Error listing the run artifacts.
+     */
+    public static @Nonnull ArtifactManifest get(@Nonnull WorkflowRun run) throws IOException {
+        VirtualFile root = run.getArtifactManager().root();
+
+        if (run.isBuilding()) {
+            // Artifacts can still be added.
+            return build(root);
+        }
+
+        Cache<String, ArtifactManifest> cache = InternalCaches.get(MANIFEST_CACHE);
+        String key = ModelUtil.getRunCacheKey(run);
+        File manifestFile = new File(run.getRootDir(), "wfapi/artifacts.json");
+
+        if (!root.exists()) {
+            // Never had artifacts, or they have since been deleted (e.g. by the build discarder).
+            cache.invalidate(key);
+            if (manifestFile.exists()) {
+                manifestFile.delete();
+            }
+            return EMPTY;
+        }
+
+        ArtifactManifest manifest = cache.getIfPresent(key);
+        if (manifest != null) {
+            return manifest;
+        }
+
+        if (manifestFile.isFile()) {
+            try {
+                String[] paths = JSONReadWrite.jsonMapper.readValue(manifestFile, String[].class);
+                manifest = new ArtifactManifest(Arrays.asList(paths));
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to read artifact manifest " + manifestFile + ". Rebuilding it.", e);
+            }
+        }
+
+        if (manifest == null) {
+            manifest = build(root);
+            try {
+                File manifestDir = manifestFile.getParentFile();
+                if (!manifestDir.isDirectory() && !manifestDir.mkdirs()) {
+                    throw new IOException("Unable to create directory " + manifestDir);
+                }
+                // Write to a temp file (unique to this write) and move it into place, so as a reader never sees
+                // a half written file.
+                File tempFile = File.createTempFile(manifestFile.getName() + ".", ".tmp", manifestDir);
+                try {
+                    JSONReadWrite.jsonMapper.writeValue(tempFile, manifest.paths);
+                } catch (IOException e) {
+                    tempFile.delete();
+                    throw e;
+                }
+                if (!tempFile.renameTo(manifestFile)) {
+                    tempFile.delete();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to write artifact manifest " + manifestFile, e);
+            }
+        }
+
+        cache.put(key, manifest);
+        return manifest;
+    }
+
+    /**
+     * Build the artifact manifest by walking the artifacts tree.
+     * @param root The artifacts root.
+     * @return The manifest.
+     * @throws IOException Error listing the artifacts.
+     */
+    static ArtifactManifest build(VirtualFile root) throws IOException {
+        List<String> paths = new ArrayList<String>();
+        addPaths(root, "", paths);
+        return new ArtifactManifest(paths);
+    }
+
+    private static void addPaths(VirtualFile dir, String path, List<String> paths) throws IOException {
+        VirtualFile[] children = dir.list();
+        // Same order as Run.getArtifacts()
+        Arrays.sort(children);
+        for (VirtualFile child : children) {
+            String childPath = path + child.getName();
+            if (child.isDirectory()) {
+                addPaths(child, childPath + "/", paths);
+            } else {
+                paths.add(childPath);
+            }
+        }
+    }
+
+    /**
+     * Work out the shortest path suffix of each path that is not shared by any of the other paths.
+     */
+    static String[] computeDisplayNames(List<String> paths) {
+        String[][] segments = new String[paths.size()][];
+        int[] depths = new int[paths.size()];
+        String[] names = new String[paths.size()];
+
+        for (int i = 0; i < paths.size(); i++) {
+            segments[i] = paths.get(i).split("/");
+            depths[i] = 1;
+        }
+
+        boolean collisions = true;
+        while (collisions) {
+            collisions = false;
+            Map<String, List<Integer>> byName = new HashMap<String, List<Integer>>();
+            for (int i = 0; i < names.length; i++) {
+                names[i] = suffix(segments[i], depths[i]);
+                List<Integer> sameName = byName.get(names[i]);
+                if (sameName == null) {
+                    sameName = new ArrayList<Integer>();
+                    byName.put(names[i], sameName);
+                }
+                sameName.add(i);
+            }
+            for (List<Integer> sameName : byName.values()) {
+                if (sameName.size() > 1) {
+                    for (int i : sameName) {
+                        if (depths[i] < segments[i].length) {
+                            depths[i]++;
+                            collisions = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        return names;
+    }
+
+    private static String suffix(String[] segments, int depth) {
+        StringBuilder suffix = new StringBuilder();
+        for (int i = segments.length - depth; i < segments.length; i++) {
+            if (suffix.length() > 0) {
+                suffix.append('/');
+            }
+            suffix.append(segments[i]);
+        }
+        return suffix.toString();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.run;
+
+import com.cloudbees.workflow.rest.events.JobEventNotifier;
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Queue;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.workflow.flow.FlowExecution;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.jenkinsci.plugins.workflow.support.steps.input.InputAction;
+import org.jenkinsci.plugins.workflow.support.steps.input.InputStepExecution;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of the running builds that are (or may soon be) waiting on input.
+ * <p>
+ * Saves having to look at every run of every job to find the ones waiting on input. A build goes into the index
+ * whenever its flow graph changes (the input step starts with a new flow node) and comes out again once it's looked
+ * at and found not to be waiting on input, or when it completes. So the index only ever holds the builds waiting on
+ * input, plus the builds that have moved on recently.
+ * </p>
+ * <p>
+ * Graph changes are reported on the CPS VM thread, where we can't look at the build's {@link InputAction} (loading
+ * its executions can wait on the CPS VM thread). So builds are only looked at when the index is queried.
+ * </p>
+ */
+public class PendingInputIndex {
+
+    // The input step adds itself to the InputAction just after its flow node is added, so don't drop
+    // a build from the index straight after a graph change. It may not have registered its input yet.
+    static final long SETTLE_MILLIS = 10000;
+
+    private static final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private static volatile boolean initialized = false;
+
+    private PendingInputIndex() {
+    }
+
+    /**
+     * Record a change on a running build.
+     * <p>
+     * Called on the CPS VM thread, so keep it cheap.
+     * </p>
+     * @param run The build.
+     */
+    public static void onChange(@Nonnull WorkflowRun run) {
+        String key = run.getExternalizableId();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.lastChange = System.currentTimeMillis();
+        } else {
+            entries.put(key, new Entry(run));
+        }
+    }
+
+    /**
+     * Get the builds waiting on input, along with the inputs they're waiting on.
+     * <p>
+     * Not filtered on permissions. That's up to the caller.
+     * </p>
+     * @return The pending inputs, by build.
+     */
+    public static @Nonnull List<PendingInputs> getPendingInputs() {
+        if (!initialized) {
+            initialize();
+        }
+
+        List<PendingInputs> pendingInputs = new ArrayList<PendingInputs>();
+        long now = System.currentTimeMillis();
+
+        Iterator<Entry> entryIterator = entries.values().iterator();
+        while (entryIterator.hasNext()) {
+            Entry entry = entryIterator.next();
+            List<InputStepExecution> inputs = getUnsettledInputs(entry.run);
+
+            if (!inputs.isEmpty()) {
+                pendingInputs.add(new PendingInputs(entry.run, inputs));
+            } else if (!entry.run.isBuilding() || now - entry.lastChange > SETTLE_MILLIS) {
+                entryIterator.remove();
+            }
+        }
+
+        return pendingInputs;
+    }
+
+    private static List<InputStepExecution> getUnsettledInputs(WorkflowRun run) {
+        List<InputStepExecution> unsettled = new ArrayList<InputStepExecution>();
+        InputAction inputAction = run.getAction(InputAction.class);
+        if (inputAction != null) {
+            List<InputStepExecution> executions = inputAction.getExecutions();
+            if (executions != null) {
+                for (InputStepExecution execution : executions) {
+                    if (!execution.isSettled()) {
+                        unsettled.add(execution);
+                    }
+                }
+            }
+        }
+        return unsettled;
+    }
+
+    /**
+     * Pick up the builds that were already running when we started, e.g. builds resumed after a restart.
+     * Running builds each sit on an executor, so this doesn't mean looking through the build history.
+     */
+    private static synchronized void initialize() {
+        if (initialized) {
+            return;
+        }
+
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins != null) {
+            for (Computer computer : jenkins.getComputers()) {
+                List<Executor> executors = new ArrayList<Executor>(computer.getExecutors());
+                executors.addAll(computer.getOneOffExecutors());
+                for (Executor executor : executors) {
+                    Queue.Executable executable = executor.getCurrentExecutable();
+                    if (executable instanceof WorkflowRun) {
+                        WorkflowRun run = (WorkflowRun) executable;
+                        FlowExecution execution = run.getExecution();
+                        if (execution != null) {
+                            // Make sure we hear about later changes.
+                            JobEventNotifier.listenTo(run, execution);
+                        }
+                        onChange(run);
+                    }
+                }
+            }
+        }
+
+        initialized = true;
+    }
+
+    /**
+     * The inputs a build is waiting on.
+     */
+    public static class PendingInputs {
+
+        private final WorkflowRun run;
+        private final List<InputStepExecution> inputs;
+
+        PendingInputs(WorkflowRun run, List<InputStepExecution> inputs) {
+            this.run = run;
+            this.inputs = inputs;
+        }
+
+        public WorkflowRun getRun() {
+            return run;
+        }
+
+        public List<InputStepExecution> getInputs() {
+            return inputs;
+        }
+    }
+
+    private static class Entry {
+
+        private final WorkflowRun run;
+        private volatile long lastChange = System.currentTimeMillis();
+
+        private Entry(WorkflowRun run) {
+            this.run = run;
+        }
+    }
+
+    @Extension
+    public static class RunCompletionListener extends RunListener<WorkflowRun> {
+        @Override
+        public void onCompleted(WorkflowRun run, @Nonnull TaskListener listener) {
+            entries.remove(run.getExternalizableId());
+        }
+
+        @Override
+        public void onDeleted(WorkflowRun run) {
+            entries.remove(run.getExternalizableId());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.run;
+
+import com.cloudbees.workflow.rest.external.ChangeSetExt;
+import com.cloudbees.workflow.util.InternalCaches;
+import com.cloudbees.workflow.util.JSONReadWrite;
+import com.cloudbees.workflow.util.ModelUtil;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import hudson.Extension;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compact summary of what a run has to offer over and above its stages i.e. the things that decide which
+ * of the run {@code _links} get rendered.
+ * <p>
+ * Working these out means parsing the changelog and listing the artifacts directory. That's fine once, but not
+ * on every request for every run in the job history, so the summary is worked out when the run completes and
+ * saved in the run directory, next to (not in) the run {@code build.xml}. Runs that completed before the summary
+ * was introduced get one saved the first time they're asked for it.
+ * </p>
+ * <p>
+ * Artifacts can be deleted after the run completes (e.g. by the build discarder), so a run is only reported as
+ * having artifacts while the artifacts root is still there.
+ * </p>
+ */
+public class RunHeaderSummary {
+
+    private static final Logger LOGGER = Logger.getLogger(RunHeaderSummary.class.getName());
+
+    static final long MAX_CACHE_ENTRIES = Long.getLong(RunHeaderSummary.class.getName()+".maxCacheEntries", 10000);
+
+    // Summaries of completed runs, keyed by run cache key.
+    private static final InternalCaches.Spec<String, RunHeaderSummary> SUMMARY_CACHE = new InternalCaches.Spec<String, RunHeaderSummary>() {
+        @Override
+        protected Cache<String, RunHeaderSummary> build() {
+            return CacheBuilder.newBuilder().maximumSize(MAX_CACHE_ENTRIES).build();
+        }
+    };
+
+    private final boolean hasChanges;
+    private final boolean hasArtifacts;
+
+    @JsonCreator
+    RunHeaderSummary(@JsonProperty("hasChanges") boolean hasChanges, @JsonProperty("hasArtifacts") boolean hasArtifacts) {
+        this.hasChanges = hasChanges;
+        this.hasArtifacts = hasArtifacts;
+    }
+
+    public boolean isHasChanges() {
+        return hasChanges;
+    }
+
+    public boolean isHasArtifacts() {
+        return hasArtifacts;
+    }
+
+    /**
+     * Get the summary for a run.
+     * @param run The run.
+     * @return The run summary. Worked out fresh on each call for a run that is still building.
+     */
+    public static @Nonnull RunHeaderSummary get(@Nonnull WorkflowRun run) {
+        if (run.isBuilding()) {
+            // Changes and artifacts can still come along.
+            return create(run);
+        }
+
+        Cache<String, RunHeaderSummary> cache = InternalCaches.get(SUMMARY_CACHE);
+        String key = ModelUtil.getRunCacheKey(run);
+        RunHeaderSummary summary = cache.getIfPresent(key);
+
+        if (summary == null) {
+            summary = load(run);
+            if (summary == null) {
+                summary = create(run);
+                save(run, summary);
+            }
+            cache.put(key, summary);
+        }
+
+        if (summary.hasArtifacts && !artifactsRootExists(run)) {
+            // Artifacts deleted since the run completed.
+            summary = new RunHeaderSummary(summary.hasChanges, false);
+            cache.put(key, summary);
+            save(run, summary);
+        }
+
+        return summary;
+    }
+
+    static RunHeaderSummary create(WorkflowRun run) {
+        return new RunHeaderSummary(ChangeSetExt.hasChanges(run), !run.getArtifactsUpTo(1).isEmpty());
+    }
+
+    private static boolean artifactsRootExists(WorkflowRun run) {
+        try {
+            return run.getArtifactManager().root().exists();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to check the artifacts root of " + run, e);
+            return false;
+        }
+    }
+
+    private static File getSummaryFile(WorkflowRun run) {
+        return new File(run.getRootDir(), "wfapi/header-summary.json");
+    }
+
+    private static RunHeaderSummary load(WorkflowRun run) {
+        File summaryFile = getSummaryFile(run);
+        if (summaryFile.isFile()) {
+            try {
+                return JSONReadWrite.jsonMapper.readValue(summaryFile, RunHeaderSummary.class);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to read run header summary " + summaryFile + ". Rebuilding it.", e);
+            }
+        }
+        return null;
+    }
+
+    private static void save(WorkflowRun run, RunHeaderSummary summary) {
+        File summaryFile = getSummaryFile(run);
+        try {
+            File summaryDir = summaryFile.getParentFile();
+            if (!summaryDir.isDirectory() && !summaryDir.mkdirs()) {
+                throw new IOException("Unable to create directory " + summaryDir);
+            }
+            // Write to a temp file (unique to this write) and move it into place, so as a reader never sees
+            // a half written file.
+            File tempFile = File.createTempFile(summaryFile.getName() + ".", ".tmp", summaryDir);
+            try {
+                JSONReadWrite.jsonMapper.writeValue(tempFile, summary);
+            } catch (IOException e) {
+                tempFile.delete();
+                throw e;
+            }
+            if (!tempFile.renameTo(summaryFile)) {
+                // Windows won't rename over an existing file.
+                summaryFile.delete();
+                if (!tempFile.renameTo(summaryFile)) {
+                    tempFile.delete();
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save run header summary on " + run, e);
+        }
+    }
+
+    @Extension
+    public static class RunCompletionListener extends RunListener<WorkflowRun> {
+        @Override
+        public void onCompleted(WorkflowRun run, @Nonnull TaskListener listener) {
+            RunHeaderSummary summary = create(run);
+            save(run, summary);
+            InternalCaches.get(SUMMARY_CACHE).put(ModelUtil.getRunCacheKey(run), summary);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.stats;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Percent complete and time remaining estimate for a running stage (or run).
+ */
+public class CompletionEstimate {
+
+    private final int percentComplete;
+    private final long timeRemainingMillis;
+
+    CompletionEstimate(int percentComplete, long timeRemainingMillis) {
+        this.percentComplete = percentComplete;
+        this.timeRemainingMillis = timeRemainingMillis;
+    }
+
+    /**
+     * Percent complete, from 1 to 98. Never 99 or 100, as that would look like it should be done already.
+     */
+    public int getPercentComplete() {
+        return percentComplete;
+    }
+
+    public long getTimeRemainingMillis() {
+        return timeRemainingMillis;
+    }
+
+    /**
+     * Estimate how far along a running stage (or run) is.
+     * @param stats The duration statistics for the stage (or run), or {@code null} if there are none.
+     * @param elapsedMillis How long the stage (or run) has been going so far, not counting time paused.
+     * @return The estimate, or {@code null} if there is nothing to go on.
+     */
+    public static @CheckForNull CompletionEstimate create(@CheckForNull StageStats stats, long elapsedMillis) {
+        if (stats == null || stats.getCount() == 0) {
+            return null;
+        }
+
+        elapsedMillis = Math.max(0, elapsedMillis);
+        long estimatedMillis = stats.estimateDuration(elapsedMillis);
+        int percentComplete = (estimatedMillis > 0 ? (int) (elapsedMillis * 100 / estimatedMillis) : 1);
+        percentComplete = Math.max(1, Math.min(98, percentComplete));
+
+        return new CompletionEstimate(percentComplete, estimatedMillis - elapsedMillis);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.stats;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Small quantile sketch for durations.
+ * <p>
+ * Durations are counted in buckets that grow exponentially in size, so the sketch holds no more than
+ * a couple of hundred counts no matter how many durations are added, and quantiles come back with a
+ * relative error of about {@code (GROWTH - 1) / 2} at most.
+ * </p>
+ */
+public class DurationSketch {
+
+    /**
+     * Bucket {@code i} holds durations from {@code GROWTH^i} up to (not including) {@code GROWTH^(i+1)}
+     * milliseconds. Bucket 0 also holds durations under a millisecond.
+     */
+    static final double GROWTH = 1.1;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+
+    // Counts from bucket "offset" up to the highest non empty bucket.
+    private int offset;
+    private long[] counts = new long[0];
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public long[] getCounts() {
+        return counts;
+    }
+
+    public void setCounts(long[] counts) {
+        this.counts = counts;
+    }
+
+    @JsonIgnore
+    public long getCount() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public void add(long durationMillis) {
+        int bucket = bucketOf(durationMillis);
+
+        if (counts.length == 0) {
+            offset = bucket;
+            counts = new long[1];
+        } else if (bucket < offset) {
+            long[] newCounts = new long[counts.length + (offset - bucket)];
+            System.arraycopy(counts, 0, newCounts, offset - bucket, counts.length);
+            counts = newCounts;
+            offset = bucket;
+        } else if (bucket >= offset + counts.length) {
+            long[] newCounts = new long[bucket - offset + 1];
+            System.arraycopy(counts, 0, newCounts, 0, counts.length);
+            counts = newCounts;
+        }
+
+        counts[bucket - offset]++;
+    }
+
+    /**
+     * Get an estimate of a duration quantile.
+     * @param quantile The quantile e.g. 0.9 for the 90th percentile.
+     * @return The estimated duration, or 0 if the sketch is empty.
+     */
+    public long getQuantile(double quantile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(Math.min(1.0, Math.max(0.0, quantile)) * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketMidpoint(offset + i);
+            }
+        }
+        return bucketMidpoint(offset + counts.length - 1);
+    }
+
+    /**
+     * Get the fraction of durations that are no longer than a given duration.
+     * <p>
+     * Goes by bucket, so durations in the same bucket as {@code durationMillis} count as no longer.
+     * </p>
+     * @param durationMillis The duration.
+     * @return The fraction, from 0 to 1. 0 if the sketch is empty.
+     */
+    public double getFraction(long durationMillis) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+
+        int lastBucket = bucketOf(durationMillis) - offset;
+        long seen = 0;
+        for (int i = 0; i < counts.length && i <= lastBucket; i++) {
+            seen += counts[i];
+        }
+        return (double) seen / total;
+    }
+
+    static int bucketOf(long durationMillis) {
+        if (durationMillis <= 1) {
+            return 0;
+        }
+        return (int) Math.floor(Math.log(durationMillis) / LOG_GROWTH);
+    }
+
+    private static long bucketMidpoint(int bucket) {
+        // Geometric midpoint, so as the relative error is the same either side.
+        return Math.round(Math.pow(GROWTH, bucket + 0.5));
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.stats;
+
+import com.cloudbees.workflow.rest.external.RunExt;
+import com.cloudbees.workflow.rest.external.StageNodeExt;
+import com.cloudbees.workflow.rest.external.StatusExt;
+import com.cloudbees.workflow.util.InternalCaches;
+import com.cloudbees.workflow.util.JSONReadWrite;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stage duration statistics for a job, across all the runs it has completed.
+ * <p>
+ * Updated one run at a time as runs complete, and saved in the job directory, so the statistics cover far
+ * more runs than the handful the "runs" endpoint returns, without those runs ever being loaded again.
+ * Jobs that have no statistics yet (e.g. after an upgrade) get them seeded from their most recent runs.
+ * </p>
+ * <p>
+ * Only runs and stages that completed successfully (or unstable) are counted. A failed or aborted stage stops
+ * short, and would drag the numbers down. Durations do not include time paused e.g. waiting on input.
+ * </p>
+ */
+public class JobStageStats {
+
+    private static final Logger LOGGER = Logger.getLogger(JobStageStats.class.getName());
+
+    static final int MAX_STAGES = Integer.getInteger(JobStageStats.class.getName()+".maxStages", 100);
+    static final int SEED_RUNS = Integer.getInteger(JobStageStats.class.getName()+".seedRuns", 25);
+    static final int MAX_RECENT_RUN_NUMBERS = 100;
+
+    // Stage statistics, keyed by job full name. Saved with the job, so they can be dropped and reloaded at any time.
+    private static final InternalCaches.Spec<String, JobStageStats> STATS_CACHE = new InternalCaches.Spec<String, JobStageStats>() {
+        @Override
+        protected Cache<String, JobStageStats> build() {
+            return CacheBuilder.newBuilder().maximumSize(1000).build();
+        }
+    };
+
+    private long runCount;
+    private StageStats run = new StageStats();
+    private Map<String, StageStats> stages = new LinkedHashMap<String, StageStats>();
+    // The runs most recently counted. A run can be seen twice e.g. by the seed and then as it completes.
+    private List<Integer> recentRunNumbers = new ArrayList<Integer>();
+
+    /**
+     * The number of completed runs counted, whatever their result.
+     */
+    public synchronized long getRunCount() {
+        return runCount;
+    }
+
+    public synchronized void setRunCount(long runCount) {
+        this.runCount = runCount;
+    }
+
+    /**
+     * End to end run durations.
+     */
+    public synchronized StageStats getRun() {
+        return run;
+    }
+
+    public synchronized void setRun(StageStats run) {
+        this.run = run;
+    }
+
+    /**
+     * Stage durations by stage name, in the order the stages were first seen.
+     */
+    public synchronized Map<String, StageStats> getStages() {
+        return stages;
+    }
+
+    public synchronized void setStages(Map<String, StageStats> stages) {
+        this.stages = stages;
+    }
+
+    public synchronized List<Integer> getRecentRunNumbers() {
+        return recentRunNumbers;
+    }
+
+    public synchronized void setRecentRunNumbers(List<Integer> recentRunNumbers) {
+        this.recentRunNumbers = recentRunNumbers;
+    }
+
+    /**
+     * Get the duration statistics for a stage.
+     * @param stageName The stage name.
+     * @return The stage statistics, or {@code null} if no run completed the stage.
+     */
+    @JsonIgnore
+    public synchronized @CheckForNull StageStats getStage(String stageName) {
+        return stages.get(stageName);
+    }
+
+    /**
+     * Count a completed run.
+     * @param runNumber The run number.
+     * @param runExt The run.
+     * @return {@code false} if the run was already counted.
+     */
+    synchronized boolean add(int runNumber, RunExt runExt) {
+        if (recentRunNumbers.contains(runNumber)) {
+            return false;
+        }
+        recentRunNumbers.add(runNumber);
+        if (recentRunNumbers.size() > MAX_RECENT_RUN_NUMBERS) {
+            recentRunNumbers.remove(0);
+        }
+
+        runCount++;
+        if (isCompleted(runExt.getStatus())) {
+            run.add(runExt.getDurationMillis() - runExt.getPauseDurationMillis());
+        }
+        for (StageNodeExt stage : runExt.getStages()) {
+            if (!isCompleted(stage.getStatus())) {
+                continue;
+            }
+            StageStats stageStats = stages.get(stage.getName());
+            if (stageStats == null) {
+                if (stages.size() >= MAX_STAGES) {
+                    // Most likely stage names made up on the fly. No point keeping them all.
+                    continue;
+                }
+                stageStats = new StageStats();
+                stages.put(stage.getName(), stageStats);
+            }
+            stageStats.add(stage.getDurationMillis() - stage.getPauseDurationMillis());
+        }
+        return true;
+    }
+
+    private static boolean isCompleted(StatusExt status) {
+        return (status == StatusExt.SUCCESS || status == StatusExt.UNSTABLE);
+    }
+
+    /**
+     * Get the stage statistics for a job.
+     * @param job The job.
+     * @return The job stage statistics.
+     */
+    public static @Nonnull JobStageStats get(@Nonnull final WorkflowJob job) {
+        try {
+            return InternalCaches.get(STATS_CACHE).get(job.getFullName(), new Callable<JobStageStats>() {
+                @Override
+                public JobStageStats call() throws Exception {
+                    return load(job);
+                }
+            });
+        } catch (ExecutionException e) {
+            // load doesn't throw, so not expecting this.
+            throw new IllegalStateException("Unexpected error loading stage statistics for " + job.getFullName(), e.getCause());
+        }
+    }
+
+    static File getFile(WorkflowJob job) {
+        return new File(job.getRootDir(), "wfapi/stage-stats.json");
+    }
+
+    private static JobStageStats load(WorkflowJob job) {
+        File statsFile = getFile(job);
+        if (statsFile.isFile()) {
+            try {
+                return JSONReadWrite.jsonMapper.readValue(statsFile, JobStageStats.class);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to read stage statistics " + statsFile + ". Seeding them again.", e);
+            }
+        }
+
+        JobStageStats stats = seed(job);
+        stats.save(statsFile);
+        return stats;
+    }
+
+    /**
+     * Seed the statistics from the most recent completed runs, oldest first.
+     */
+    static JobStageStats seed(WorkflowJob job) {
+        List<WorkflowRun> runs = new ArrayList<WorkflowRun>();
+        for (WorkflowRun run : job.getBuilds()) {
+            if (runs.size() >= SEED_RUNS) {
+                break;
+            }
+            // Running builds are counted when they complete.
+            if (!run.isBuilding()) {
+                runs.add(run);
+            }
+        }
+        Collections.reverse(runs);
+
+        JobStageStats stats = new JobStageStats();
+        for (WorkflowRun run : runs) {
+            if (run.getExecution() != null) {
+                stats.add(run.getNumber(), RunExt.create(run));
+            }
+        }
+        return stats;
+    }
+
+    synchronized void save(File statsFile) {
+        try {
+            File statsDir = statsFile.getParentFile();
+            if (!statsDir.isDirectory() && !statsDir.mkdirs()) {
+                throw new IOException("Unable to create directory " + statsDir);
+            }
+            // Write to a temp file (unique to this write) and move it into place, so as a reader never sees
+            // a half written file. Different instances for the same job (e.g. two seeds) can be saving at once.
+            File tempFile = File.createTempFile(statsFile.getName() + ".", ".tmp", statsDir);
+            try {
+                JSONReadWrite.jsonMapper.writeValue(tempFile, this);
+            } catch (IOException e) {
+                tempFile.delete();
+                throw e;
+            }
+            if (!statsFile.delete() && statsFile.exists()) {
+                throw new IOException("Unable to replace " + statsFile);
+            }
+            if (!tempFile.renameTo(statsFile)) {
+                tempFile.delete();
+                throw new IOException("Unable to rename " + tempFile + " to " + statsFile);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to save stage statistics " + statsFile, e);
+        }
+    }
+
+    @Extension
+    public static class RunCompletionListener extends RunListener<WorkflowRun> {
+        @Override
+        public void onCompleted(WorkflowRun run, @Nonnull TaskListener listener) {
+            if (run.getExecution() == null) {
+                return;
+            }
+            WorkflowJob job = run.getParent();
+            JobStageStats stats = get(job);
+            synchronized (stats) {
+                if (stats.add(run.getNumber(), RunExt.create(run))) {
+                    stats.save(getFile(job));
+                }
+            }
+        }
+    }
+
+    /**
+     * A new job by the same name as a deleted (or renamed) job starts from scratch.
+     */
+    @Extension
+    public static class JobRemovalHandler extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof WorkflowJob) {
+                InternalCaches.get(STATS_CACHE).invalidate(item.getFullName());
+            }
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (item instanceof WorkflowJob) {
+                InternalCaches.get(STATS_CACHE).invalidate(oldFullName);
+            }
+        }
+    }
+}
@@ -0,0 +1,618 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.stats;
+
+import com.cloudbees.workflow.rest.external.RunExt;
+import com.cloudbees.workflow.rest.external.StageNodeExt;
+import com.cloudbees.workflow.rest.external.StatusExt;
+import com.cloudbees.workflow.util.JSONReadWrite;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only history of the stages of a job's completed runs.
+ * <p>
+ * Kept in the job directory ({@code wfapi/stage-history/}) as one file per column (build number, stage name id,
+ * start time, duration, pause duration and status), all of fixed width, plus a list of the stage names. A row is
+ * added per stage as each run completes. Reading the history means memory mapping the columns that are needed,
+ * and never loading a run.
+ * </p>
+ * <p>
+ * The columns are written one after the other, so a column can end up a row ahead of the others if we go down
+ * half way through a write. The row count is that of the shortest column, and the next write goes over any
+ * partial row.
+ * </p>
+ * <p>
+ * Compacting the history writes all of the columns to a new generation directory ({@code gen-<n>/}), which is
+ * then renamed into place in one go. The columns in the most recent generation (or the history directory itself,
+ * before the first compaction) are the current ones. Reads, appends and compactions on a job history are
+ * serialized by a per-job read/write lock, so a read never sees the columns part way through being replaced.
+ * </p>
+ */
+public class StageHistory {
+
+    private static final Logger LOGGER = Logger.getLogger(StageHistory.class.getName());
+
+    /**
+     * Max number of rows kept. Once over, the oldest rows are dropped, leaving half.
+     */
+    static final int MAX_ROWS = Integer.getInteger(StageHistory.class.getName()+".maxRows", 100000);
+
+    // Stage name ids are stored as shorts
+    static final int MAX_STAGE_NAMES = Short.MAX_VALUE;
+
+    private static final String GENERATION_PREFIX = "gen-";
+
+    // Status column codes are the index into this array. Written to disk, so only ever add to the end.
+    private static final StatusExt[] STATUS_CODES = {
+            StatusExt.NOT_EXECUTED,
+            StatusExt.ABORTED,
+            StatusExt.SUCCESS,
+            StatusExt.IN_PROGRESS,
+            StatusExt.PAUSED_PENDING_INPUT,
+            StatusExt.FAILED,
+            StatusExt.UNSTABLE
+    };
+
+    // Per history directory. Only held on to while a history is in use.
+    private static final LoadingCache<String, ReadWriteLock> locks = CacheBuilder.newBuilder().weakValues().build(
+            new CacheLoader<String, ReadWriteLock>() {
+                @Override
+                public ReadWriteLock load(String dir) {
+                    return new ReentrantReadWriteLock();
+                }
+            });
+
+    enum Column {
+        BUILD(4),
+        STAGE(2),
+        START(8),
+        DURATION(8),
+        PAUSE(8),
+        STATUS(1);
+
+        final int width;
+
+        Column(int width) {
+            this.width = width;
+        }
+
+        File getFile(File dir) {
+            return new File(dir, name().toLowerCase(Locale.ENGLISH) + ".col");
+        }
+    }
+
+    /**
+     * A stage of a completed run.
+     */
+    public static class Row {
+        private final int build;
+        private final String stageName;
+        private final long startTimeMillis;
+        private final long durationMillis;
+        private final long pauseDurationMillis;
+        private final StatusExt status;
+
+        Row(int build, String stageName, long startTimeMillis, long durationMillis, long pauseDurationMillis, StatusExt status) {
+            this.build = build;
+            this.stageName = stageName;
+            this.startTimeMillis = startTimeMillis;
+            this.durationMillis = durationMillis;
+            this.pauseDurationMillis = pauseDurationMillis;
+            this.status = status;
+        }
+
+        public int getBuild() {
+            return build;
+        }
+
+        public String getStageName() {
+            return stageName;
+        }
+
+        public long getStartTimeMillis() {
+            return startTimeMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public long getPauseDurationMillis() {
+            return pauseDurationMillis;
+        }
+
+        public StatusExt getStatus() {
+            return status;
+        }
+    }
+
+    private final File dir;
+    private final WorkflowJob job;
+    private final ReadWriteLock lock;
+
+    StageHistory(File dir) {
+        this(dir, null);
+    }
+
+    private StageHistory(File dir, @CheckForNull WorkflowJob job) {
+        this.dir = dir;
+        this.job = job;
+        this.lock = locks.getUnchecked(dir.getAbsolutePath());
+    }
+
+    public static @Nonnull StageHistory get(@Nonnull WorkflowJob job) {
+        return new StageHistory(new File(job.getRootDir(), "wfapi/stage-history"), job);
+    }
+
+    /**
+     * Get the stages of the most recent builds in a build range.
+     * <p>
+     * A job without a history yet (e.g. after an upgrade) gets one seeded from its most recent runs.
+     * </p>
+     * @param stageNames The names of the stages to get, or {@code null} for all stages.
+     * @param fromBuild The first build number (inclusive).
+     * @param toBuild The last build number (inclusive).
+     * @param maxBuilds The max number of builds to get. Builds with none of the stages don't count.
+     * @return The stages, in the order they were added (i.e. roughly in build order).
+     * @throws IOException Error reading the history.
+     */
+    public List<Row> read(@CheckForNull Collection<String> stageNames, int fromBuild, int toBuild, int maxBuilds) throws IOException {
+        if (job != null && !exists()) {
+            seed(job, this);
+        }
+
+        lock.readLock().lock();
+        try {
+            return read(getColumnDir(), stageNames, fromBuild, toBuild, maxBuilds);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Row> read(File columnDir, Collection<String> stageNames, int fromBuild, int toBuild, int maxBuilds) throws IOException {
+        List<String> names = readStageNames();
+        int rowCount = getRowCount(columnDir);
+        if (rowCount == 0 || maxBuilds <= 0) {
+            return Collections.emptyList();
+        }
+
+        boolean[] wantedStages = new boolean[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            wantedStages[i] = (stageNames == null || stageNames.contains(names.get(i)));
+        }
+
+        // First pass over the build and stage columns only, to find the builds we want.
+        ByteBuffer builds = map(columnDir, Column.BUILD, rowCount);
+        ByteBuffer stages = map(columnDir, Column.STAGE, rowCount);
+        TreeSet<Integer> wantedBuilds = new TreeSet<Integer>();
+        for (int i = 0; i < rowCount; i++) {
+            int build = builds.getInt(i * Column.BUILD.width);
+            if (build < fromBuild || build > toBuild || !isWanted(wantedStages, stages.getShort(i * Column.STAGE.width))) {
+                continue;
+            }
+            if (wantedBuilds.add(build) && wantedBuilds.size() > maxBuilds) {
+                wantedBuilds.pollFirst();
+            }
+        }
+        if (wantedBuilds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // Then pick up the rest of the columns for the rows we want.
+        ByteBuffer starts = map(columnDir, Column.START, rowCount);
+        ByteBuffer durations = map(columnDir, Column.DURATION, rowCount);
+        ByteBuffer pauses = map(columnDir, Column.PAUSE, rowCount);
+        ByteBuffer statuses = map(columnDir, Column.STATUS, rowCount);
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < rowCount; i++) {
+            int build = builds.getInt(i * Column.BUILD.width);
+            short stage = stages.getShort(i * Column.STAGE.width);
+            if (!wantedBuilds.contains(build) || !isWanted(wantedStages, stage)) {
+                continue;
+            }
+            rows.add(new Row(build, names.get(stage),
+                    starts.getLong(i * Column.START.width),
+                    durations.getLong(i * Column.DURATION.width),
+                    pauses.getLong(i * Column.PAUSE.width),
+                    decodeStatus(statuses.get(i * Column.STATUS.width))));
+        }
+        return rows;
+    }
+
+    private static boolean isWanted(boolean[] wantedStages, short stage) {
+        // A stage id we don't have a name for can only be a row that is being written as we read.
+        return (stage >= 0 && stage < wantedStages.length && wantedStages[stage]);
+    }
+
+    static byte encodeStatus(@CheckForNull StatusExt status) {
+        for (int i = 0; i < STATUS_CODES.length; i++) {
+            if (STATUS_CODES[i] == status) {
+                return (byte) i;
+            }
+        }
+        return -1;
+    }
+
+    static @CheckForNull StatusExt decodeStatus(byte code) {
+        return (code >= 0 && code < STATUS_CODES.length ? STATUS_CODES[code] : null);
+    }
+
+    /**
+     * Add the stages of a completed run, unless it's the run last added.
+     * <p>
+     * The only run that can be added twice is one that completes just as the history is being seeded, which is
+     * then the last run seeded. So checking the last row is enough, without scanning the build column.
+     * </p>
+     * @param buildNumber The run number.
+     * @param runExt The run.
+     * @throws IOException Error writing the history.
+     */
+    void append(int buildNumber, RunExt runExt) throws IOException {
+        lock.writeLock().lock();
+        try {
+            File columnDir = getColumnDir();
+            int rowCount = getRowCount(columnDir);
+            if (rowCount > 0 && getLastBuild(columnDir, rowCount) == buildNumber) {
+                return;
+            }
+
+            List<String> names = new ArrayList<String>(readStageNames());
+            List<StageNodeExt> stages = new ArrayList<StageNodeExt>();
+            List<Short> stageIds = new ArrayList<Short>();
+            boolean newNames = false;
+            for (StageNodeExt stage : runExt.getStages()) {
+                int stageId = names.indexOf(stage.getName());
+                if (stageId == -1) {
+                    if (names.size() >= MAX_STAGE_NAMES) {
+                        continue;
+                    }
+                    stageId = names.size();
+                    names.add(stage.getName());
+                    newNames = true;
+                }
+                stages.add(stage);
+                stageIds.add((short) stageId);
+            }
+            if (stages.isEmpty()) {
+                return;
+            }
+
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create directory " + dir);
+            }
+            // Names go first, so as a reader never sees a stage id without a name.
+            if (newNames) {
+                writeStageNames(names);
+            }
+
+            int n = stages.size();
+            ByteBuffer buildColumn = ByteBuffer.allocate(n * Column.BUILD.width);
+            ByteBuffer stageColumn = ByteBuffer.allocate(n * Column.STAGE.width);
+            ByteBuffer startColumn = ByteBuffer.allocate(n * Column.START.width);
+            ByteBuffer durationColumn = ByteBuffer.allocate(n * Column.DURATION.width);
+            ByteBuffer pauseColumn = ByteBuffer.allocate(n * Column.PAUSE.width);
+            ByteBuffer statusColumn = ByteBuffer.allocate(n * Column.STATUS.width);
+            for (int i = 0; i < n; i++) {
+                StageNodeExt stage = stages.get(i);
+                buildColumn.putInt(buildNumber);
+                stageColumn.putShort(stageIds.get(i));
+                startColumn.putLong(stage.getStartTimeMillis());
+                durationColumn.putLong(stage.getDurationMillis());
+                pauseColumn.putLong(stage.getPauseDurationMillis());
+                statusColumn.put(encodeStatus(stage.getStatus()));
+            }
+            write(columnDir, Column.BUILD, rowCount, buildColumn);
+            write(columnDir, Column.STAGE, rowCount, stageColumn);
+            write(columnDir, Column.START, rowCount, startColumn);
+            write(columnDir, Column.DURATION, rowCount, durationColumn);
+            write(columnDir, Column.PAUSE, rowCount, pauseColumn);
+            write(columnDir, Column.STATUS, rowCount, statusColumn);
+
+            if (rowCount + n > MAX_ROWS) {
+                compact(rowCount + n, MAX_ROWS / 2);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean exists() {
+        return Column.BUILD.getFile(getColumnDir()).exists();
+    }
+
+    /**
+     * Create an empty history, if there isn't one already.
+     */
+    void create() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create directory " + dir);
+            }
+            File columnDir = getColumnDir();
+            for (Column column : Column.values()) {
+                column.getFile(columnDir).createNewFile();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static int getLastBuild(File columnDir, int rowCount) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(Column.BUILD.getFile(columnDir), "r");
+        try {
+            file.seek((long) (rowCount - 1) * Column.BUILD.width);
+            return file.readInt();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Drop the oldest rows, keeping the last {@code keepRows}.
+     * <p>
+     * The kept rows go into a new generation, which only becomes the current one once all of its columns are
+     * written. The old generation is then deleted, if we can. On Windows, a column file can't be deleted while
+     * a reader still has it mapped, in which case we try again after the next compaction.
+     * </p>
+     */
+    void compact(int rowCount, int keepRows) throws IOException {
+        lock.writeLock().lock();
+        try {
+            int generation = getCurrentGeneration();
+            File columnDir = getColumnDir(generation);
+            File newColumnDir = getColumnDir(generation + 1);
+            File tempDir = new File(dir, newColumnDir.getName() + ".tmp");
+            if (tempDir.exists()) {
+                // Left over from a compaction that didn't complete.
+                Util.deleteRecursive(tempDir);
+            }
+            if (!tempDir.mkdirs()) {
+                throw new IOException("Unable to create directory " + tempDir);
+            }
+
+            int dropRows = rowCount - keepRows;
+            for (Column column : Column.values()) {
+                byte[] kept = new byte[keepRows * column.width];
+                RandomAccessFile in = new RandomAccessFile(column.getFile(columnDir), "r");
+                try {
+                    in.seek((long) dropRows * column.width);
+                    in.readFully(kept);
+                } finally {
+                    in.close();
+                }
+                RandomAccessFile out = new RandomAccessFile(column.getFile(tempDir), "rw");
+                try {
+                    out.write(kept);
+                } finally {
+                    out.close();
+                }
+            }
+
+            if (!tempDir.renameTo(newColumnDir)) {
+                Util.deleteRecursive(tempDir);
+                throw new IOException("Unable to move " + tempDir + " into place when compacting the stage history");
+            }
+            deleteGenerationsBefore(generation + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void deleteGenerationsBefore(int generation) {
+        for (int oldGeneration : getGenerations()) {
+            if (oldGeneration >= generation) {
+                continue;
+            }
+            try {
+                if (oldGeneration == 0) {
+                    for (Column column : Column.values()) {
+                        File file = column.getFile(dir);
+                        if (file.exists() && !file.delete()) {
+                            throw new IOException("Unable to delete " + file);
+                        }
+                    }
+                } else {
+                    Util.deleteRecursive(getColumnDir(oldGeneration));
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to delete old stage history generation. Will try again after the next compaction.", e);
+            }
+        }
+    }
+
+    int getRowCount() {
+        return getRowCount(getColumnDir());
+    }
+
+    private static int getRowCount(File columnDir) {
+        long rowCount = Long.MAX_VALUE;
+        for (Column column : Column.values()) {
+            rowCount = Math.min(rowCount, column.getFile(columnDir).length() / column.width);
+        }
+        return (int) rowCount;
+    }
+
+    /**
+     * The directory holding the current columns.
+     */
+    File getColumnDir() {
+        return getColumnDir(getCurrentGeneration());
+    }
+
+    private File getColumnDir(int generation) {
+        // Generation 0 is the history directory itself i.e. before the first compaction.
+        return (generation == 0 ? dir : new File(dir, GENERATION_PREFIX + generation));
+    }
+
+    private int getCurrentGeneration() {
+        int current = 0;
+        for (int generation : getGenerations()) {
+            current = Math.max(current, generation);
+        }
+        return current;
+    }
+
+    private List<Integer> getGenerations() {
+        List<Integer> generations = new ArrayList<Integer>();
+        generations.add(0);
+        String[] fileNames = dir.list();
+        if (fileNames != null) {
+            for (String fileName : fileNames) {
+                if (fileName.startsWith(GENERATION_PREFIX)) {
+                    try {
+                        generations.add(Integer.parseInt(fileName.substring(GENERATION_PREFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // Not a generation e.g. one being written ("gen-2.tmp")
+                    }
+                }
+            }
+        }
+        return generations;
+    }
+
+    private static MappedByteBuffer map(File columnDir, Column column, int rowCount) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(column.getFile(columnDir), "r");
+        try {
+            // The mapping stays valid after the file is closed.
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, (long) rowCount * column.width);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static void write(File columnDir, Column column, int atRow, ByteBuffer values) throws IOException {
+        values.flip();
+        RandomAccessFile file = new RandomAccessFile(column.getFile(columnDir), "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            long position = (long) atRow * column.width;
+            while (values.hasRemaining()) {
+                position += channel.write(values, position);
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private File getStageNamesFile() {
+        return new File(dir, "stages.json");
+    }
+
+    List<String> readStageNames() throws IOException {
+        File namesFile = getStageNamesFile();
+        if (!namesFile.isFile()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(JSONReadWrite.jsonMapper.readValue(namesFile, String[].class));
+    }
+
+    private void writeStageNames(List<String> names) throws IOException {
+        File namesFile = getStageNamesFile();
+        // Write to a temp file and move it into place, so as a reader never sees a half written file.
+        File tempFile = new File(dir, namesFile.getName() + ".tmp");
+        JSONReadWrite.jsonMapper.writeValue(tempFile, names);
+        if ((namesFile.exists() && !namesFile.delete()) || !tempFile.renameTo(namesFile)) {
+            tempFile.delete();
+            throw new IOException("Unable to write " + namesFile);
+        }
+    }
+
+    @Extension
+    public static class RunCompletionListener extends RunListener<WorkflowRun> {
+        @Override
+        public void onCompleted(WorkflowRun run, @Nonnull TaskListener listener) {
+            if (run.getExecution() == null) {
+                return;
+            }
+            StageHistory history = get(run.getParent());
+            try {
+                seed(run.getParent(), history);
+                history.append(run.getNumber(), RunExt.create(run));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to add " + run + " to the stage history", e);
+            }
+        }
+    }
+
+    /**
+     * Seed the history from the most recent completed runs (oldest first), if the job doesn't have a history yet.
+     */
+    static void seed(WorkflowJob job, StageHistory history) throws IOException {
+        history.lock.writeLock().lock();
+        try {
+            if (!history.exists()) {
+                history.create();
+                history.appendRecentRuns(job);
+            }
+        } finally {
+            history.lock.writeLock().unlock();
+        }
+    }
+
+    private void appendRecentRuns(WorkflowJob job) throws IOException {
+        List<WorkflowRun> runs = new ArrayList<WorkflowRun>();
+        for (WorkflowRun run : job.getBuilds()) {
+            if (runs.size() >= JobStageStats.SEED_RUNS) {
+                break;
+            }
+            if (!run.isBuilding() && run.getExecution() != null) {
+                runs.add(run);
+            }
+        }
+        Collections.reverse(runs);
+
+        for (WorkflowRun run : runs) {
+            append(run.getNumber(), RunExt.create(run));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.stats;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Running duration statistics for a stage (or a whole run).
+ * <p>
+ * Count, mean and variance are kept using Welford's method, so they are updated one duration at a time
+ * without holding on to the durations. Quantiles come from a {@link DurationSketch}.
+ * </p>
+ */
+public class StageStats {
+
+    private long count;
+    private double mean;
+    // Sum of squared differences from the mean
+    private double m2;
+    private long minMillis;
+    private long maxMillis;
+    private DurationSketch sketch = new DurationSketch();
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    public double getM2() {
+        return m2;
+    }
+
+    public void setM2(double m2) {
+        this.m2 = m2;
+    }
+
+    public long getMinMillis() {
+        return minMillis;
+    }
+
+    public void setMinMillis(long minMillis) {
+        this.minMillis = minMillis;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public void setMaxMillis(long maxMillis) {
+        this.maxMillis = maxMillis;
+    }
+
+    public DurationSketch getSketch() {
+        return sketch;
+    }
+
+    public void setSketch(DurationSketch sketch) {
+        this.sketch = sketch;
+    }
+
+    public void add(long durationMillis) {
+        durationMillis = Math.max(0, durationMillis);
+
+        count++;
+        double delta = durationMillis - mean;
+        mean += delta / count;
+        m2 += delta * (durationMillis - mean);
+
+        if (count == 1) {
+            minMillis = durationMillis;
+            maxMillis = durationMillis;
+        } else {
+            minMillis = Math.min(minMillis, durationMillis);
+            maxMillis = Math.max(maxMillis, durationMillis);
+        }
+
+        sketch.add(durationMillis);
+    }
+
+    /**
+     * Sample variance. 0 until there are at least 2 durations.
+     */
+    @JsonIgnore
+    public double getVariance() {
+        return (count < 2 ? 0 : m2 / (count - 1));
+    }
+
+    @JsonIgnore
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Get an estimate of a duration quantile.
+     * @param quantile The quantile e.g. 0.9 for the 90th percentile.
+     * @return The estimated duration, or 0 if there are no durations.
+     */
+    public long getQuantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        } else if (quantile <= 0.0) {
+            return minMillis;
+        } else if (quantile >= 1.0) {
+            return maxMillis;
+        }
+        // The sketch only knows the bucket. We know the actual range.
+        return Math.min(maxMillis, Math.max(minMillis, sketch.getQuantile(quantile)));
+    }
+
+    /**
+     * Estimate the total duration of something that is still going, after {@code elapsedMillis}.
+     * <p>
+     * Goes by the durations that ran longer than {@code elapsedMillis}, taking the median of those. So, on
+     * a stage that usually takes either 1 minute or 10 minutes, the estimate moves to 10 minutes once the
+     * stage has gone past the 1 minute mark, rather than sitting somewhere in between like the mean would.
+     * </p>
+     * @param elapsedMillis How long it has been going so far.
+     * @return The estimated total duration, never less than {@code elapsedMillis}. 0 if there are no durations.
+     */
+    public long estimateDuration(long elapsedMillis) {
+        if (count == 0) {
+            return 0;
+        }
+        if (elapsedMillis >= maxMillis) {
+            // Longer than it has ever taken. Nothing to go on.
+            return elapsedMillis;
+        }
+        double fractionDone = sketch.getFraction(elapsedMillis);
+        long estimate = getQuantile(fractionDone + (1.0 - fractionDone) / 2);
+        return Math.max(elapsedMillis, estimate);
+    }
+}
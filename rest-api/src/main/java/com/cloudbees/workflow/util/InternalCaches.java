@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.util;
+
+import com.google.common.cache.Cache;
+import hudson.Extension;
+import jenkins.model.Jenkins;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches internal to this plugin.
+ * <p>
+ * Unlike the caches on {@code FlowNodeUtil.CacheExtensionPoint}, which other plugins can provide, these can come
+ * and go as the plugin needs. Each cache is declared (and built) by the class using it, as a {@link Spec}, so as
+ * this class doesn't need to know about any of them. Caches are created on first use and live as long as the
+ * Jenkins instance.
+ * </p>
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class InternalCaches {
+
+    // Used in testing where Jenkins is not running yet
+    private static final InternalCaches FALLBACK_CACHES = new InternalCaches();
+
+    private final ConcurrentMap<Spec<?, ?>, Cache<?, ?>> caches = new ConcurrentHashMap<Spec<?, ?>, Cache<?, ?>>();
+
+    /**
+     * Get a cache.
+     * @param spec The cache spec.
+     * @return The cache, built from the spec if it's the first time it's asked for.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Cache<K, V> get(Spec<K, V> spec) {
+        ConcurrentMap<Spec<?, ?>, Cache<?, ?>> caches = getInstance().caches;
+        Cache<?, ?> cache = caches.get(spec);
+        if (cache == null) {
+            Cache<K, V> newCache = spec.build();
+            cache = caches.putIfAbsent(spec, newCache);
+            if (cache == null) {
+                cache = newCache;
+            }
+        }
+        return (Cache<K, V>) cache;
+    }
+
+    private static InternalCaches getInstance() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return FALLBACK_CACHES;
+        }
+        return jenkins.getExtensionList(InternalCaches.class).get(0);
+    }
+
+    /**
+     * The declaration of a cache. Compared by identity, so should be held in a constant.
+     */
+    public abstract static class Spec<K, V> {
+        /**
+         * Build the cache.
+         */
+        protected abstract Cache<K, V> build();
+    }
+}
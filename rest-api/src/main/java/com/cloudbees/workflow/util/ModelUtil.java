@@ -24,17 +24,22 @@
 package com.cloudbees.workflow.util;
 
 import hudson.model.Item;
+import hudson.model.Run;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
 
 /**
  * @author <a href="mailto:tom.fennelly@gmail.com">tom.fennelly@gmail.com</a>
  */
 public class ModelUtil {
 
+    // Root URL for work handed off from a request thread e.g. to a thread pool
+    private static final ThreadLocal<String> handedOffRootUrl = new ThreadLocal<String>();
+
     private ModelUtil() {
     }
 
@@ -54,8 +59,48 @@ public class ModelUtil {
         return rootUrl + "/" + itemUrl;
     }
 
+    /**
+     * Get the key under which data about a run is cached.
+     * <p>
+     * The run externalizable id is not enough on its own. A deleted job (or run) can be replaced by a new one with
+     * the same name (or number), so the run timestamp is part of the key too. Entries for deleted or renamed runs
+     * are never looked up again, and just age out of the cache.
+     * </p>
+     * @param run The run.
+     * @return The cache key.
+     */
+    public static String getRunCacheKey(Run<?, ?> run) {
+        return run.getExternalizableId() + "@" + run.getTimeInMillis();
+    }
+
     public static String getRootUrl() {
         StaplerRequest currentRequest = Stapler.getCurrentRequest();
-        return (currentRequest != null) ? currentRequest.getContextPath() : "/";
+        if (currentRequest != null) {
+            return currentRequest.getContextPath();
+        }
+        String rootUrl = handedOffRootUrl.get();
+        return (rootUrl != null) ? rootUrl : "/";
+    }
+
+    /**
+     * Wrap a task that is to be handed off to another thread, so as URLs built by the task are
+     * the same as those built on the current (request) thread.
+     * @param task The task.
+     * @return The wrapped task.
+     */
+    public static <V> Callable<V> withRootUrl(final Callable<V> task) {
+        final String rootUrl = getRootUrl();
+        return new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                String previousRootUrl = handedOffRootUrl.get();
+                handedOffRootUrl.set(rootUrl);
+                try {
+                    return task.call();
+                } finally {
+                    handedOffRootUrl.set(previousRootUrl);
+                }
+            }
+        };
     }
 }
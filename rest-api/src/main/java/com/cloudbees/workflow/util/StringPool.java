@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.util;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Canonical copies of the strings held over and over in cached data e.g. stage and step names, exec node names
+ * and node ids, which are the same across most runs of a job.
+ * <p>
+ * The pool holds its strings weakly, so it only ever holds the strings that are still in use somewhere, and
+ * never holds long strings (anything over {@link #MAX_LENGTH} chars), which are unlikely to repeat.
+ * </p>
+ */
+public class StringPool {
+
+    static final int MAX_LENGTH = Integer.getInteger(StringPool.class.getName()+".maxLength", 256);
+
+    private static final Interner<String> strings = Interners.newWeakInterner();
+
+    private StringPool() {
+    }
+
+    /**
+     * Get the canonical copy of a string.
+     * @param value The string.
+     * @return The canonical copy, or the string itself if it's null or too long to pool.
+     */
+    @CheckForNull
+    public static String intern(@CheckForNull String value) {
+        if (value == null || value.length() > MAX_LENGTH) {
+            return value;
+        }
+        return strings.intern(value);
+    }
+}
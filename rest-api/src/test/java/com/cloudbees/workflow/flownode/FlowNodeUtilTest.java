@@ -24,11 +24,14 @@
 package com.cloudbees.workflow.flownode;
 
 import com.cloudbees.workflow.flownode.mock.FlowGraphBuilder;
+import com.cloudbees.workflow.rest.external.StatusExt;
+import org.jenkinsci.plugins.workflow.actions.ErrorAction;
 import org.jenkinsci.plugins.workflow.actions.NotExecutedNodeAction;
 import org.jenkinsci.plugins.workflow.graph.FlowGraphWalker;
 import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -205,4 +208,61 @@ public class FlowNodeUtilTest {
         Assert.assertEquals(120000L, FlowNodeUtil.getStageExecDuration(graphBuilder.getNode("Test")).getTotalDurationMillis());
         Assert.assertEquals(20005L, FlowNodeUtil.getStageExecDuration(graphBuilder.getNode("Deploy")).getTotalDurationMillis());
     }
+
+    @Test
+    public void test_getStageAtomSample() {
+        FlowGraphBuilder graphBuilder = new FlowGraphBuilder();
+
+        graphBuilder.addNode("Start").addStageNode("Build");
+        for (int i = 0; i < 30; i++) {
+            graphBuilder.addInStageNode("step " + i);
+            if (i == 12) {
+                graphBuilder.addAction(new ErrorAction(new Exception("step 12 failed")));
+            }
+        }
+        graphBuilder.addStageNode("Test").addInStageNode("Mvn - tests");
+
+        FlowNode build = graphBuilder.getNode("Build");
+
+        // Small enough to return all the nodes.
+        Assert.assertEquals(30, FlowNodeUtil.getStageAtomSample(build, 30, 2).size());
+        Assert.assertEquals("[Mvn - tests]", FlowNodeUtil.getStageAtomSample(graphBuilder.getNode("Test"), 5, 2).toString());
+
+        // Head, failure and tail.
+        Assert.assertEquals("[step 0, step 1, step 12, step 28, step 29]", FlowNodeUtil.getStageAtomSample(build, 10, 2).toString());
+
+        // Running nodes are also kept.
+        Mockito.when(graphBuilder.flowExecution.isCurrentHead(graphBuilder.getNode("step 20"))).thenReturn(true);
+        graphBuilder.setCurrentHeads("Mvn - tests", "step 20");
+        Assert.assertEquals("[step 0, step 1, step 12, step 20, step 28, step 29]", FlowNodeUtil.getStageAtomSample(build, 10, 2).toString());
+
+        // Head and tail take precedence when space is short.
+        Assert.assertEquals("[step 0, step 1, step 28, step 29]", FlowNodeUtil.getStageAtomSample(build, 4, 2).toString());
+    }
+
+    @Test
+    public void test_graphIndex_status_and_error() {
+        FlowGraphBuilder graphBuilder = new FlowGraphBuilder();
+
+        graphBuilder.addNode("Start")
+                .addStageNode("Build")
+                .addInStageNode("Git")
+                .addInStageNode("Mvn - build").addAction(new ErrorAction(new IllegalStateException("compile failed")))
+                .addInStageNode("Skipped").addAction(new NotExecutedNodeAction())
+        ;
+
+        FlowGraphIndex graphIndex = FlowNodeUtil.getGraphIndex(graphBuilder.flowExecution);
+
+        FlowNode git = graphBuilder.getNode("Git");
+        Assert.assertEquals(StatusExt.SUCCESS, graphIndex.getStatus(graphIndex.indexOf(git)));
+        Assert.assertNull(graphIndex.getError(git));
+
+        FlowNode build = graphBuilder.getNode("Mvn - build");
+        Assert.assertEquals(StatusExt.FAILED, graphIndex.getStatus(graphIndex.indexOf(build)));
+        Assert.assertEquals("compile failed", graphIndex.getError(build).getMessage());
+        Assert.assertEquals(IllegalStateException.class.getName(), graphIndex.getError(build).getType());
+
+        Assert.assertEquals(StatusExt.NOT_EXECUTED, graphIndex.getStatus(graphIndex.indexOf(graphBuilder.getNode("Skipped"))));
+        Assert.assertEquals(1, graphIndex.getStageAtomCount(graphBuilder.getNode("Build"), StatusExt.FAILED));
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.flownode;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class LogLineIndexTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void test_build() throws IOException {
+        // 10 lines of "line N\n". Lines 1-9 are 7 bytes, line 10 is 8 bytes.
+        LogLineIndex index = build(createLog(10, true), 3);
+
+        Assert.assertEquals(10, index.getLineCount());
+        Assert.assertEquals(71, index.getLength());
+
+        Assert.assertEquals(1, index.getCheckpointLine(1));
+        Assert.assertEquals(0, index.getCheckpointOffset(1));
+        Assert.assertEquals(1, index.getCheckpointLine(3));
+        Assert.assertEquals(4, index.getCheckpointLine(4));
+        Assert.assertEquals(21, index.getCheckpointOffset(4));
+        Assert.assertEquals(4, index.getCheckpointLine(6));
+        Assert.assertEquals(10, index.getCheckpointLine(10));
+        Assert.assertEquals(63, index.getCheckpointOffset(10));
+
+        // Past the end... last checkpoint
+        Assert.assertEquals(10, index.getCheckpointLine(100));
+    }
+
+    @Test
+    public void test_build_unterminated_last_line() throws IOException {
+        LogLineIndex index = build(createLog(3, false), 3);
+        Assert.assertEquals(3, index.getLineCount());
+        // The end of the log is not the start of a 4th line
+        Assert.assertEquals(1, index.getCheckpointLine(4));
+
+        index = build(createLog(3, true), 3);
+        Assert.assertEquals(3, index.getLineCount());
+        Assert.assertEquals(1, index.getCheckpointLine(4));
+    }
+
+    @Test
+    public void test_build_empty() throws IOException {
+        LogLineIndex index = build("", 3);
+        Assert.assertEquals(0, index.getLineCount());
+        Assert.assertEquals(0, index.getLength());
+        Assert.assertEquals(0, index.getCheckpointOffset(1));
+    }
+
+    @Test
+    public void test_write_read() throws IOException {
+        LogLineIndex index = build(createLog(10, true), 3);
+        File indexFile = new File(tempFolder.getRoot(), "wfapi/log-lines/6.idx");
+
+        index.write(indexFile);
+        LogLineIndex readIndex = LogLineIndex.read(indexFile);
+
+        Assert.assertEquals(index.getCheckpointInterval(), readIndex.getCheckpointInterval());
+        Assert.assertEquals(index.getLength(), readIndex.getLength());
+        Assert.assertEquals(index.getLineCount(), readIndex.getLineCount());
+        for (int line = 1; line <= 10; line++) {
+            Assert.assertEquals(index.getCheckpointOffset(line), readIndex.getCheckpointOffset(line));
+        }
+    }
+
+    @Test
+    public void test_concurrent_writes() throws Exception {
+        final File indexFile = new File(tempFolder.getRoot(), "wfapi/log-lines/6.idx");
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        // Each writer writes a different index (e.g. the log grew in between), over and over. The indexes are big
+        // enough to take more than one write to the file.
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            final LogLineIndex index = build(createLog(10000 * (i + 1), true), 3);
+            writers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int ii = 0; ii < 20; ii++) {
+                            index.write(indexFile);
+                        }
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    }
+                }
+            };
+            writers[i].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+
+        // Whichever index won, it's all there and consistent.
+        LogLineIndex readIndex = LogLineIndex.read(indexFile);
+        LogLineIndex expected = build(createLog(readIndex.getLineCount(), true), 3);
+        Assert.assertEquals(expected.getLength(), readIndex.getLength());
+        for (int line = 1; line <= readIndex.getLineCount(); line++) {
+            Assert.assertEquals(expected.getCheckpointOffset(line), readIndex.getCheckpointOffset(line));
+        }
+        // No temp files left behind
+        Assert.assertEquals(1, indexFile.getParentFile().list().length);
+    }
+
+    private LogLineIndex build(String log, int checkpointInterval) throws IOException {
+        return LogLineIndex.build(new ByteArrayInputStream(log.getBytes("UTF-8")), checkpointInterval);
+    }
+
+    private String createLog(int lineCount, boolean terminateLastLine) {
+        StringBuilder log = new StringBuilder();
+        for (int i = 1; i <= lineCount; i++) {
+            log.append("line ").append(i);
+            if (i < lineCount || terminateLastLine) {
+                log.append('\n');
+            }
+        }
+        return log.toString();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints;
+
+import com.cloudbees.workflow.Util;
+import com.cloudbees.workflow.rest.external.DashboardExt;
+import com.cloudbees.workflow.rest.external.DashboardJobExt;
+import com.cloudbees.workflow.rest.external.StatusExt;
+import hudson.model.ListView;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+
+public class DashboardTest {
+
+    @Rule
+    public JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Test
+    public void test() throws Exception {
+        MockFolder folder = jenkinsRule.createFolder("Team");
+        WorkflowJob job1 = folder.createProject(WorkflowJob.class, "Job 1");
+        WorkflowJob job2 = folder.createProject(WorkflowJob.class, "Job 2");
+        jenkinsRule.jenkins.createProject(WorkflowJob.class, "Other Job");
+
+        job1.setDefinition(new CpsFlowDefinition("stage ('Build'); echo ('Building'); stage ('Test'); echo ('Testing');"));
+        jenkinsRule.assertBuildStatusSuccess(job1.scheduleBuild2(0));
+
+        // All jobs beneath the folder
+        DashboardExt dashboard = Util.getJSON("wfapi/dashboard?folder=Team", DashboardExt.class, jenkinsRule);
+        Assert.assertNotNull(dashboard.getVersion());
+        Assert.assertEquals(2, dashboard.getJobs().size());
+
+        DashboardJobExt job1Ext = dashboard.getJobs().get(0);
+        Assert.assertEquals("Team/Job 1", job1Ext.getFullName());
+        Assert.assertEquals("/jenkins/job/Team/job/Job%201/wfapi/describe", job1Ext.get_links().self.href);
+        Assert.assertEquals(StatusExt.SUCCESS, job1Ext.getLatestRun().getStatus());
+        Assert.assertEquals(2, job1Ext.getLatestRun().getStages().size());
+        Assert.assertEquals("Build", job1Ext.getLatestRun().getStages().get(0).getName());
+        Assert.assertNull(job1Ext.getLatestRun().getStages().get(0).getStageFlowNodes());
+        Assert.assertEquals("Team/Job 2", dashboard.getJobs().get(1).getFullName());
+        Assert.assertNull(dashboard.getJobs().get(1).getLatestRun());
+
+        // Nothing changed
+        DashboardExt unchanged = Util.getJSON("wfapi/dashboard?folder=Team&knownVersion=" + dashboard.getVersion(), DashboardExt.class, jenkinsRule);
+        Assert.assertEquals(dashboard.getVersion(), unchanged.getVersion());
+        Assert.assertTrue(unchanged.getJobs().isEmpty());
+
+        // A new build should change the version
+        jenkinsRule.assertBuildStatusSuccess(job1.scheduleBuild2(0));
+        DashboardExt changed = Util.getJSON("wfapi/dashboard?folder=Team&knownVersion=" + dashboard.getVersion(), DashboardExt.class, jenkinsRule);
+        Assert.assertFalse(dashboard.getVersion().equals(changed.getVersion()));
+        Assert.assertEquals(2, changed.getJobs().size());
+        Assert.assertEquals("2", changed.getJobs().get(0).getLatestRun().getId());
+
+        // Top level, including the jobs in the folder
+        Assert.assertEquals(3, Util.getJSON("wfapi/dashboard", DashboardExt.class, jenkinsRule).getJobs().size());
+
+        // A view
+        ListView view = new ListView("Mine", jenkinsRule.jenkins);
+        jenkinsRule.jenkins.addView(view);
+        view.add(jenkinsRule.jenkins.getItemByFullName("Other Job", WorkflowJob.class));
+        DashboardExt viewDashboard = Util.getJSON("wfapi/dashboard?view=Mine", DashboardExt.class, jenkinsRule);
+        Assert.assertEquals(1, viewDashboard.getJobs().size());
+        Assert.assertEquals("Other Job", viewDashboard.getJobs().get(0).getFullName());
+    }
+}
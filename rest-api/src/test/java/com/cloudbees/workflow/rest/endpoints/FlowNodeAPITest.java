@@ -24,10 +24,16 @@
 package com.cloudbees.workflow.rest.endpoints;
 
 import com.cloudbees.workflow.Util;
+import com.cloudbees.workflow.flownode.FlowNodeUtil;
+import com.cloudbees.workflow.rest.endpoints.flownode.StageLogs;
+import com.cloudbees.workflow.rest.external.AtomFlowNodeExt;
+import com.cloudbees.workflow.rest.external.AtomFlowNodeExtFactory;
 import com.cloudbees.workflow.rest.external.FlowNodeLogExt;
+import com.cloudbees.workflow.rest.external.LogLinesExt;
 import com.cloudbees.workflow.rest.external.RunExt;
 import com.cloudbees.workflow.rest.external.StageNodeExt;
 import com.cloudbees.workflow.rest.external.StatusExt;
+import com.cloudbees.workflow.util.InternalCaches;
 import com.cloudbees.workflow.util.JSONReadWrite;
 import com.gargoylesoftware.htmlunit.Page;
 
@@ -35,6 +41,8 @@ import hudson.model.Result;
 import hudson.model.queue.QueueTaskFuture;
 
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.graph.AtomNode;
+import org.jenkinsci.plugins.workflow.graph.FlowNode;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.Assert;
@@ -140,6 +148,67 @@ public class FlowNodeAPITest {
         Assert.assertEquals("/jenkins/job/Noddy%20Job/1/execution/node/6/log", logExt.getConsoleUrl());
         Assert.assertNotNull(logExt.getText());
         Assert.assertThat(logExt.getText(), containsString("Building"));
+        Assert.assertEquals(0, logExt.getStart());
+        Assert.assertTrue(logExt.getOffset() > 0);
+
+        // Node is complete, so the log excerpt should now be cached and served from the cache
+        Assert.assertEquals(1, InternalCaches.get(FlowNodeLogExt.EXCERPT_CACHE).size());
+        nodeLog = webClient.goTo(Util.removeRootUrl(logUrl), "application/json");
+        FlowNodeLogExt cachedLogExt = jsonReadWrite.fromString(nodeLog.getWebResponse().getContentAsString(), FlowNodeLogExt.class);
+        Assert.assertEquals("6", cachedLogExt.getNodeId());
+        Assert.assertEquals(logExt.getText(), cachedLogExt.getText());
+        Assert.assertEquals(logExt.getOffset(), cachedLogExt.getOffset());
+        Assert.assertEquals(logExt.getConsoleUrl(), cachedLogExt.getConsoleUrl());
+
+        // Nothing added to the log since the last offset
+        nodeLog = webClient.goTo(Util.removeRootUrl(logUrl) + "?start=" + logExt.getOffset(), "application/json");
+        jsonResponse = nodeLog.getWebResponse().getContentAsString();
+        FlowNodeLogExt tailExt = jsonReadWrite.fromString(jsonResponse, FlowNodeLogExt.class);
+
+        Assert.assertEquals(logExt.getOffset(), tailExt.getStart());
+        Assert.assertEquals(logExt.getOffset(), tailExt.getOffset());
+        Assert.assertEquals(0, tailExt.getLength());
+        Assert.assertNull(tailExt.getText());
+
+        // Stage logs
+        String stageLogsUrl = stageDesc.get_links().getStageLogs().href;
+        Assert.assertEquals("/jenkins/job/Noddy%20Job/1/execution/node/5/wfapi/stageLogs", stageLogsUrl);
+        Page stageLogs = webClient.goTo(Util.removeRootUrl(stageLogsUrl), "application/json");
+        jsonResponse = stageLogs.getWebResponse().getContentAsString();
+        FlowNodeLogExt[] stageLogExts = jsonReadWrite.fromString(jsonResponse, FlowNodeLogExt[].class);
+        Assert.assertEquals(1, stageLogExts.length);
+        Assert.assertEquals("6", stageLogExts[0].getNodeId());
+        Assert.assertEquals("Print Message", stageLogExts[0].getNodeName());
+        Assert.assertThat(stageLogExts[0].getText(), containsString("Building"));
+        Assert.assertNull(stageLogs.getWebResponse().getResponseHeaderValue(StageLogs.OMITTED_NODES_HEADER));
+
+        // Raw log
+        String rawLogUrl = Util.removeRootUrl(logUrl).replace("/wfapi/log", "/wfapi/rawLog");
+        Page rawLog = webClient.goTo(rawLogUrl, "text/plain");
+        Assert.assertThat(rawLog.getWebResponse().getContentAsString(), containsString("Building"));
+        rawLog = webClient.goTo(rawLogUrl + "?notes=strip", "text/plain");
+        Assert.assertThat(rawLog.getWebResponse().getContentAsString(), containsString("Building"));
+
+        webClient.addRequestHeader("Range", "bytes=0-3");
+        try {
+            rawLog = webClient.goTo(rawLogUrl, "text/plain");
+            Assert.assertEquals(206, rawLog.getWebResponse().getStatusCode());
+            Assert.assertEquals("Buil", rawLog.getWebResponse().getContentAsString());
+        } finally {
+            webClient.removeRequestHeader("Range");
+        }
+
+        // Log lines
+        String logLinesUrl = Util.removeRootUrl(logUrl).replace("/wfapi/log", "/wfapi/logLines") + "?fromLine=1&lines=10";
+        Page logLines = webClient.goTo(logLinesUrl, "application/json");
+        LogLinesExt logLinesExt = jsonReadWrite.fromString(logLines.getWebResponse().getContentAsString(), LogLinesExt.class);
+        Assert.assertEquals("6", logLinesExt.getNodeId());
+        Assert.assertEquals(1, logLinesExt.getFromLine());
+        Assert.assertEquals(1, logLinesExt.getLineCount());
+        Assert.assertEquals(1, logLinesExt.getTotalLines());
+        Assert.assertEquals(0, logLinesExt.getStart());
+        Assert.assertFalse(logLinesExt.isHasMore());
+        Assert.assertThat(logLinesExt.getText(), containsString("Building"));
     }
 
     @Test
@@ -197,4 +266,133 @@ public class FlowNodeAPITest {
         Assert.assertEquals("my specific failure message", stageDesc.getStageFlowNodes().get(0).getError().getMessage());
         Assert.assertEquals("hudson.AbortException", stageDesc.getStageFlowNodes().get(0).getError().getType());
     }
+
+    @Test
+    public void test_stage_flow_node_paging() throws Exception {
+        WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "Noddy Job");
+
+        job.setDefinition(new CpsFlowDefinition("" +
+                "node {" +
+                "   stage ('Build'); " +
+                "   for (int i = 0; i < 10; i++) { " +
+                "       echo ('step ' + i); " +
+                "   } " +
+                "   error ('failed step'); " +
+                "}"));
+
+        QueueTaskFuture<WorkflowRun> build = job.scheduleBuild2(0);
+        jenkinsRule.assertBuildStatus(Result.FAILURE, build.get());
+
+        JenkinsRule.WebClient webClient = jenkinsRule.createWebClient();
+        JSONReadWrite jsonReadWrite = new JSONReadWrite();
+        String stageUrl = "job/Noddy%20Job/1/execution/node/5/wfapi/describe";
+
+        // No paging parameters. All the steps.
+        StageNodeExt stageDesc = jsonReadWrite.fromString(webClient.goTo(stageUrl, "application/json").getWebResponse().getContentAsString(), StageNodeExt.class);
+        int stepCount = stageDesc.getStageFlowNodes().size();
+        Assert.assertEquals(stepCount, stageDesc.getStageFlowNodeCount().intValue());
+        Assert.assertTrue(stepCount >= 11);
+
+        // A page of the steps.
+        StageNodeExt page = jsonReadWrite.fromString(webClient.goTo(stageUrl + "?offset=2&limit=3", "application/json").getWebResponse().getContentAsString(), StageNodeExt.class);
+        Assert.assertEquals(StatusExt.FAILED, page.getStatus());
+        Assert.assertEquals(stepCount, page.getStageFlowNodeCount().intValue());
+        Assert.assertEquals(3, page.getStageFlowNodes().size());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(stageDesc.getStageFlowNodes().get(i + 2).getId(), page.getStageFlowNodes().get(i).getId());
+        }
+
+        // Past the end.
+        page = jsonReadWrite.fromString(webClient.goTo(stageUrl + "?offset=" + stepCount, "application/json").getWebResponse().getContentAsString(), StageNodeExt.class);
+        Assert.assertEquals(0, page.getStageFlowNodes().size());
+
+        // Failed steps only.
+        page = jsonReadWrite.fromString(webClient.goTo(stageUrl + "?status=failed", "application/json").getWebResponse().getContentAsString(), StageNodeExt.class);
+        Assert.assertEquals(1, page.getStageFlowNodeCount().intValue());
+        Assert.assertEquals(1, page.getStageFlowNodes().size());
+        Assert.assertEquals(StatusExt.FAILED, page.getStageFlowNodes().get(0).getStatus());
+        Assert.assertEquals("failed step", page.getStageFlowNodes().get(0).getError().getMessage());
+    }
+
+    @Test
+    public void test_stage_logs_node_limit() throws Exception {
+        WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "Noddy Job");
+
+        job.setDefinition(new CpsFlowDefinition("" +
+                "node {" +
+                "   stage ('Build'); " +
+                "   for (int i = 0; i < " + (StageNodeExt.MAX_CHILD_NODES + 5) + "; i++) { " +
+                "       echo ('step ' + i); " +
+                "   } " +
+                "}"));
+        jenkinsRule.assertBuildStatusSuccess(job.scheduleBuild2(0));
+
+        JenkinsRule.WebClient webClient = jenkinsRule.createWebClient();
+        Page stageLogs = webClient.goTo("job/Noddy%20Job/1/execution/node/5/wfapi/stageLogs", "application/json");
+        FlowNodeLogExt[] stageLogExts = new JSONReadWrite().fromString(stageLogs.getWebResponse().getContentAsString(), FlowNodeLogExt[].class);
+
+        Assert.assertEquals(StageNodeExt.MAX_CHILD_NODES, stageLogExts.length);
+        Assert.assertThat(stageLogExts[0].getText(), containsString("step 0"));
+        Assert.assertEquals("5", stageLogs.getWebResponse().getResponseHeaderValue(StageLogs.OMITTED_NODES_HEADER));
+    }
+
+    @Test
+    public void test_batch_atom_node_creation() throws Exception {
+        WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "Noddy Job");
+
+        job.setDefinition(new CpsFlowDefinition("" +
+                "echo ('outside node'); " +
+                "node {" +
+                "   stage ('Build'); " +
+                "   echo ('one'); " +
+                "   sleep 1; " +
+                "   echo ('two'); " +
+                "   stage ('Test'); " +
+                "   echo ('three'); " +
+                "}"));
+        WorkflowRun run = jenkinsRule.assertBuildStatusSuccess(job.scheduleBuild2(0));
+
+        // The factory must build the same descriptions as building them one at a time.
+        AtomFlowNodeExtFactory factory = AtomFlowNodeExtFactory.create(run.getExecution());
+        int atomCount = 0;
+        for (FlowNode stage : FlowNodeUtil.getStageNodes(run.getExecution())) {
+            for (FlowNode node : FlowNodeUtil.getStageNodes(stage)) {
+                if (node instanceof AtomNode) {
+                    AtomFlowNodeExt expected = AtomFlowNodeExt.create(node);
+                    AtomFlowNodeExt actual = factory.create(node);
+                    Assert.assertEquals(JSONReadWrite.jsonMapper.writeValueAsString(expected), JSONReadWrite.jsonMapper.writeValueAsString(actual));
+                    atomCount++;
+                }
+            }
+        }
+        Assert.assertEquals(4, atomCount);
+    }
+
+    @Test
+    public void test_links_after_job_rename() throws Exception {
+        WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "Noddy Job");
+
+        job.setDefinition(new CpsFlowDefinition("" +
+                "node {" +
+                "   stage ('Build'); " +
+                "   echo ('Building'); " +
+                "}"));
+        jenkinsRule.assertBuildStatusSuccess(job.scheduleBuild2(0));
+
+        JenkinsRule.WebClient webClient = jenkinsRule.createWebClient();
+        JSONReadWrite jsonReadWrite = new JSONReadWrite();
+
+        String jsonResponse = webClient.goTo("job/Noddy%20Job/1/execution/node/5/wfapi/describe", "application/json").getWebResponse().getContentAsString();
+        StageNodeExt stageDesc = jsonReadWrite.fromString(jsonResponse, StageNodeExt.class);
+        Assert.assertEquals("/jenkins/job/Noddy%20Job/1/execution/node/6/wfapi/log", stageDesc.getStageFlowNodes().get(0).get_links().getLog().href);
+
+        // The node links must follow the job to its new URL.
+        job.renameTo("Renamed Job");
+
+        jsonResponse = webClient.goTo("job/Renamed%20Job/1/execution/node/5/wfapi/describe", "application/json").getWebResponse().getContentAsString();
+        stageDesc = jsonReadWrite.fromString(jsonResponse, StageNodeExt.class);
+        Assert.assertEquals("/jenkins/job/Renamed%20Job/1/execution/node/5/wfapi/describe", stageDesc.get_links().self.href);
+        Assert.assertEquals("/jenkins/job/Renamed%20Job/1/execution/node/6/wfapi/describe", stageDesc.getStageFlowNodes().get(0).get_links().self.href);
+        Assert.assertEquals("/jenkins/job/Renamed%20Job/1/execution/node/6/wfapi/log", stageDesc.getStageFlowNodes().get(0).get_links().getLog().href);
+    }
 }
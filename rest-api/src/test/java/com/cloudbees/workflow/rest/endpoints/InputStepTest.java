@@ -25,6 +25,7 @@ package com.cloudbees.workflow.rest.endpoints;
 
 import com.cloudbees.workflow.Util;
 import com.cloudbees.workflow.rest.external.PendingInputActionsExt;
+import com.cloudbees.workflow.rest.external.PendingInputExt;
 import com.cloudbees.workflow.rest.external.RunExt;
 import com.cloudbees.workflow.rest.external.StatusExt;
 import hudson.model.Result;
@@ -88,6 +89,15 @@ public class InputStepTest {
         Assert.assertEquals("/jenkins/job/Noddy%20Job/1/wfapi/inputSubmit?inputId=Ef95dd500ae6ed3b27b89fb852296d12", inputActionsExts[0].getProceedUrl());
         Assert.assertEquals("/jenkins/job/Noddy%20Job/1/input/Ef95dd500ae6ed3b27b89fb852296d12/abort", inputActionsExts[0].getAbortUrl());
 
+        // The build should also be listed by the root pendingInputs endpoint
+        PendingInputExt[] pendingInputExts = Util.getJSON("wfapi/pendingInputs?mine=true", PendingInputExt[].class, jenkinsRule);
+        Assert.assertEquals(1, pendingInputExts.length);
+        Assert.assertEquals("Noddy Job", pendingInputExts[0].getJobFullName());
+        Assert.assertEquals("1", pendingInputExts[0].getRunId());
+        Assert.assertEquals("/jenkins/job/Noddy%20Job/1/wfapi/describe", pendingInputExts[0].getRunUrl());
+        Assert.assertEquals("Is the build okay?", pendingInputExts[0].getInput().getMessage());
+        Assert.assertEquals(inputActionsExts[0].getProceedUrl(), pendingInputExts[0].getInput().getProceedUrl());
+
         // Workflow is paused at the input now. POST an empty inputs JSON to the "inputSubmit" url.
         JSONObject inputs = new JSONObject();
         JSONArray inputNVPs = new JSONArray();
@@ -99,6 +109,9 @@ public class InputStepTest {
         // Last 'sh' step should fail...
         Util.waitForBuildCount(job, 1, Result.FAILURE);
 
+        // No longer waiting on input
+        Assert.assertEquals(0, Util.getJSON("wfapi/pendingInputs", PendingInputExt[].class, jenkinsRule).length);
+
         // Once we're done... duration should not be increasing...
         workflowRuns = Util.getJSON(job.getUrl() + "wfapi/runs/", RunExt[].class, jenkinsRule);
         long stageDurationT1 = workflowRuns[0].getStages().get(0).getDurationMillis();
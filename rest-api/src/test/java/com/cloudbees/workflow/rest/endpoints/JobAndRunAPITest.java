@@ -24,14 +24,22 @@
 package com.cloudbees.workflow.rest.endpoints;
 
 import com.cloudbees.workflow.flownode.FlowNodeUtil;
+import com.cloudbees.workflow.rest.endpoints.job.Runs;
+import com.cloudbees.workflow.rest.endpoints.run.Artifacts;
 import com.cloudbees.workflow.rest.external.BuildArtifactExt;
 import com.cloudbees.workflow.rest.external.ChangeSetExt;
 import com.cloudbees.workflow.rest.external.JobExt;
+import com.cloudbees.workflow.rest.external.JobStageStatsExt;
 import com.cloudbees.workflow.rest.external.RunExt;
 import com.cloudbees.workflow.rest.external.StageNodeExt;
+import com.cloudbees.workflow.rest.external.StageTrendExt;
 import com.cloudbees.workflow.rest.external.StatusExt;
+import com.cloudbees.workflow.run.RunHeaderSummary;
+import com.cloudbees.workflow.util.InternalCaches;
 import com.cloudbees.workflow.util.JSONReadWrite;
+import com.cloudbees.workflow.util.ModelUtil;
 import com.gargoylesoftware.htmlunit.Page;
+import hudson.Util;
 import hudson.model.Action;
 import hudson.model.Result;
 import hudson.model.queue.QueueTaskFuture;
@@ -47,6 +55,7 @@ import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.xml.sax.SAXException;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.util.List;
@@ -87,12 +96,15 @@ public class JobAndRunAPITest {
         assertDescribeEndpointOkay(job, webClient);
         assertArtifactsEndpointOkay(job, webClient);
         assertChangesetsEndpointOkay(job, webClient);
+        assertRunHeaderSummaryOkay(job);
         assertTimingHandlesBuggyFlowEndNode(job, webClient);
 
         // Run another build and then test resultset narrowing using the 'since' query parameter
         build = job.scheduleBuild2(0);
         jenkinsRule.assertBuildStatusSuccess(build);
         assertSinceQueryParamOkay(job, webClient);
+        assertStageStatsEndpointOkay(job, webClient);
+        assertStageTrendEndpointOkay(job, webClient);
     }
 
     /** Checks handling of one buggy FlowEndNode case */
@@ -212,6 +224,91 @@ public class JobAndRunAPITest {
         } else {
             Assert.assertEquals(6, buildArtifactExts[0].getSize()); // Ends with LF only, so one less char
         }
+
+        // Completed run, so the artifact size should be cached
+        Assert.assertEquals(Long.valueOf(buildArtifactExts[0].getSize()),
+                InternalCaches.get(Artifacts.SIZE_CACHE).getIfPresent(ModelUtil.getRunCacheKey(job.getBuildByNumber(1)) + "/targs/hello.txt"));
+
+        // Paging and filtering
+        Assert.assertEquals(1, getArtifacts(webClient, artifactsUrl + "?prefix=targs/&limit=1").length);
+        Assert.assertEquals(0, getArtifacts(webClient, artifactsUrl + "?offset=1").length);
+        Assert.assertEquals(0, getArtifacts(webClient, artifactsUrl + "?prefix=other/").length);
+    }
+
+    private BuildArtifactExt[] getArtifacts(JenkinsRule.WebClient webClient, String artifactsUrl) throws IOException, SAXException {
+        Page artifactsPage = webClient.goTo(artifactsUrl, "application/json");
+        return new JSONReadWrite().fromString(artifactsPage.getWebResponse().getContentAsString(), BuildArtifactExt[].class);
+    }
+
+    private void assertRunHeaderSummaryOkay(WorkflowJob job) {
+        WorkflowRun run = job.getLastBuild();
+        RunHeaderSummary summary = RunHeaderSummary.get(run);
+
+        Assert.assertTrue(summary.isHasArtifacts());
+        Assert.assertFalse(summary.isHasChanges());
+        // Completed run, so it should be saved next to the run (not in it) and reused.
+        Assert.assertTrue(new File(run.getRootDir(), "wfapi/header-summary.json").isFile());
+        Assert.assertSame(summary, RunHeaderSummary.get(run));
+    }
+
+    private void assertStageStatsEndpointOkay(WorkflowJob job, JenkinsRule.WebClient webClient) throws Exception {
+        JSONReadWrite jsonReadWrite = new JSONReadWrite();
+        JobStageStatsExt stats = null;
+
+        // The last run is counted once its completion listeners have run, which may be just after the build is done.
+        for (int i = 0; i < 50; i++) {
+            Page statsPage = webClient.goTo(job.getUrl() + "wfapi/stageStats", "application/json");
+            stats = jsonReadWrite.fromString(statsPage.getWebResponse().getContentAsString(), JobStageStatsExt.class);
+            if (stats.getRunCount() == 2) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(2, stats.getRunCount());
+        Assert.assertEquals(2, stats.getRun().getCount());
+        Assert.assertEquals(3, stats.getStages().size());
+        Assert.assertEquals("Build", stats.getStages().get(0).getName());
+        Assert.assertEquals(2, stats.getStages().get(0).getCount());
+        Assert.assertEquals("Deploy", stats.getStages().get(2).getName());
+        Assert.assertTrue(stats.getStages().get(2).getMaxMillis() >= stats.getStages().get(2).getMinMillis());
+    }
+
+    private void assertStageTrendEndpointOkay(WorkflowJob job, JenkinsRule.WebClient webClient) throws Exception {
+        JSONReadWrite jsonReadWrite = new JSONReadWrite();
+        StageTrendExt trend = null;
+
+        // Same as the stage stats, the last run is added by a completion listener.
+        for (int i = 0; i < 50; i++) {
+            Page trendPage = webClient.goTo(job.getUrl() + "wfapi/stageTrend", "application/json");
+            trend = jsonReadWrite.fromString(trendPage.getWebResponse().getContentAsString(), StageTrendExt.class);
+            if (trend.getStages().size() == 3 && trend.getStages().get(0).getBuilds().size() == 2) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals(3, trend.getStages().size());
+        Assert.assertEquals("Build", trend.getStages().get(0).getName());
+        Assert.assertEquals(2, trend.getStages().get(0).getBuilds().size());
+        Assert.assertEquals(1, trend.getStages().get(0).getBuilds().get(0).getBuild());
+        Assert.assertEquals(2, trend.getStages().get(0).getBuilds().get(1).getBuild());
+        Assert.assertEquals(StatusExt.SUCCESS, trend.getStages().get(0).getBuilds().get(1).getStatus());
+
+        // Selected stage, most recent build only
+        Page trendPage = webClient.goTo(job.getUrl() + "wfapi/stageTrend?stages=Test&limit=1", "application/json");
+        trend = jsonReadWrite.fromString(trendPage.getWebResponse().getContentAsString(), StageTrendExt.class);
+        Assert.assertEquals(1, trend.getStages().size());
+        Assert.assertEquals("Test", trend.getStages().get(0).getName());
+        Assert.assertEquals(1, trend.getStages().get(0).getBuilds().size());
+        Assert.assertEquals(2, trend.getStages().get(0).getBuilds().get(0).getBuild());
+
+        // No history (e.g. just upgraded). Seeded from the completed runs on the first read.
+        Util.deleteRecursive(new File(job.getRootDir(), "wfapi/stage-history"));
+        trendPage = webClient.goTo(job.getUrl() + "wfapi/stageTrend", "application/json");
+        trend = jsonReadWrite.fromString(trendPage.getWebResponse().getContentAsString(), StageTrendExt.class);
+        Assert.assertEquals(3, trend.getStages().size());
+        Assert.assertEquals(2, trend.getStages().get(0).getBuilds().size());
     }
 
     private void assertChangesetsEndpointOkay(WorkflowJob job, JenkinsRule.WebClient webClient) throws IOException, SAXException {
@@ -255,6 +352,39 @@ public class JobAndRunAPITest {
         return jsonReadWrite.fromString(jsonResponse, RunExt[].class);
     }
 
+    @Test
+    public void test_runs_wait_for_change() throws Exception {
+        WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "Waiting Job");
+        job.setDefinition(new CpsFlowDefinition("stage 'Build'\necho 'Building'"));
+        jenkinsRule.assertBuildStatusSuccess(job.scheduleBuild2(0));
+
+        JenkinsRule.WebClient webClient = jenkinsRule.createWebClient();
+        JSONReadWrite jsonReadWrite = new JSONReadWrite();
+
+        // Every response carries the job version
+        Page runsPage = webClient.goTo(job.getUrl() + "wfapi/runs", "application/json");
+        String version = runsPage.getWebResponse().getResponseHeaderValue(Runs.JOB_VERSION_HEADER);
+        Assert.assertNotNull(version);
+        Assert.assertEquals(1, jsonReadWrite.fromString(runsPage.getWebResponse().getContentAsString(), RunExt[].class).length);
+
+        // Nothing changes, so the wait times out and nothing is returned. The version stays the same.
+        long waitStart = System.currentTimeMillis();
+        runsPage = webClient.goTo(job.getUrl() + "wfapi/runs?knownVersion=" + version + "&waitSeconds=1", "application/json");
+        Assert.assertTrue(System.currentTimeMillis() - waitStart >= 1000);
+        Assert.assertEquals(version, runsPage.getWebResponse().getResponseHeaderValue(Runs.JOB_VERSION_HEADER));
+        Assert.assertEquals(0, jsonReadWrite.fromString(runsPage.getWebResponse().getContentAsString(), RunExt[].class).length);
+
+        // A new run is a change, so the runs come back without waiting, along with the new version.
+        jenkinsRule.assertBuildStatusSuccess(job.scheduleBuild2(0));
+        waitStart = System.currentTimeMillis();
+        runsPage = webClient.goTo(job.getUrl() + "wfapi/runs?knownVersion=" + version + "&waitSeconds=30", "application/json");
+        Assert.assertTrue(System.currentTimeMillis() - waitStart < 30000);
+        String newVersion = runsPage.getWebResponse().getResponseHeaderValue(Runs.JOB_VERSION_HEADER);
+        Assert.assertNotNull(newVersion);
+        Assert.assertFalse(version.equals(newVersion));
+        Assert.assertEquals(2, jsonReadWrite.fromString(runsPage.getWebResponse().getContentAsString(), RunExt[].class).length);
+    }
+
     @Test
     @Issue("JENKINS-33700")
     public void test_unstable_basic_flow() throws Exception {
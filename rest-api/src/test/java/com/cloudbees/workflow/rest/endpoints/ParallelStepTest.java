@@ -23,10 +23,13 @@
  */
 package com.cloudbees.workflow.rest.endpoints;
 
+import com.cloudbees.workflow.rest.external.BranchExt;
 import com.cloudbees.workflow.rest.external.RunExt;
 import com.cloudbees.workflow.rest.external.StageNodeExt;
+import com.cloudbees.workflow.rest.external.StatusExt;
 import com.cloudbees.workflow.util.JSONReadWrite;
 import com.gargoylesoftware.htmlunit.Page;
+import hudson.model.Result;
 import hudson.model.queue.QueueTaskFuture;
 import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
@@ -36,6 +39,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.jvnet.hudson.test.JenkinsRule;
 
+import java.util.List;
+
 /**
  * @author <a href="mailto:tom.fennelly@gmail.com">tom.fennelly@gmail.com</a>
  */
@@ -88,6 +93,18 @@ public class ParallelStepTest {
         Assert.assertEquals("/jenkins/job/Noddy%20Job/1/execution/node/5/wfapi/describe", workflowRuns[0].getStages().get(0).get_links().self.href);
         Assert.assertEquals("/jenkins/job/Noddy%20Job/1/execution/node/15/wfapi/describe", workflowRuns[0].getStages().get(1).get_links().self.href);
 
+        // Stage 1 ran the parallel branches. Stage 2 ran none.
+        List<BranchExt> branches = workflowRuns[0].getStages().get(0).getBranches();
+        Assert.assertEquals(2, branches.size());
+        Assert.assertEquals("a", branches.get(0).getName());
+        Assert.assertEquals("b", branches.get(1).getName());
+        for (BranchExt branch : branches) {
+            Assert.assertEquals(StatusExt.SUCCESS, branch.getStatus());
+            Assert.assertTrue(branch.getStartTimeMillis() > 0L);
+            Assert.assertNull(branch.getParentId());
+        }
+        Assert.assertNull(workflowRuns[0].getStages().get(1).getBranches());
+
         Page stageDescription = webClient.goTo("job/Noddy%20Job/1/execution/node/5/wfapi/describe", "application/json");
         jsonResponse = stageDescription.getWebResponse().getContentAsString();
 
@@ -97,6 +114,7 @@ public class ParallelStepTest {
         Assert.assertEquals("Print Message", stage1Desc.getStageFlowNodes().get(0).getName());
         Assert.assertEquals("12", stage1Desc.getStageFlowNodes().get(1).getId());
         Assert.assertEquals("Print Message", stage1Desc.getStageFlowNodes().get(1).getName());
+        Assert.assertEquals(2, stage1Desc.getBranches().size());
 
         stageDescription = webClient.goTo("job/Noddy%20Job/1/execution/node/15/wfapi/describe", "application/json");
         jsonResponse = stageDescription.getWebResponse().getContentAsString();
@@ -106,4 +124,37 @@ public class ParallelStepTest {
         Assert.assertEquals("16", stage2Desc.getStageFlowNodes().get(0).getId());
         Assert.assertEquals("Print Message", stage2Desc.getStageFlowNodes().get(0).getName());
     }
+
+    @Test
+    public void test_failed_branch() throws Exception {
+        WorkflowJob job = jenkinsRule.jenkins.createProject(WorkflowJob.class, "Noddy Job");
+
+        String script = "node {" +
+                "  stage ('Stage 1');" +
+                "  parallel( " +
+                "       a: { " +
+                "           echo('echo a'); " +
+                "       }, " +
+                "       b: { " +
+                "           error('b failed'); " +
+                "       } " +
+                "  );" +
+                "}";
+
+        job.setDefinition(new CpsFlowDefinition(script));
+
+        QueueTaskFuture<WorkflowRun> build = job.scheduleBuild2(0);
+        jenkinsRule.assertBuildStatus(Result.FAILURE, build.get());
+
+        JenkinsRule.WebClient webClient = jenkinsRule.createWebClient();
+        String jsonResponse = webClient.goTo(job.getUrl() + "wfapi/runs/", "application/json").getWebResponse().getContentAsString();
+        RunExt[] workflowRuns = new JSONReadWrite().fromString(jsonResponse, RunExt[].class);
+
+        List<BranchExt> branches = workflowRuns[0].getStages().get(0).getBranches();
+        Assert.assertEquals(2, branches.size());
+        Assert.assertEquals("a", branches.get(0).getName());
+        Assert.assertEquals(StatusExt.SUCCESS, branches.get(0).getStatus());
+        Assert.assertEquals("b", branches.get(1).getName());
+        Assert.assertEquals(StatusExt.FAILED, branches.get(1).getStatus());
+    }
 }
@@ -0,0 +1,56 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.flownode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RawLogTest {
+
+    @Test
+    public void test_parseRange() {
+        // No range, or ranges we don't support... serve it all
+        Assert.assertNull(RawLog.parseRange(null, 1000));
+        Assert.assertNull(RawLog.parseRange("items=0-10", 1000));
+        Assert.assertNull(RawLog.parseRange("bytes=0-10,20-30", 1000));
+        Assert.assertNull(RawLog.parseRange("bytes=abc", 1000));
+        Assert.assertNull(RawLog.parseRange("bytes=500-100", 1000));
+
+        assertRange(0, 10, RawLog.parseRange("bytes=0-10", 1000));
+        assertRange(100, 999, RawLog.parseRange("bytes=100-", 1000));
+        assertRange(100, 999, RawLog.parseRange("bytes=100-5000", 1000));
+        assertRange(900, 999, RawLog.parseRange("bytes=-100", 1000));
+        assertRange(0, 999, RawLog.parseRange("bytes=-5000", 1000));
+
+        // Outside the log
+        Assert.assertEquals(0, RawLog.parseRange("bytes=1000-", 1000).length);
+        Assert.assertEquals(0, RawLog.parseRange("bytes=-10", 0).length);
+    }
+
+    private void assertRange(long start, long end, long[] range) {
+        Assert.assertEquals(2, range.length);
+        Assert.assertEquals(start, range[0]);
+        Assert.assertEquals(end, range[1]);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.endpoints.run;
+
+import com.cloudbees.workflow.rest.external.LogMatchExt;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+public class LogMatchOutputStreamTest {
+
+    private static final String LOG = "" +
+            "Building\n" +
+            "Compiling\r\n" +
+            "ERROR: compile failed\n" +
+            "Cleaning up\n" +
+            "ERROR: cleanup failed";
+
+    @Test
+    public void test_match() throws Exception {
+        AtomicInteger budget = new AtomicInteger(100);
+        LogMatchOutputStream matcher = new LogMatchOutputStream("6", "Shell Script", Pattern.compile(Pattern.quote("ERROR")), 1, budget, Long.MAX_VALUE);
+
+        matcher.write(LOG.getBytes("UTF-8"));
+        matcher.close();
+
+        List<LogMatchExt> matches = matcher.getMatches();
+        Assert.assertEquals(2, matches.size());
+        Assert.assertFalse(matcher.isTruncated());
+
+        LogMatchExt match = matches.get(0);
+        Assert.assertEquals("6", match.getNodeId());
+        Assert.assertEquals("Shell Script", match.getNodeName());
+        Assert.assertEquals(3, match.getLineNumber());
+        Assert.assertEquals(LOG.indexOf("ERROR: compile"), match.getOffset());
+        Assert.assertEquals("ERROR: compile failed", match.getLine());
+        Assert.assertEquals("[Compiling]", match.getContextBefore().toString());
+        Assert.assertEquals("[Cleaning up]", match.getContextAfter().toString());
+
+        // Last line is not terminated
+        match = matches.get(1);
+        Assert.assertEquals(5, match.getLineNumber());
+        Assert.assertEquals(LOG.indexOf("ERROR: cleanup"), match.getOffset());
+        Assert.assertEquals("ERROR: cleanup failed", match.getLine());
+        Assert.assertEquals(98, budget.get());
+    }
+
+    @Test
+    public void test_match_budget() throws Exception {
+        AtomicInteger budget = new AtomicInteger(1);
+        LogMatchOutputStream matcher = new LogMatchOutputStream("6", "Shell Script", Pattern.compile("ERROR: \\w+"), 0, budget, Long.MAX_VALUE);
+
+        try {
+            matcher.write(LOG.getBytes("UTF-8"));
+            // Ends the last line, which is the match over the budget.
+            matcher.write('\n');
+            matcher.write('\n');
+            Assert.fail("Expected SearchDoneException");
+        } catch (LogMatchOutputStream.SearchDoneException e) {
+            // expected
+        }
+        matcher.close();
+
+        Assert.assertEquals(1, matcher.getMatches().size());
+        Assert.assertTrue(matcher.getMatches().get(0).getContextBefore().isEmpty());
+        Assert.assertTrue(matcher.isTruncated());
+    }
+
+    @Test
+    public void test_match_budget_with_context() throws Exception {
+        AtomicInteger budget = new AtomicInteger(1);
+        LogMatchOutputStream matcher = new LogMatchOutputStream("6", "Shell Script", Pattern.compile("ERROR: \\w+"), 1, budget, Long.MAX_VALUE);
+
+        matcher.write(LOG.getBytes("UTF-8"));
+        matcher.close();
+
+        // The match still gets its context after, even though the budget was used up.
+        List<LogMatchExt> matches = matcher.getMatches();
+        Assert.assertEquals(1, matches.size());
+        Assert.assertEquals("[Compiling]", matches.get(0).getContextBefore().toString());
+        Assert.assertEquals("[Cleaning up]", matches.get(0).getContextAfter().toString());
+        Assert.assertTrue(matcher.isTruncated());
+    }
+
+    @Test
+    public void test_match_budget_exactly_used_up() throws Exception {
+        AtomicInteger budget = new AtomicInteger(2);
+        LogMatchOutputStream matcher = new LogMatchOutputStream("6", "Shell Script", Pattern.compile("ERROR: \\w+"), 1, budget, Long.MAX_VALUE);
+
+        matcher.write((LOG + "\nDone\n").getBytes("UTF-8"));
+        matcher.close();
+
+        // No more matches than the budget allows, so not truncated.
+        List<LogMatchExt> matches = matcher.getMatches();
+        Assert.assertEquals(2, matches.size());
+        Assert.assertEquals("[Done]", matches.get(1).getContextAfter().toString());
+        Assert.assertFalse(matcher.isTruncated());
+        Assert.assertEquals(0, budget.get());
+    }
+
+    @Test
+    public void test_match_budget_used_up_by_other_log() throws Exception {
+        AtomicInteger budget = new AtomicInteger(1);
+        LogMatchOutputStream matcher1 = new LogMatchOutputStream("6", "Shell Script", Pattern.compile("ERROR: \\w+"), 0, budget, Long.MAX_VALUE);
+        LogMatchOutputStream matcher2 = new LogMatchOutputStream("7", "Shell Script", Pattern.compile("ERROR: \\w+"), 0, budget, Long.MAX_VALUE);
+
+        // matcher1 takes the only match and then sees one more
+        matcher1.write(LOG.getBytes("UTF-8"));
+        matcher1.close();
+        Assert.assertEquals(1, matcher1.getMatches().size());
+        Assert.assertTrue(matcher1.isTruncated());
+
+        // so matcher2 has nothing to do
+        matcher2.write("Building\n".getBytes("UTF-8"));
+        Assert.assertTrue(matcher2.isDone());
+        Assert.assertTrue(matcher2.getMatches().isEmpty());
+    }
+
+    @Test
+    public void test_long_line_cut_on_character_boundary() throws Exception {
+        // A 3 byte character straddling the cut.
+        StringBuilder line = new StringBuilder("ERROR ");
+        while (line.length() < LogMatchOutputStream.MAX_LINE_BYTES - 2) {
+            line.append('x');
+        }
+        line.append("\u20AC tail");
+
+        LogMatchOutputStream matcher = new LogMatchOutputStream("6", "Shell Script", Pattern.compile("ERROR"), 0, new AtomicInteger(100), Long.MAX_VALUE);
+        matcher.write((line + "\n").getBytes("UTF-8"));
+        matcher.close();
+
+        String matchedLine = matcher.getMatches().get(0).getLine();
+        Assert.assertEquals(LogMatchOutputStream.MAX_LINE_BYTES - 2, matchedLine.length());
+        Assert.assertEquals(-1, matchedLine.indexOf('\uFFFD'));
+
+        byte[] euro = "a\u20AC".getBytes("UTF-8");
+        Assert.assertEquals(4, LogMatchOutputStream.getCompleteUTF8Length(euro, 4));
+        Assert.assertEquals(1, LogMatchOutputStream.getCompleteUTF8Length(euro, 3));
+        Assert.assertEquals(1, LogMatchOutputStream.getCompleteUTF8Length(euro, 2));
+        Assert.assertEquals(1, LogMatchOutputStream.getCompleteUTF8Length(euro, 1));
+        Assert.assertEquals(0, LogMatchOutputStream.getCompleteUTF8Length(euro, 0));
+    }
+
+    @Test(timeout = 10000)
+    public void test_catastrophic_regex_stops_at_deadline() throws Exception {
+        AtomicInteger budget = new AtomicInteger(100);
+        // Exponential backtracking on a line of a's that doesn't end the way the expression wants. The back
+        // reference stops the JDK from short-cutting the nested repetition.
+        LogMatchOutputStream matcher = new LogMatchOutputStream("6", "Shell Script", Pattern.compile("(a|a)+\\1$"), 0, budget,
+                System.currentTimeMillis() + 200);
+
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            line.append('a');
+        }
+        line.append("!\n");
+
+        try {
+            matcher.write(line.toString().getBytes("UTF-8"));
+            matcher.write("more\n".getBytes("UTF-8"));
+            Assert.fail("Expected SearchDoneException");
+        } catch (LogMatchOutputStream.SearchDoneException e) {
+            // expected
+        }
+        matcher.close();
+
+        Assert.assertTrue(matcher.getMatches().isEmpty());
+        Assert.assertTrue(matcher.isTruncated());
+    }
+}
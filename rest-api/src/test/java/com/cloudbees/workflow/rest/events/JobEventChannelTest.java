@@ -0,0 +1,72 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.events;
+
+import com.cloudbees.workflow.rest.external.RunEventExt;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class JobEventChannelTest {
+
+    @Test
+    public void test_events_since() throws Exception {
+        JobEventChannel channel = new JobEventChannel();
+        long startVersion = channel.getVersion();
+
+        channel.publish(RunEventExt.create(RunEventExt.Type.RUN_STARTED, "1", "#1", null, null));
+        channel.publish(RunEventExt.create(RunEventExt.Type.STAGE_CHANGED, "1", "#1", "5", "6"));
+        long midVersion = channel.getVersion();
+        // Same stage... should be collapsed into the previous event
+        channel.publish(RunEventExt.create(RunEventExt.Type.STAGE_CHANGED, "1", "#1", "5", "7"));
+        channel.publish(RunEventExt.create(RunEventExt.Type.RUN_COMPLETED, "1", "#1", null, null));
+
+        List<RunEventExt> events = channel.getEventsSince(startVersion);
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals(RunEventExt.Type.RUN_STARTED, events.get(0).getType());
+        Assert.assertEquals("7", events.get(1).getNodeId());
+        Assert.assertEquals(RunEventExt.Type.RUN_COMPLETED, events.get(2).getType());
+
+        events = channel.getEventsSince(midVersion);
+        Assert.assertEquals(2, events.size());
+
+        Assert.assertTrue(channel.getEventsSince(channel.getVersion()).isEmpty());
+        // Unknown versions... client needs to resync
+        Assert.assertNull(channel.getEventsSince(startVersion - 1));
+        Assert.assertNull(channel.getEventsSince(channel.getVersion() + 1));
+    }
+
+    @Test
+    public void test_await_change() throws Exception {
+        JobEventChannel channel = new JobEventChannel();
+        long version = channel.getVersion();
+
+        // Nothing published... should time out.
+        Assert.assertEquals(version, channel.awaitChange(version, 10));
+
+        channel.publish(RunEventExt.create(RunEventExt.Type.RUN_STARTED, "1", "#1", null, null));
+        Assert.assertEquals(version + 1, channel.awaitChange(version, 1000));
+    }
+}
@@ -24,16 +24,21 @@
 package com.cloudbees.workflow.rest.external;
 
 import com.cloudbees.workflow.util.JSONReadWrite;
+import hudson.model.User;
 import hudson.scm.ChangeLogSet;
 import hudson.scm.RepositoryBrowser;
 import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
 import org.junit.Assert;
 import org.junit.Test;
 import org.jvnet.hudson.test.Issue;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
 
 /**
  * @author <a href="mailto:tom.fennelly@gmail.com">tom.fennelly@gmail.com</a>
@@ -103,4 +108,94 @@ public class ChangeSetExtTest {
         JSONObject asJSONObject = JSONObject.fromObject(asString);
         Assert.assertFalse(asJSONObject.has("commitUrl"));
     }
+
+    @Test
+    public void test_commit_authors_cached() {
+        User user = Mockito.mock(User.class);
+        Mockito.when(user.getFullName()).thenReturn("Tom Fennelly");
+
+        ChangeLogSet.Entry resolvable = mockEntry("a5e3f91");
+        Mockito.when(resolvable.getAuthor()).thenReturn(user);
+        ChangeLogSet.Entry unresolvable = mockEntry("b7c2d04");
+        Mockito.when(unresolvable.getAuthor()).thenThrow(new RuntimeException("User lookup failed"));
+        ChangeLogSet changeset = mockChangeSet(resolvable, unresolvable);
+
+        for (int i = 0; i < 3; i++) {
+            ChangeSetExt changeSetExt = new NoRunChangeSetExt();
+            changeSetExt.mapFields(changeset, null);
+
+            Assert.assertEquals(2, changeSetExt.getCommitCount());
+            Assert.assertEquals("Tom Fennelly", changeSetExt.getCommits().get(0).getAuthorJenkinsId());
+            Assert.assertEquals("", changeSetExt.getCommits().get(1).getAuthorJenkinsId());
+        }
+
+        // Authors, resolved or not, are only looked up once.
+        Mockito.verify(resolvable, Mockito.times(1)).getAuthor();
+        Mockito.verify(unresolvable, Mockito.times(1)).getAuthor();
+    }
+
+    @Test
+    public void test_commit_authors_cached_per_author() {
+        User user = Mockito.mock(User.class);
+        Mockito.when(user.getFullName()).thenReturn("Tom Fennelly");
+
+        // Lots of commits, all by the same author
+        ChangeLogSet.Entry[] entries = new ChangeLogSet.Entry[5];
+        for (int i = 0; i < entries.length; i++) {
+            ScmEntry entry = Mockito.mock(ScmEntry.class);
+            Mockito.when(entry.getCommitId()).thenReturn("c0ffee" + i);
+            Mockito.when(entry.getMsg()).thenReturn("Commit " + i);
+            Mockito.when(entry.getAuthorName()).thenReturn("tfennelly");
+            Mockito.when(entry.getAuthorEmail()).thenReturn("tom.fennelly@gmail.com");
+            Mockito.when(entry.getAuthor()).thenReturn(user);
+            entries[i] = entry;
+        }
+        Assert.assertEquals("tfennelly|tom.fennelly@gmail.com|", ChangeSetExt.getScmAuthor(entries[0]));
+
+        ChangeSetExt changeSetExt = new NoRunChangeSetExt();
+        changeSetExt.mapFields(mockChangeSet(entries), null);
+        for (ChangeSetExt.Commit commit : changeSetExt.getCommits()) {
+            Assert.assertEquals("Tom Fennelly", commit.getAuthorJenkinsId());
+        }
+
+        // One user lookup for all of the commits.
+        Mockito.verify(entries[0], Mockito.times(1)).getAuthor();
+        for (int i = 1; i < entries.length; i++) {
+            Mockito.verify(entries[i], Mockito.never()).getAuthor();
+        }
+    }
+
+    private ChangeLogSet.Entry mockEntry(String commitId) {
+        ChangeLogSet.Entry entry = Mockito.mock(ChangeLogSet.Entry.class);
+        Mockito.when(entry.getCommitId()).thenReturn(commitId);
+        Mockito.when(entry.getMsg()).thenReturn("Commit " + commitId);
+        return entry;
+    }
+
+    private ChangeLogSet mockChangeSet(final ChangeLogSet.Entry... entries) {
+        ChangeLogSet changeset = Mockito.mock(ChangeLogSet.class);
+        Mockito.when(changeset.getKind()).thenReturn("git");
+        Mockito.when(changeset.iterator()).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return Arrays.asList(entries).iterator();
+            }
+        });
+        return changeset;
+    }
+
+    /**
+     * A changelog entry that has the author as recorded by the SCM, like GitChangeSet does.
+     */
+    public static abstract class ScmEntry extends ChangeLogSet.Entry {
+        public abstract String getAuthorName();
+        public abstract String getAuthorEmail();
+    }
+
+    private static class NoRunChangeSetExt extends ChangeSetExt {
+        @Override
+        protected String getRunUrl(WorkflowRun run) {
+            return "/jenkins/job/Noddy%20Job/1/";
+        }
+    }
 }
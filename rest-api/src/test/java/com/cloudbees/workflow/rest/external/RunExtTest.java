@@ -0,0 +1,177 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.rest.external;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+public class RunExtTest {
+
+    private static final int RUNS = 50;
+    private static final String[] STAGES = {"Build", "Test", "Deploy"};
+
+    @Test
+    public void test_internStrings() {
+        List<RunExt> runs = new ArrayList<RunExt>();
+        for (int i = 0; i < RUNS; i++) {
+            runs.add(newRun(i));
+        }
+
+        // Every run holds its own copy of every name and label.
+        int before = countStrings(runs);
+
+        for (RunExt run : runs) {
+            run.internStrings();
+        }
+
+        // Only the run ids/names are unique to a run now. Everything else is shared across all runs.
+        int after = countStrings(runs);
+        Assert.assertTrue("before: " + before + ", after: " + after, after < before / 5);
+
+        RunExt first = runs.get(0);
+        RunExt last = runs.get(RUNS - 1);
+        for (int i = 0; i < STAGES.length; i++) {
+            StageNodeExt firstStage = first.getStages().get(i);
+            StageNodeExt lastStage = last.getStages().get(i);
+            Assert.assertSame(firstStage.getName(), lastStage.getName());
+            Assert.assertSame(firstStage.getError().getMessage(), lastStage.getError().getMessage());
+            Assert.assertSame(firstStage.getStageFlowNodes().get(0).getExecNode(), lastStage.getStageFlowNodes().get(0).getExecNode());
+            Assert.assertSame(firstStage.getStageFlowNodes().get(0).getParentNodes().get(0), lastStage.getStageFlowNodes().get(0).getParentNodes().get(0));
+            Assert.assertSame(firstStage.getBranches().get(0).getName(), lastStage.getBranches().get(0).getName());
+        }
+        Assert.assertEquals("#1", first.getName());
+        Assert.assertEquals("#" + RUNS, last.getName());
+    }
+
+    @Test
+    public void test_internStrings_long_values_not_pooled() {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            message.append('x');
+        }
+        RunExt run1 = newRun(1);
+        RunExt run2 = newRun(2);
+        run1.getStages().get(0).getError().setMessage(message.toString());
+        run2.getStages().get(0).getError().setMessage(message.toString());
+
+        run1.internStrings();
+        run2.internStrings();
+
+        String message1 = run1.getStages().get(0).getError().getMessage();
+        String message2 = run2.getStages().get(0).getError().getMessage();
+        Assert.assertEquals(message1, message2);
+        Assert.assertNotSame(message1, message2);
+    }
+
+    /**
+     * A run built the way a run is built from a deserialized flow graph i.e. a new copy of every string.
+     */
+    private static RunExt newRun(int runNumber) {
+        RunExt run = new RunExt();
+        run.setId(copy(Integer.toString(runNumber)));
+        run.setName(copy("#" + runNumber));
+
+        List<StageNodeExt> stages = new ArrayList<StageNodeExt>();
+        int nodeId = 3;
+        for (String stageName : STAGES) {
+            StageNodeExt stage = new StageNodeExt();
+            stage.setId(copy(Integer.toString(nodeId++)));
+            stage.setName(copy(stageName));
+            stage.setExecNode(copy("linux-agent"));
+            stage.setError(newError());
+
+            List<AtomFlowNodeExt> stageFlowNodes = new ArrayList<AtomFlowNodeExt>();
+            for (int i = 0; i < 5; i++) {
+                AtomFlowNodeExt node = new AtomFlowNodeExt();
+                node.setId(copy(Integer.toString(nodeId++)));
+                node.setName(copy("Shell Script"));
+                node.setExecNode(copy("linux-agent"));
+                node.getParentNodes().add(copy(stage.getId()));
+                stageFlowNodes.add(node);
+            }
+            stage.setStageFlowNodes(stageFlowNodes);
+
+            BranchExt branch = new BranchExt();
+            branch.setId(copy(Integer.toString(nodeId++)));
+            branch.setName(copy("unit-tests"));
+            branch.setParentId(copy(stage.getId()));
+            stage.setBranches(Collections.singletonList(branch));
+
+            stages.add(stage);
+        }
+        run.setStages(stages);
+        return run;
+    }
+
+    private static ErrorExt newError() {
+        ErrorExt error = new ErrorExt();
+        error.setMessage(copy("script returned exit code 1"));
+        error.setType(copy("hudson.AbortException"));
+        return error;
+    }
+
+    private static String copy(String string) {
+        return new String(string);
+    }
+
+    /**
+     * Count the distinct String instances held by the runs.
+     */
+    private static int countStrings(List<RunExt> runs) {
+        Set<String> strings = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        for (RunExt run : runs) {
+            strings.add(run.getId());
+            strings.add(run.getName());
+            for (StageNodeExt stage : run.getStages()) {
+                addStrings(stage, strings);
+                for (AtomFlowNodeExt node : stage.getStageFlowNodes()) {
+                    addStrings(node, strings);
+                    strings.addAll(node.getParentNodes());
+                }
+                for (BranchExt branch : stage.getBranches()) {
+                    strings.add(branch.getId());
+                    strings.add(branch.getName());
+                    strings.add(branch.getParentId());
+                }
+            }
+        }
+        return strings.size();
+    }
+
+    private static void addStrings(FlowNodeExt node, Set<String> strings) {
+        strings.add(node.getId());
+        strings.add(node.getName());
+        strings.add(node.getExecNode());
+        if (node.getError() != null) {
+            strings.add(node.getError().getMessage());
+            strings.add(node.getError().getType());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.run;
+
+import jenkins.util.VirtualFile;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class ArtifactManifestTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void test_build() throws IOException {
+        File root = tempFolder.newFolder("archive");
+        createFile(root, "target/classes/b.class");
+        createFile(root, "target/a.jar");
+        createFile(root, "README.txt");
+        createFile(root, "target/z.jar");
+
+        ArtifactManifest manifest = ArtifactManifest.build(VirtualFile.forFile(root));
+
+        // Depth first, sorted by name in each directory
+        Assert.assertEquals(Arrays.asList("README.txt", "target/a.jar", "target/classes/b.class", "target/z.jar"), manifest.getPaths());
+    }
+
+    @Test
+    public void test_computeDisplayNames() {
+        String[] names = ArtifactManifest.computeDisplayNames(Arrays.asList(
+                "a/x.jar", "b/x.jar", "c/d/y.jar", "e/d/y.jar", "z.jar"));
+
+        Assert.assertArrayEquals(new String[] {"a/x.jar", "b/x.jar", "c/d/y.jar", "e/d/y.jar", "z.jar"}, names);
+
+        names = ArtifactManifest.computeDisplayNames(Arrays.asList("target/x.jar", "target/y.jar"));
+        Assert.assertArrayEquals(new String[] {"x.jar", "y.jar"}, names);
+    }
+
+    @Test
+    public void test_getHref() {
+        ArtifactManifest manifest = new ArtifactManifest(Arrays.asList("my dir/my file.txt"));
+        Assert.assertEquals("my%20dir/my%20file.txt", manifest.getHref(0));
+        Assert.assertEquals("my file.txt", manifest.getDisplayName(0));
+    }
+
+    private void createFile(File root, String path) throws IOException {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        Assert.assertTrue(file.createNewFile());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.stats;
+
+import com.cloudbees.workflow.rest.external.RunExt;
+import com.cloudbees.workflow.rest.external.StageNodeExt;
+import com.cloudbees.workflow.rest.external.StatusExt;
+import com.cloudbees.workflow.util.JSONReadWrite;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class JobStageStatsTest {
+
+    @Test
+    public void test_add() throws Exception {
+        JobStageStats stats = new JobStageStats();
+
+        Assert.assertTrue(stats.add(1, newRun(StatusExt.SUCCESS, 1000, 3000)));
+        Assert.assertTrue(stats.add(2, newRun(StatusExt.FAILED, 2000, 500)));
+        // Already counted
+        Assert.assertFalse(stats.add(2, newRun(StatusExt.FAILED, 2000, 500)));
+
+        Assert.assertEquals(2, stats.getRunCount());
+        // Failed runs and stages are not counted
+        Assert.assertEquals(1, stats.getRun().getCount());
+        Assert.assertEquals(2, stats.getStage("Build").getCount());
+        Assert.assertEquals(1500.0, stats.getStage("Build").getMean(), 0.0);
+        Assert.assertEquals(1, stats.getStage("Test").getCount());
+        Assert.assertEquals(3000.0, stats.getStage("Test").getMean(), 0.0);
+
+        JSONReadWrite jsonReadWrite = new JSONReadWrite();
+        JobStageStats readStats = jsonReadWrite.fromString(jsonReadWrite.toString(stats), JobStageStats.class);
+        Assert.assertEquals(2, readStats.getRunCount());
+        Assert.assertEquals(1500.0, readStats.getStage("Build").getMean(), 0.0);
+        Assert.assertFalse(readStats.add(1, newRun(StatusExt.SUCCESS, 1000, 3000)));
+    }
+
+    private static RunExt newRun(StatusExt status, long buildMillis, long testMillis) {
+        RunExt run = new RunExt();
+        run.setStatus(status);
+        run.setDurationMillis(buildMillis + testMillis);
+        run.setStages(new ArrayList<StageNodeExt>());
+        run.getStages().add(newStage("Build", StatusExt.SUCCESS, buildMillis));
+        run.getStages().add(newStage("Test", status, testMillis));
+        return run;
+    }
+
+    private static StageNodeExt newStage(String name, StatusExt status, long durationMillis) {
+        StageNodeExt stage = new StageNodeExt();
+        stage.setName(name);
+        stage.setStatus(status);
+        stage.setDurationMillis(durationMillis);
+        return stage;
+    }
+}
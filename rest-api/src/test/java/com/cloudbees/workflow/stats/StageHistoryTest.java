@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.stats;
+
+import com.cloudbees.workflow.rest.external.RunExt;
+import com.cloudbees.workflow.rest.external.StageNodeExt;
+import com.cloudbees.workflow.rest.external.StatusExt;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StageHistoryTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void test_appendAndRead() throws Exception {
+        StageHistory history = new StageHistory(tempFolder.newFolder("stage-history"));
+
+        for (int build = 1; build <= 5; build++) {
+            history.append(build, newRun(build, "Build", "Test"));
+        }
+        // Already there
+        history.append(5, newRun(5, "Build", "Test"));
+        // New stage
+        history.append(6, newRun(6, "Build", "Test", "Deploy"));
+
+        Assert.assertEquals(13, history.getRowCount());
+        Assert.assertEquals(Arrays.asList("Build", "Test", "Deploy"), history.readStageNames());
+
+        List<StageHistory.Row> rows = history.read(null, Integer.MIN_VALUE, Integer.MAX_VALUE, 100);
+        Assert.assertEquals(13, rows.size());
+        StageHistory.Row row = rows.get(12);
+        Assert.assertEquals(6, row.getBuild());
+        Assert.assertEquals("Deploy", row.getStageName());
+        Assert.assertEquals(6000L + 2, row.getStartTimeMillis());
+        Assert.assertEquals(600L + 2, row.getDurationMillis());
+        Assert.assertEquals(2L, row.getPauseDurationMillis());
+        Assert.assertEquals(StatusExt.SUCCESS, row.getStatus());
+
+        // Selected stage over a build range
+        rows = history.read(Arrays.asList("Test"), 2, 4, 100);
+        Assert.assertEquals(3, rows.size());
+        Assert.assertEquals(2, rows.get(0).getBuild());
+        Assert.assertEquals("Test", rows.get(0).getStageName());
+
+        // Most recent builds only
+        rows = history.read(Arrays.asList("Build"), Integer.MIN_VALUE, Integer.MAX_VALUE, 2);
+        Assert.assertEquals(2, rows.size());
+        Assert.assertEquals(5, rows.get(0).getBuild());
+        Assert.assertEquals(6, rows.get(1).getBuild());
+
+        // Builds without the stage don't count towards the limit
+        rows = history.read(Arrays.asList("Deploy"), Integer.MIN_VALUE, Integer.MAX_VALUE, 2);
+        Assert.assertEquals(1, rows.size());
+    }
+
+    @Test
+    public void test_partialWrite() throws Exception {
+        File dir = tempFolder.newFolder("stage-history");
+        StageHistory history = new StageHistory(dir);
+        history.append(1, newRun(1, "Build"));
+
+        // Half written row e.g. we went down part way through an append.
+        RandomAccessFile buildColumn = new RandomAccessFile(StageHistory.Column.BUILD.getFile(dir), "rw");
+        try {
+            buildColumn.seek(buildColumn.length());
+            buildColumn.writeInt(2);
+        } finally {
+            buildColumn.close();
+        }
+        Assert.assertEquals(1, history.getRowCount());
+
+        history.append(3, newRun(3, "Build"));
+        Assert.assertEquals(2, history.getRowCount());
+        List<StageHistory.Row> rows = history.read(null, Integer.MIN_VALUE, Integer.MAX_VALUE, 100);
+        Assert.assertEquals(1, rows.get(0).getBuild());
+        Assert.assertEquals(3, rows.get(1).getBuild());
+        Assert.assertEquals(3000L, rows.get(1).getStartTimeMillis());
+    }
+
+    @Test
+    public void test_compact() throws Exception {
+        StageHistory history = new StageHistory(tempFolder.newFolder("stage-history"));
+        for (int build = 1; build <= 10; build++) {
+            history.append(build, newRun(build, "Build"));
+        }
+
+        history.compact(10, 4);
+
+        List<StageHistory.Row> rows = history.read(null, Integer.MIN_VALUE, Integer.MAX_VALUE, 100);
+        Assert.assertEquals(4, rows.size());
+        Assert.assertEquals(7, rows.get(0).getBuild());
+        Assert.assertEquals(7000L, rows.get(0).getStartTimeMillis());
+        Assert.assertEquals(10, rows.get(3).getBuild());
+    }
+
+    @Test
+    public void test_compact_generations() throws Exception {
+        File dir = tempFolder.newFolder("stage-history");
+        StageHistory history = new StageHistory(dir);
+        for (int build = 1; build <= 10; build++) {
+            history.append(build, newRun(build, "Build"));
+        }
+        Assert.assertEquals(dir, history.getColumnDir());
+
+        // Left over from a compaction that didn't complete. Not used, and cleaned up by the next compaction.
+        File tempDir = new File(dir, "gen-1.tmp");
+        Assert.assertTrue(tempDir.mkdirs());
+        Assert.assertTrue(StageHistory.Column.BUILD.getFile(tempDir).createNewFile());
+        Assert.assertEquals(dir, history.getColumnDir());
+
+        history.compact(10, 6);
+        Assert.assertEquals(new File(dir, "gen-1"), history.getColumnDir());
+        Assert.assertFalse(tempDir.exists());
+        Assert.assertFalse(StageHistory.Column.BUILD.getFile(dir).exists());
+
+        history.append(11, newRun(11, "Build"));
+        history.compact(7, 3);
+        Assert.assertEquals(new File(dir, "gen-2"), history.getColumnDir());
+        Assert.assertFalse(new File(dir, "gen-1").exists());
+
+        List<StageHistory.Row> rows = history.read(null, Integer.MIN_VALUE, Integer.MAX_VALUE, 100);
+        Assert.assertEquals(3, rows.size());
+        Assert.assertEquals(9, rows.get(0).getBuild());
+        Assert.assertEquals(11, rows.get(2).getBuild());
+        Assert.assertEquals(11000L, rows.get(2).getStartTimeMillis());
+    }
+
+    @Test
+    public void test_statusCodes() throws Exception {
+        // Codes are on disk, so they must never change (no matter how StatusExt gets reordered).
+        Assert.assertEquals(0, StageHistory.encodeStatus(StatusExt.NOT_EXECUTED));
+        Assert.assertEquals(2, StageHistory.encodeStatus(StatusExt.SUCCESS));
+        Assert.assertEquals(5, StageHistory.encodeStatus(StatusExt.FAILED));
+        Assert.assertEquals(6, StageHistory.encodeStatus(StatusExt.UNSTABLE));
+        Assert.assertEquals(-1, StageHistory.encodeStatus(null));
+        for (StatusExt status : StatusExt.values()) {
+            Assert.assertEquals(status, StageHistory.decodeStatus(StageHistory.encodeStatus(status)));
+        }
+        Assert.assertNull(StageHistory.decodeStatus((byte) -1));
+        Assert.assertNull(StageHistory.decodeStatus((byte) 100));
+
+        StageHistory history = new StageHistory(tempFolder.newFolder("stage-history"));
+        RunExt run = newRun(1, "Build");
+        run.getStages().get(0).setStatus(StatusExt.FAILED);
+        history.append(1, run);
+        Assert.assertEquals(StatusExt.FAILED, history.read(null, Integer.MIN_VALUE, Integer.MAX_VALUE, 100).get(0).getStatus());
+    }
+
+    @Test
+    public void test_empty() throws Exception {
+        StageHistory history = new StageHistory(new File(tempFolder.getRoot(), "none"));
+        Assert.assertEquals(0, history.getRowCount());
+        Assert.assertTrue(history.read(null, Integer.MIN_VALUE, Integer.MAX_VALUE, 100).isEmpty());
+    }
+
+    private static RunExt newRun(int build, String... stageNames) {
+        RunExt run = new RunExt();
+        run.setStatus(StatusExt.SUCCESS);
+        run.setStages(new ArrayList<StageNodeExt>());
+        for (int i = 0; i < stageNames.length; i++) {
+            StageNodeExt stage = new StageNodeExt();
+            stage.setName(stageNames[i]);
+            stage.setStatus(StatusExt.SUCCESS);
+            stage.setStartTimeMillis(build * 1000L + i);
+            stage.setDurationMillis(build * 100L + i);
+            stage.setPauseDurationMillis(i);
+            run.getStages().add(stage);
+        }
+        return run;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013-2016, CloudBees, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cloudbees.workflow.stats;
+
+import com.cloudbees.workflow.util.JSONReadWrite;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class StageStatsTest {
+
+    @Test
+    public void test_meanAndVariance() {
+        StageStats stats = new StageStats();
+        long[] durations = {1200, 1500, 900, 3000, 1100};
+        for (long duration : durations) {
+            stats.add(duration);
+        }
+
+        double mean = 0;
+        for (long duration : durations) {
+            mean += duration;
+        }
+        mean /= durations.length;
+        double variance = 0;
+        for (long duration : durations) {
+            variance += (duration - mean) * (duration - mean);
+        }
+        variance /= (durations.length - 1);
+
+        Assert.assertEquals(5, stats.getCount());
+        Assert.assertEquals(mean, stats.getMean(), 0.0001);
+        Assert.assertEquals(variance, stats.getVariance(), 0.0001);
+        Assert.assertEquals(900, stats.getMinMillis());
+        Assert.assertEquals(3000, stats.getMaxMillis());
+    }
+
+    @Test
+    public void test_quantiles() {
+        StageStats stats = new StageStats();
+        Random random = new Random(1);
+        long[] durations = new long[1000];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = 1000 + random.nextInt(100000);
+            stats.add(durations[i]);
+        }
+        Arrays.sort(durations);
+
+        assertWithin(durations[499], stats.getQuantile(0.5), 0.06);
+        assertWithin(durations[899], stats.getQuantile(0.9), 0.06);
+        Assert.assertEquals(durations[0], stats.getQuantile(0.0));
+        Assert.assertEquals(durations[durations.length - 1], stats.getQuantile(1.0));
+
+        // Fixed size, whatever the number of durations
+        Assert.assertTrue(stats.getSketch().getCounts().length < 100);
+    }
+
+    @Test
+    public void test_estimateDuration() {
+        // Bimodal e.g. a stage that sometimes gets to skip most of its work.
+        StageStats stats = new StageStats();
+        for (int i = 0; i < 50; i++) {
+            stats.add(60000 + i * 10);
+            stats.add(600000 + i * 100);
+        }
+
+        // Once past the short runs, we should expect a long one. The mean (330000) would be way off.
+        assertWithin(600000, stats.estimateDuration(70000), 0.06);
+        // Longer than ever
+        Assert.assertEquals(700000, stats.estimateDuration(700000));
+
+        CompletionEstimate estimate = CompletionEstimate.create(stats, 70000);
+        Assert.assertNotNull(estimate);
+        Assert.assertTrue(estimate.getPercentComplete() >= 10 && estimate.getPercentComplete() <= 13);
+        Assert.assertEquals(stats.estimateDuration(70000) - 70000, estimate.getTimeRemainingMillis());
+
+        // Never done
+        Assert.assertEquals(98, CompletionEstimate.create(stats, 700000).getPercentComplete());
+        Assert.assertNull(CompletionEstimate.create(new StageStats(), 1000));
+    }
+
+    @Test
+    public void test_empty() {
+        StageStats stats = new StageStats();
+        Assert.assertEquals(0, stats.getQuantile(0.5));
+        Assert.assertEquals(0.0, stats.getVariance(), 0.0);
+    }
+
+    @Test
+    public void test_json() throws Exception {
+        StageStats stats = new StageStats();
+        stats.add(100);
+        stats.add(200000);
+
+        JSONReadWrite jsonReadWrite = new JSONReadWrite();
+        StageStats readStats = jsonReadWrite.fromString(jsonReadWrite.toString(stats), StageStats.class);
+
+        Assert.assertEquals(stats.getCount(), readStats.getCount());
+        Assert.assertEquals(stats.getMean(), readStats.getMean(), 0.0);
+        Assert.assertEquals(stats.getVariance(), readStats.getVariance(), 0.0);
+        Assert.assertEquals(stats.getQuantile(0.5), readStats.getQuantile(0.5));
+        Assert.assertEquals(stats.getQuantile(0.99), readStats.getQuantile(0.99));
+    }
+
+    private static void assertWithin(long expected, long actual, double relativeError) {
+        Assert.assertTrue(actual + " not within " + relativeError + " of " + expected,
+                Math.abs(actual - expected) <= expected * relativeError);
+    }
+}
@@ -24,10 +24,15 @@
 
 var restApi = require('./rest-api');
 
+/**
+ * How long we ask the server to hold a "runs" request while waiting for a change on the job.
+ */
+exports.WAIT_FOR_CHANGE_SECONDS = 30;
+
 exports.listen = function (jobUrl, callback) {
-    restApi.getJobRuns(jobUrl, function (jobRunsData) {
+    restApi.getJobRuns(jobUrl, function (jobRunsData, textStatus, jqXHR) {
         callback(jobRunsData);
-        setupJobPoll(jobUrl, callback, jobRunsData)
+        setupJobPoll(jobUrl, callback, jobRunsData, getJobVersion(jqXHR))
     });
 }
 
@@ -36,7 +41,60 @@ exports.schedulePoll = function (callback) {
     setTimeout(callback, 5000);
 }
 
-function setupJobPoll(jobUrl, callback, jobRunsData) {
+/**
+ * Open a Server-Sent Events stream of run changes on the job.
+ * <p/>
+ * Tests can mock this function for testing.
+ *
+ * @param jobUrl The job URL.
+ * @param onChange Called when the server tells us something changed on the job.
+ * @param onClose Called if the stream gets closed for good (e.g. not supported by the server, or too
+ * many streams open), in which case we need to go back to polling.
+ * @returns The event stream, or undefined if the browser does not support SSE.
+ */
+exports.openEventStream = function (jobUrl, onChange, onClose) {
+    var theWindow;
+    try {
+        theWindow = require('window-handle').getWindow();
+    } catch (e) {
+        // No window e.g. in a test env.
+        return undefined;
+    }
+    if (!theWindow || !theWindow.EventSource) {
+        return undefined;
+    }
+
+    var eventSource = new theWindow.EventSource(restApi.getJobEventsUrl(jobUrl));
+    var eventNames = ['run-started', 'stage-changed', 'run-completed', 'reset'];
+    for (var i = 0; i < eventNames.length; i++) {
+        eventSource.addEventListener(eventNames[i], onChange);
+    }
+    eventSource.onerror = function () {
+        // EventSource reconnects by itself unless the error is fatal.
+        if (eventSource.readyState === theWindow.EventSource.CLOSED) {
+            onClose();
+        }
+    };
+
+    return eventSource;
+}
+
+function getJobVersion(jqXHR) {
+    if (jqXHR && jqXHR.getResponseHeader) {
+        var version = jqXHR.getResponseHeader(restApi.JOB_VERSION_HEADER);
+        if (version) {
+            return version;
+        }
+    }
+    return undefined;
+}
+
+function setupJobPoll(jobUrl, callback, jobRunsData, jobVersion) {
+    var eventStream;
+    var pollScheduled = false;
+    var pollInProgress = false;
+    var changedDuringPoll = false;
+
     function findSinceRunParam() {
 	// console.log('findSinceRunParam');
         // Find the oldest build that has an in progress type status.  If there's non
@@ -55,6 +113,15 @@ function setupJobPoll(jobUrl, callback, jobRunsData) {
         }
     }
 
+    function hasRunInProgress() {
+        for (var i = 0; i < jobRunsData.length; i++) {
+            if (jobRunsData[i].status === 'IN_PROGRESS') {
+                return true;
+            }
+        }
+        return false;
+    }
+
     function findRunIndex(name) {
         for (var i = 0; i < jobRunsData.length; i++) {
             if (jobRunsData[i].name === name) {
@@ -68,47 +135,149 @@ function setupJobPoll(jobUrl, callback, jobRunsData) {
         jobRunsData = [run].concat(jobRunsData);
     }
 
-    function pollJobRuns () {
-        restApi.getJobRuns(jobUrl, function (sinceJobRunsData) {
-		// console.log('job-progress......');
-            try {
-                var notifyListeners = false;
-
-                // reverse iterate the returned set and see if there's anything new
-                // or potentially changed...
-                for (var i = sinceJobRunsData.length - 1; i >= 0; i--) {
-                    var aSinceRun = sinceJobRunsData[i];
-                    var knownRunIndex = findRunIndex(aSinceRun.name);
-
-                    if (knownRunIndex === -1) {
-                        // We don't know this run... it's a new one.  Add it to the start.
-                        notifyListeners = true;
-                        addRun(aSinceRun);
-                    } else {
-                        // We know this run... has it changes?
-                        var knownRun = jobRunsData[knownRunIndex];
-                        if (aSinceRun.status !== knownRun.status) {
-                            // status has changed
-                            notifyListeners = true;
-                        } else if (aSinceRun.status === 'IN_PROGRESS' || aSinceRun.status === 'PAUSED_PENDING_INPUT') {
-                            // it's in an in progress state of some sort...
-                            notifyListeners = true;
-                        }
-                        jobRunsData[knownRunIndex] = aSinceRun;
-                    }
+    function schedulePoll() {
+        if (!pollScheduled) {
+            pollScheduled = true;
+            exports.schedulePoll(pollJobRuns);
+        }
+    }
+
+    function scheduleNextPoll() {
+        if (!eventStream) {
+            if (jobVersion !== undefined && !hasRunInProgress()) {
+                // No event stream, but the server gave us a job version and nothing is running
+                // (i.e. no timings to keep ticking over). Ask the server to hold the request until
+                // something changes on the job.
+                pollJobRuns(true);
+            } else {
+                // No event stream... just keep polling.
+                schedulePoll();
+            }
+        } else if (changedDuringPoll || hasRunInProgress()) {
+            // We have an event stream, so we only need to poll while runs are in progress
+            // (their timings keep changing), or if we were told of a change while polling.
+            // Otherwise we wait to be told of a change.
+            changedDuringPoll = false;
+            schedulePoll();
+        }
+    }
+
+    function onJobChange() {
+        if (pollInProgress) {
+            changedDuringPoll = true;
+        } else if (!pollScheduled) {
+            pollJobRuns();
+        }
+    }
+
+    function onEventStreamClosed() {
+        eventStream = undefined;
+        schedulePoll();
+    }
+
+    function mergeRun(knownRun, runPatch) {
+        // The patch only holds the stages that changed. Merge them into the stages we already have.
+        var stages = (knownRun.stages ? knownRun.stages.slice(0) : []);
+        var patchStages = (runPatch.stages ? runPatch.stages : []);
+
+        for (var i = 0; i < patchStages.length; i++) {
+            var patchStage = patchStages[i];
+            var stageIndex = -1;
+            for (var ii = 0; ii < stages.length; ii++) {
+                if (stages[ii].id === patchStage.id) {
+                    stageIndex = ii;
+                    break;
                 }
+            }
+            if (stageIndex === -1) {
+                stages.push(patchStage);
+            } else {
+                stages[stageIndex] = patchStage;
+            }
+        }
+        runPatch.stages = stages;
+
+        return runPatch;
+    }
 
-                // TODO: what about jobs that have been deleted?
+    function applyJobRuns(sinceJobRunsData, isPatch) {
+        var notifyListeners = false;
 
-                if (notifyListeners) {
-                    callback(jobRunsData);
+        // reverse iterate the returned set and see if there's anything new
+        // or potentially changed...
+        for (var i = sinceJobRunsData.length - 1; i >= 0; i--) {
+            var aSinceRun = sinceJobRunsData[i];
+            var knownRunIndex = findRunIndex(aSinceRun.name);
+
+            if (knownRunIndex === -1) {
+                // We don't know this run... it's a new one.  Add it to the start.
+                notifyListeners = true;
+                addRun(aSinceRun);
+            } else if (isPatch) {
+                // The server only sends changed runs in a patch.
+                notifyListeners = true;
+                jobRunsData[knownRunIndex] = mergeRun(jobRunsData[knownRunIndex], aSinceRun);
+            } else {
+                // We know this run... has it changes?
+                var knownRun = jobRunsData[knownRunIndex];
+                if (aSinceRun.status !== knownRun.status) {
+                    // status has changed
+                    notifyListeners = true;
+                } else if (aSinceRun.status === 'IN_PROGRESS' || aSinceRun.status === 'PAUSED_PENDING_INPUT') {
+                    // it's in an in progress state of some sort...
+                    notifyListeners = true;
                 }
+                jobRunsData[knownRunIndex] = aSinceRun;
+            }
+        }
+
+        // TODO: what about jobs that have been deleted?
+
+        if (notifyListeners) {
+            callback(jobRunsData);
+        }
+    }
+
+    function pollJobRuns (waitForChange) {
+        var params = {since: findSinceRunParam()};
+
+        function onSuccess(sinceJobRunsData, isPatch, jqXHR) {
+		// console.log('job-progress......');
+            jobVersion = getJobVersion(jqXHR);
+            try {
+                applyJobRuns(sinceJobRunsData, isPatch);
             } finally {
-                exports.schedulePoll(pollJobRuns);
+                pollInProgress = false;
+                scheduleNextPoll();
             }
-        }, {since: findSinceRunParam()});
+        }
+        function onError() {
+            // e.g. a proxy timed out the request while it was waiting. Go back to plain
+            // polling until we get a new job version.
+            jobVersion = undefined;
+            pollInProgress = false;
+            schedulePoll();
+        }
+
+        pollScheduled = false;
+        pollInProgress = true;
+        if (jobVersion !== undefined) {
+            // We know the job version, so we only need to ask for what changed since.
+            params.knownVersion = jobVersion;
+            if (waitForChange === true) {
+                params.waitSeconds = exports.WAIT_FOR_CHANGE_SECONDS;
+            }
+            restApi.getJobRunsDelta(jobUrl, function (runsDelta, textStatus, jqXHR) {
+                onSuccess(runsDelta.runs, !runsDelta.full, jqXHR);
+            }, params, onError);
+        } else {
+            restApi.getJobRuns(jobUrl, function (sinceJobRunsData, textStatus, jqXHR) {
+                onSuccess(sinceJobRunsData, false, jqXHR);
+            }, params, onError);
+        }
     }
 
-    // Kick it ...
-    exports.schedulePoll(pollJobRuns);
+    // Kick it ... use the job event stream if we can, otherwise fall back to polling.
+    eventStream = exports.openEventStream(jobUrl, onJobChange, onEventStreamClosed);
+    scheduleNextPoll();
 }
@@ -31,7 +31,7 @@ exports.getModelData = function (callback) {
     // it receives.  It allows the view to load the real model lazily e.g. only after
     // the user clicks on something.
     var lazyLoadModel = {
-        getObject: function (loadCallback) {
+        getObject: function (loadCallback, params) {
             if (lazyLoadModel.cachedObject) {
                 loadCallback(lazyLoadModel.cachedObject);
             } else {
@@ -40,7 +40,7 @@ exports.getModelData = function (callback) {
                         lazyLoadModel.cacheFunc(object);
                     }
                     loadCallback(object);
-                });
+                }, params);
             }
         }
     };
@@ -23,13 +23,24 @@
  */
 
 var ajax = require('../util/ajax');
+var url = require('../util/url');
 
 /**
  * Workflow REST API
  */
 
-exports.getJobRuns = function(jobUrl, success, params) {
-    ajax.execAsyncGET([jobUrl, 'wfapi', 'runs'], success, params);
+exports.JOB_VERSION_HEADER = 'X-Wfapi-Job-Version';
+
+exports.getJobRuns = function(jobUrl, success, params, error) {
+    ajax.execAsyncGET([jobUrl, 'wfapi', 'runs'], success, params, error);
+}
+
+exports.getJobRunsDelta = function(jobUrl, success, params, error) {
+    ajax.execAsyncGET([jobUrl, 'wfapi', 'runsDelta'], success, params, error);
+}
+
+exports.getJobEventsUrl = function(jobUrl) {
+    return url.concatPathTokens([jobUrl, 'wfapi', 'events']);
 }
 
 exports.getDescription = function(of, success) {
@@ -50,6 +61,6 @@ exports.getPendingActions = function(url, success) {
     ajax.execAsyncGET([url], success);
 }
 
-exports.getObject = function(url, success) {
-    ajax.execAsyncGET([url], success);
+exports.getObject = function(url, success, params) {
+    ajax.execAsyncGET([url], success, params);
 }
@@ -181,7 +181,11 @@ function addStageTotals(runGroup) {
         var run = runGroup.runs[i];
 
         if (run.stages && (run.status === 'IN_PROGRESS' || run.status === 'PAUSED_PENDING_INPUT')) {
-            addCompletionEstimates(run, runGroup.avgDurationMillisNoPause, runGroup.runs.length);
+            // The server adds estimates from the job stage statistics (when it has them), which
+            // cover far more runs than we have here. Only fall back to our own averages if not.
+            if (run.percentCompleteEstimate === undefined) {
+                addCompletionEstimates(run, runGroup.avgDurationMillisNoPause, runGroup.runs.length);
+            }
             for (var ii = 0; ii < run.stages.length; ii++) {
                 var stage = run.stages[ii];
                 var stageData = getStageData(stage.name, runGroup);
@@ -25,7 +25,7 @@
 var url = require('./url');
 var jqProxy = require('../jQuery');
 
-exports.execAsyncGET = function (resPathTokens, success, params) {
+exports.execAsyncGET = function (resPathTokens, success, params, error) {
     var $ = jqProxy.getJQuery();
 
     $.ajax({
@@ -34,7 +34,8 @@ exports.execAsyncGET = function (resPathTokens, success, params) {
         dataType: 'json',
         data: params,
         cache: false, // Force caching off for IE (and anything else)
-        success: success
+        success: success,
+        error: error
     });
 };
 
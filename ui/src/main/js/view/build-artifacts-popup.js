@@ -26,6 +26,9 @@ var jqProxy = require('../jQuery');
 var templates = require('./templates');
 var popoverWidget = require('./widgets/popover');
 
+// The popup only lists the first page of artifacts. Builds can archive many thousands.
+var MAX_ARTIFACTS = 100;
+
 exports.render = function (lazyLoadConfig, onElement) {
     var $ = jqProxy.getJQuery();
     var popupEl = $('<div class="cbwf-build-artifacts"></div>');
@@ -35,15 +38,20 @@ exports.render = function (lazyLoadConfig, onElement) {
         hoverBoth: true,
         namespace: 'build-artifacts',
         onshow: function() {
+            // Ask for one more than we list, so as we know if there are more.
             lazyLoadConfig.getObject(function (lazyLoad) {
-                var lazyLoadToDisplay = templates.apply('build-artifacts', lazyLoad);
+                var artifacts = {
+                    artifacts: lazyLoad.slice(0, MAX_ARTIFACTS),
+                    hasMore: (lazyLoad.length > MAX_ARTIFACTS)
+                };
+                var lazyLoadToDisplay = templates.apply('build-artifacts', artifacts);
                 popupEl.empty().append(lazyLoadToDisplay);
 
                 // need to reapply placement of the popover because:
                 // 1. we have altered it's content, which possibly widened it
                 // 2. it is positioned to the left and so, if widened, means it's positioning is off
                 popover.applyPlacement();
-            });
+            }, {limit: MAX_ARTIFACTS + 1});
         }
     });
 
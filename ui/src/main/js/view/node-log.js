@@ -25,23 +25,56 @@
 var jqProxy = require('../jQuery');
 var templates = require('./templates');
 
+// Logs loaded ahead of time (e.g. all the logs of a stage in one go) are held on the
+// node log element itself, so they go when the element (i.e. the dialog) goes.
+var PRELOADED_LOG_KEY = 'cbwfPreloadedLog';
+
+exports.preload = function (onElement, logDetails) {
+    onElement.data(PRELOADED_LOG_KEY, logDetails);
+}
+
 exports.render = function (logLazyLoadModel, onElement) {
+    var loadedLog;
+
     // Add a caching function to the lazy load model.  This allows us to avoid
     // reloading of log details for completed nodes.
     logLazyLoadModel.cacheFunc = function(logDetails) {
-        if (logDetails.nodeStatus === 'SUCCESS') {
+        // If we asked for the log from where we left off last time, just add the
+        // new text onto what we already have.
+        if (loadedLog && logDetails.start === loadedLog.offset) {
+            logDetails.text = (loadedLog.text || '') + (logDetails.text || '');
+            logDetails.start = loadedLog.start;
+        }
+        loadedLog = logDetails;
+
+        if (logDetails.nodeStatus !== 'IN_PROGRESS' && logDetails.nodeStatus !== 'PAUSED_PENDING_INPUT') {
+            // The node is done, so its log is not going to change.
             logLazyLoadModel.cachedObject = logDetails;
         }
     }
 
+    function renderLog(logDetails) {
+        var nodeLogDom = templates.apply('node-log', logDetails);
+        var $ = jqProxy.getJQuery();
+        var logDetailsEl = $('.log-details', onElement);
+
+        logDetailsEl.empty();
+        logDetailsEl.append(nodeLogDom);
+    }
+
     onElement.click(function() {
-        logLazyLoadModel.getObject(function (lazyLoad) {
-            var nodeLogDom = templates.apply('node-log', lazyLoad);
-            var $ = jqProxy.getJQuery();
-            var logDetailsEl = $('.log-details', onElement);
-
-            logDetailsEl.empty();
-            logDetailsEl.append(nodeLogDom);
-        });
+        var preloadedLog = onElement.data(PRELOADED_LOG_KEY);
+
+        if (preloadedLog) {
+            onElement.removeData(PRELOADED_LOG_KEY);
+            if (!loadedLog) {
+                logLazyLoadModel.cacheFunc(preloadedLog);
+                renderLog(loadedLog);
+                return;
+            }
+        }
+
+        var params = (loadedLog ? {start: loadedLog.offset} : undefined);
+        logLazyLoadModel.getObject(renderLog, params);
     });
 }
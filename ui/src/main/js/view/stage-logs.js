@@ -24,6 +24,8 @@
 var jqProxy = require('../jQuery');
 var templates = require('./templates');
 var dialog = require('./widgets/dialog');
+var nodeLog = require('./node-log');
+var restApi = require('../model/rest-api');
 
 exports.render = function (stageDescription, onElement) {
     var $ = jqProxy.getJQuery();
@@ -38,6 +40,44 @@ exports.render = function (stageDescription, onElement) {
 
     stageLogsDom.addClass('stageLogsPopover');
 
+    function getNodeLogFrame(logUrl) {
+        for (var i = 0; i < nodeLogFrames.size(); i++) {
+            var nodeLogFrame = nodeLogFrames.eq(i);
+            if (nodeLogFrame.attr('objectUrl') === logUrl) {
+                return nodeLogFrame;
+            }
+        }
+        return undefined;
+    }
+
+    var logsPreloaded = false;
+    function preloadLogs() {
+        // Load all the stage node logs in one request, rather than a request per
+        // node as each node is expanded.
+        if (logsPreloaded || !stageDescription._links.stageLogs || nodeNameBars.size() < 2) {
+            return;
+        }
+        logsPreloaded = true;
+
+        var logUrls = {};
+        for (var i = 0; i < stageDescription.stageFlowNodes.length; i++) {
+            var stageFlowNode = stageDescription.stageFlowNodes[i];
+            if (stageFlowNode._links.log) {
+                logUrls[stageFlowNode.id] = stageFlowNode._links.log.href;
+            }
+        }
+
+        restApi.getObject(stageDescription._links.stageLogs.href, function (nodeLogs) {
+            for (var ii = 0; ii < nodeLogs.length; ii++) {
+                var logUrl = logUrls[nodeLogs[ii].nodeId];
+                var nodeLogFrame = (logUrl ? getNodeLogFrame(logUrl) : undefined);
+                if (nodeLogFrame) {
+                    nodeLog.preload(nodeLogFrame, nodeLogs[ii]);
+                }
+            }
+        });
+    }
+
     var clickNSEvent = 'click.cbwf-stage-logs';
 
     onElement.off(clickNSEvent);
@@ -51,6 +91,8 @@ exports.render = function (stageDescription, onElement) {
             onshow: function() {
                 var header = $('.cbwf-stage-logs-dialog .header');
 
+                preloadLogs();
+
                 nodeNameBars.click(function() {
                     var nodeNameBar = $(this);
                     var nodeLogFrame = nodeNameBar.parent();
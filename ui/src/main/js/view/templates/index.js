@@ -74,6 +74,10 @@ registerHBSHelper('dumpObj', function(object) {
 });
 
 registerHBSHelper('formatMem', function(amount) {
+    if (amount < 0) {
+        // Size not known e.g. the lookup timed out on the server.
+        return '?';
+    }
     return formatters.memory(amount);
 });
 
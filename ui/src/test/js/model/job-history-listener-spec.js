@@ -87,4 +87,161 @@ describe("model/job-history-listener", function () {
         expect(listenCallbackCallCount).toEqual(6);
     });
 
+    it("- test_02_event_stream", function () {
+
+        var jobsToReturnFromRestAPI = [];
+        var pollJobRunsFunc;
+        var onChangeFunc;
+        var onCloseFunc;
+        var listenCallbackCallCount = 0;
+
+        function addRun(name, status) {
+            jobsToReturnFromRestAPI = [{name: name, status: status}].concat(jobsToReturnFromRestAPI);
+        }
+
+        helper.mock('model/rest-api', {
+            getJobRuns: function (jobUrl, callback) {
+                callback(JSON.parse(JSON.stringify(jobsToReturnFromRestAPI)));
+            }
+        });
+        helper.mock('model/job-history-listener', {
+            schedulePoll: function (pollJobRuns) {
+                pollJobRunsFunc = pollJobRuns;
+            },
+            openEventStream: function (jobUrl, onChange, onClose) {
+                onChangeFunc = onChange;
+                onCloseFunc = onClose;
+                return {};
+            }
+        });
+
+        addRun('#1', 'SUCCESS');
+        listener.listen('/job/AAA', function () {
+            listenCallbackCallCount++;
+        });
+        expect(listenCallbackCallCount).toEqual(1);
+
+        // We have an event stream and nothing is running, so no poll should get scheduled.
+        expect(pollJobRunsFunc === undefined).toEqual(true);
+
+        // A run starts... the event should trigger an immediate reload.
+        addRun('#2', 'IN_PROGRESS');
+        onChangeFunc();
+        expect(listenCallbackCallCount).toEqual(2);
+
+        // We have a run in progress, so we keep polling while it's running.
+        expect(pollJobRunsFunc !== undefined).toEqual(true);
+        pollJobRunsFunc();
+        expect(listenCallbackCallCount).toEqual(3);
+
+        // The run completes. A poll is already scheduled, so the event should not trigger another
+        // reload. Polling should stop once the scheduled poll has seen the completion.
+        jobsToReturnFromRestAPI[0].status = 'SUCCESS';
+        onChangeFunc();
+        expect(listenCallbackCallCount).toEqual(3);
+        var scheduledPoll = pollJobRunsFunc;
+        pollJobRunsFunc = undefined;
+        scheduledPoll();
+        expect(listenCallbackCallCount).toEqual(4);
+        expect(pollJobRunsFunc === undefined).toEqual(true);
+
+        // The stream gets closed... should fall back to polling.
+        onCloseFunc();
+        expect(pollJobRunsFunc !== undefined).toEqual(true);
+    });
+
+    it("- test_03_wait_for_change", function () {
+
+        var jobVersion = '10';
+        var nextDelta;
+        var waitingCallback;
+        var waitingParams;
+        var lastDeltaParams;
+        var pollJobRunsFunc;
+        var jobModel;
+        var listenCallbackCallCount = 0;
+
+        function jqXHR() {
+            return {
+                getResponseHeader: function (name) {
+                    expect(name).toEqual('X-Wfapi-Job-Version');
+                    return jobVersion;
+                }
+            };
+        }
+
+        helper.mock('model/rest-api', {
+            getJobRuns: function (jobUrl, callback) {
+                callback([{name: '#1', status: 'SUCCESS', stages: []}], 'success', jqXHR());
+            },
+            getJobRunsDelta: function (jobUrl, callback, params) {
+                if (params.waitSeconds) {
+                    // Hold it, like the server would.
+                    waitingCallback = callback;
+                    waitingParams = params;
+                } else {
+                    lastDeltaParams = params;
+                    callback(JSON.parse(JSON.stringify(nextDelta)), 'success', jqXHR());
+                }
+            }
+        });
+        helper.mock('model/job-history-listener', {
+            schedulePoll: function (pollJobRuns) {
+                pollJobRunsFunc = pollJobRuns;
+            },
+            openEventStream: function () {
+                return undefined;
+            }
+        });
+
+        listener.listen('/job/AAA', function (model) {
+            jobModel = model;
+            listenCallbackCallCount++;
+        });
+        expect(listenCallbackCallCount).toEqual(1);
+
+        // Nothing running... should be waiting on a change from the version we got, not polling.
+        expect(pollJobRunsFunc === undefined).toEqual(true);
+        expect(waitingParams.knownVersion).toEqual('10');
+        expect(waitingParams.waitSeconds).toEqual(30);
+
+        // A new run starts... the waiting request returns with it.
+        jobVersion = '11';
+        waitingParams = undefined;
+        waitingCallback({version: 11, full: false, runs: [
+            {name: '#2', status: 'IN_PROGRESS', stages: [{id: '5', status: 'IN_PROGRESS'}]}
+        ]}, 'success', jqXHR());
+        expect(listenCallbackCallCount).toEqual(2);
+        expect(jobModel.length).toEqual(2);
+
+        // The run is in progress... should go back to polling (for deltas) while it runs.
+        expect(waitingParams === undefined).toEqual(true);
+        expect(pollJobRunsFunc !== undefined).toEqual(true);
+
+        // The run moves on to the next stage... the patch should get merged into the run.
+        nextDelta = {version: 12, full: false, runs: [
+            {name: '#2', status: 'IN_PROGRESS', stages: [{id: '5', status: 'SUCCESS'}, {id: '9', status: 'IN_PROGRESS'}]}
+        ]};
+        pollJobRunsFunc();
+        expect(lastDeltaParams.knownVersion).toEqual('11');
+        expect(listenCallbackCallCount).toEqual(3);
+        expect(jobModel[0].stages.length).toEqual(2);
+
+        // The run completes... only the last stage comes back in the patch.
+        jobVersion = '12';
+        nextDelta = {version: 12, full: false, runs: [
+            {name: '#2', status: 'SUCCESS', stages: [{id: '9', status: 'SUCCESS'}]}
+        ]};
+        pollJobRunsFunc();
+        expect(listenCallbackCallCount).toEqual(4);
+        expect(jobModel[0].status).toEqual('SUCCESS');
+        expect(jobModel[0].stages.length).toEqual(2);
+        expect(jobModel[0].stages[0].status).toEqual('SUCCESS');
+        expect(jobModel[0].stages[1].status).toEqual('SUCCESS');
+        expect(jobModel[1].name).toEqual('#1');
+
+        // Nothing running again... should go back to waiting for a change.
+        expect(waitingParams.knownVersion).toEqual('12');
+    });
+
 });
@@ -63,6 +63,31 @@ describe("model/runs-stage-grouped-spec", function () {
         test_runGroupGeneration('05_rest_api_runs', '05_expected_modelData', done);
     });
 
+    it("- test_09_getModelData_server_estimates", function (done) {
+        // The server estimates (from the job stage statistics) should be used as is.
+        helper.testWithJQuery('<div objectUrl="/jenkins/job/xxxJob"></div>', function ($) {
+            var targetEl = $('div');
+
+            helper.mock('util/ajax', {
+                execAsyncGET: function (resPathTokens, callback) {
+                    callback(helper.requireTestRes('model/runs_stage_grouped/getModelData/09_rest_api_runs_server_estimates'));
+                }
+            });
+
+            model.getModelData.call(
+                helper.mvcContext(targetEl),
+                function (modelData) {
+                    var run = modelData.runGroups[0].runs[0];
+                    expect(run.percentCompleteEstimate).toEqual(42);
+                    expect(run.timeRemainingEstimate).toEqual(77000);
+                    expect(run.stages[1].percentCompleteEstimate).toEqual(7);
+                    expect(run.stages[1].timeRemainingEstimate).toEqual(8400);
+                });
+
+            done();
+        });
+    });
+
     function test_runGroupGeneration(restApiResponseFile, expectedModelFile, done, devMode) {
         helper.testWithJQuery('<div objectUrl="/jenkins/job/xxxJob"></div>', function ($) {
             var targetEl = $('div');